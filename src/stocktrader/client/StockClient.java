@@ -2,13 +2,34 @@ package stocktrader.client;
 
 import stocktrader.common.AccessDeniedException;
 import stocktrader.common.TransactionFailedException;
+import stocktrader.server.LotQueue;
+import stocktrader.server.Money;
+import stocktrader.server.StockScreener;
 import stocktrader.server.StockServer;
+import stocktrader.server.UI.RecordWriter;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Scanner;
 
 /**
  * @Overview A class acts as a console-based, menu-driven program which allows the user
  *           to perform all the features provided by the server.
+ *           With the argument --batch [file], it runs the commands of the file (or of the standard input) instead,
+ *           one per line, in one batch of the server, and prints one line of result per command (see runBatch()).
  * @Version 1.0.211127
  * @BasedOnVersionOf Mr. QuanDD
  * @author Phan Quang Tuan
@@ -20,7 +41,14 @@ public class StockClient {
 	 * @effects initializes (connects to) the server
 	 */
 	private StockClient() {
-		srv = new StockServer();
+		this(new StockServer());
+	}
+
+	/**
+	 * @effects initializes this with the server srv
+	 */
+	private StockClient(StockServer srv) {
+		this.srv = srv;
 	}
 
 	// case 1
@@ -55,7 +83,23 @@ public class StockClient {
 			System.out.println("\u001B[34m" + "purchased successfully!" + "\u001B[0m");
 			System.err.println();
 		} else {
-			System.out.println("\u001B[34m" + "cannot purchase" + "\u001B[0m");
+			System.out.println("\u001B[34m" + failure("cannot purchase") + "\u001B[0m");
+		}
+	}
+
+	// case 18
+	private void purchaseById() throws AccessDeniedException, TransactionFailedException {
+		Scanner sc = new Scanner(System.in);
+		System.out.print("Enter stock's ID: ");
+		String stockId = sc.nextLine().trim();
+		System.out.print("Enter quantity: ");
+		int q = sc.nextInt();
+
+		boolean success = srv.purchase(stockId, q);
+		if (success) {
+			System.out.println("\u001B[34m" + "purchased successfully!" + "\u001B[0m");
+		} else {
+			System.out.println("\u001B[34m" + failure("cannot purchase") + "\u001B[0m");
 		}
 	}
 
@@ -72,7 +116,155 @@ public class StockClient {
 		if (success) {
 			System.out.println("\u001B[34m" + "sold successfully!" + "\u001B[0m");
 		} else {
-			System.out.println("\u001B[34m" + "cannot sell" + "\u001B[0m");
+			System.out.println("\u001B[34m" + failure("cannot sell") + "\u001B[0m");
+		}
+	}
+
+	// case 15
+	private void sellById() throws AccessDeniedException, TransactionFailedException {
+		Scanner sc = new Scanner(System.in);
+		System.out.print("Enter stock's ID: ");
+		String stockId = sc.nextLine().trim();
+		System.out.print("Enter quantity: ");
+		int q = sc.nextInt();
+		sc.nextLine();
+		System.out.print("Sell newest shares first? (y/n): ");
+		LotQueue.Order order = sc.nextLine().trim().equalsIgnoreCase("y") ? LotQueue.Order.LIFO : LotQueue.Order.FIFO;
+
+		boolean success = srv.sell(stockId, q, order);
+		if (success) {
+			System.out.println("\u001B[34m" + "sold successfully!" + "\u001B[0m");
+		} else {
+			System.out.println("\u001B[34m" + failure("cannot sell") + "\u001B[0m");
+		}
+	}
+
+	// case 16
+	private void viewTopEarnersPage() throws AccessDeniedException {
+		Scanner sc = new Scanner(System.in);
+		System.out.print("Enter page: ");
+		int page = sc.nextInt();
+
+		System.out.println("\u001B[34m" + srv.viewTopEarners(page, 10) + "\u001B[0m");
+	}
+
+	// case 19
+	private void export() throws AccessDeniedException, IOException {
+		Scanner sc = new Scanner(System.in);
+		System.out.print("Export (1. stocks on the market, 2. owned stocks, 3. investment report, 4. top earners,"
+				+ " 5. top balances, 6. lots of all users): ");
+		int report = sc.nextInt();
+		sc.nextLine();
+		System.out.print("Format (1. CSV, 2. JSON Lines): ");
+		RecordWriter.Format format = sc.nextInt() == 2 ? RecordWriter.Format.JSONL : RecordWriter.Format.CSV;
+		sc.nextLine();
+		System.out.print("Enter file name (empty for the console): ");
+		String file = sc.nextLine().trim();
+
+		boolean console = file.isEmpty();
+		WritableByteChannel out = console ? Channels.newChannel(System.out)
+				: FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			switch (report) {
+			case 1:
+				srv.exportAllStocks(out, format);
+				break;
+			case 2:
+				srv.exportOwnStocks(out, format);
+				break;
+			case 3:
+				srv.exportTrackStocks(out, format);
+				break;
+			case 4:
+				srv.exportTopEarners(out, format);
+				break;
+			case 5:
+				srv.exportTopBalances(out, format);
+				break;
+			case 6:
+				srv.exportAllLots(out, format);
+				break;
+			default:
+				System.err.println("Invalid input!");
+				return;
+			}
+		} finally {
+			if (console) {
+				System.out.flush();
+			} else {
+				out.close();
+			}
+		}
+		if (!console) {
+			System.out.println("\u001B[34m" + "exported to " + file + "\u001B[0m");
+		}
+	}
+
+	// case 20
+	private void screen() throws AccessDeniedException, IOException {
+		Scanner sc = new Scanner(System.in);
+		StockScreener.Query query = new StockScreener.Query();
+		System.out.print("Enter min price (empty for any): ");
+		String min = sc.nextLine().trim();
+		System.out.print("Enter max price (empty for any): ");
+		String max = sc.nextLine().trim();
+		query.priceBetween(min.isEmpty() ? Long.MIN_VALUE : Money.of(Double.parseDouble(min)),
+				max.isEmpty() ? Long.MAX_VALUE : Money.of(Double.parseDouble(max)));
+		System.out.print("Enter min available quantity (empty for any): ");
+		String quantity = sc.nextLine().trim();
+		if (!quantity.isEmpty()) {
+			query.minQuantity(Integer.parseInt(quantity));
+		}
+		System.out.print("Enter the beginning of the company name (empty for any): ");
+		query.namePrefix(sc.nextLine().trim());
+		System.out.print("Sort by (1. price, 2. quantity, 3. stock's ID): ");
+		int key = sc.nextInt();
+		sc.nextLine();
+		System.out.print("Descending? (y/n): ");
+		boolean descending = sc.nextLine().trim().equalsIgnoreCase("y");
+		query.sortBy(key == 1 ? StockScreener.SortKey.PRICE
+				: key == 2 ? StockScreener.SortKey.QUANTITY : StockScreener.SortKey.ID, descending);
+		System.out.print("Enter page: ");
+		int page = sc.nextInt();
+		query.page(Math.max(0, page - 1) * 20, 20);
+
+		System.out.print("\u001B[34m");
+		srv.screenStocks(System.out, query);
+		System.out.println("\u001B[0m");
+	}
+
+	// case 10, 11
+	private void placeTriggerOrder(boolean stopLoss) throws AccessDeniedException, TransactionFailedException {
+		Scanner sc = new Scanner(System.in);
+		System.out.print("Enter stockNo: ");
+		int stockNo = sc.nextInt();
+		sc.nextLine();
+		System.out.print("Enter trigger price: ");
+		double price = sc.nextDouble();
+		sc.nextLine();
+		System.out.print("Enter quantity: ");
+		int q = sc.nextInt();
+
+		boolean success = stopLoss ? srv.placeStopLoss(stockNo, price, q) : srv.placeBuyLimit(stockNo, price, q);
+		if (success) {
+			System.out.println("\u001B[34m" + "order placed!" + "\u001B[0m");
+		} else {
+			System.out.println("\u001B[34m" + failure("cannot place the order") + "\u001B[0m");
+		}
+	}
+
+	// case 13
+	private void cancelTriggerOrder() throws AccessDeniedException, TransactionFailedException {
+		Scanner sc = new Scanner(System.in);
+		System.out.print("Enter orderNo: ");
+		int orderNo = sc.nextInt();
+
+		boolean success = srv.cancelTriggerOrder(orderNo);
+		if (success) {
+			System.out.println("\u001B[34m" + "order cancelled!" + "\u001B[0m");
+		} else {
+			System.out.println("\u001B[34m" + failure("cannot cancel the order") + "\u001B[0m");
 		}
 	}
 
@@ -81,9 +273,19 @@ public class StockClient {
 		boolean success = srv.nextDay();
 		if (success) {
 			System.out.println("\u001B[34m" + "Server says: a day is passed..." + "\u001B[0m");
+		} else {
+			System.out.println("\u001B[34m" + failure("the day has not passed") + "\u001B[0m");
 		}
 	}
 
+	/**
+	 * @effects return the reason why the server could not save the last action, or message if it did not say
+	 */
+	private String failure(String message) {
+		String reason = srv.getSaveFailure();
+		return (reason != null) ? reason : message;
+	}
+
 	private void printMenu() {
 		System.out.println("1. Login");
 		System.out.println("2. View stocks on the market");
@@ -94,7 +296,18 @@ public class StockClient {
 		System.out.println("7. Drunk because of deadlines and sleep for 1 day :<");
 		System.out.println("8. View top earners");
 		System.out.println("9. Sign out");
-		System.out.println("10. Quit");
+		System.out.println("10. Place a stop-loss order");
+		System.out.println("11. Place a buy-limit order");
+		System.out.println("12. View stop-loss and buy-limit orders");
+		System.out.println("13. Cancel a stop-loss or buy-limit order");
+		System.out.println("14. Risk report");
+		System.out.println("15. Sell shares of a stock by its ID");
+		System.out.println("16. View top balances page by page and my rank");
+		System.out.println("17. View top returns");
+		System.out.println("18. Purchase a stock by its ID");
+		System.out.println("19. Export stocks, owned stocks, investment report, rankings or all lots (CSV/JSON Lines)");
+		System.out.println("20. Screen stocks by price, quantity and company name");
+		System.out.println("0. Quit");
 	}
 
 	private int getOption() {
@@ -105,14 +318,15 @@ public class StockClient {
 	}
 
 	public void run() {
-		int option = 0;
-		while (option != 10) {
+		int option = -1;
+		while (option != 0) {
 			// necessary for updating the server time when not logging in
 			srv.request();
 			System.out.println("session's id: " + srv.getSessionID());
 			System.out.println("user's name: " + srv.getUserName());
 			System.out.println("money: " + srv.getUserMoney());
 			System.out.println("Server time: " + srv.getServerTime());
+			System.out.println("Market index: " + srv.getMarketIndex());
 			System.out.println("Day: " + srv.getCurrentDate());
 			try {
 				option = getOption();
@@ -145,6 +359,39 @@ public class StockClient {
 					System.out.println("\u001B[34m" + srv.signOut() + "\u001B[0m");
 					break;
 				case 10:
+					placeTriggerOrder(true);
+					break;
+				case 11:
+					placeTriggerOrder(false);
+					break;
+				case 12:
+					System.out.println("\u001B[34m" + srv.listTriggerOrders() + "\u001B[0m");
+					break;
+				case 13:
+					cancelTriggerOrder();
+					break;
+				case 14:
+					System.out.println("\u001B[34m" + srv.riskReport() + "\u001B[0m");
+					break;
+				case 15:
+					sellById();
+					break;
+				case 16:
+					viewTopEarnersPage();
+					break;
+				case 17:
+					System.out.println("\u001B[34m" + srv.viewTopReturns() + "\u001B[0m");
+					break;
+				case 18:
+					purchaseById();
+					break;
+				case 19:
+					export();
+					break;
+				case 20:
+					screen();
+					break;
+				case 0:
 					//srv.signOut(); this line is disabled because of testing purpose
 					System.out.println("\u001B[34m" + "Say goodbye!" + "\u001B[0m");
 					break;
@@ -163,7 +410,146 @@ public class StockClient {
 		System.out.println("-----------------------");
 	}
 
-	public static void main(String[] args) {
+	/**
+	 * @modifies srv, out
+	 * @effects <pre>
+	 *  run the commands read from in in one batch of srv (the DB is loaded once and saved when the user changes,
+	 *  on save and at the end), one command per line:
+	 *    login <userName> <password>
+	 *    logout
+	 *    buy <stock's ID> <quantity>
+	 *    sell <stock's ID> <quantity> [fifo|lifo]
+	 *    nextday
+	 *    report stocks|own|track|top|returns|orders|risk
+	 *    save
+	 *  (empty lines and lines starting with # are skipped)
+	 *  for each command print to out one line: the number of its line, then ok, failed (the server refused it)
+	 *  or error and the reason, followed by the text of the report for a report command
+	 *  return the number of commands that did not succeed
+	 *  (if the DB cannot be loaded, print it and return 1 without running any command)
+	 * </pre>
+	 * @throws IOException if in or out fails
+	 */
+	private int runBatch(BufferedReader in, PrintStream out) throws IOException {
+		int failures = 0;
+		int lineNo = 0;
+		StringBuilder report = new StringBuilder();
+		if (!srv.beginBatch()) {
+			out.print("not run: cannot load the DB\n");
+			out.flush();
+			return 1;
+		}
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				lineNo++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				out.print(lineNo);
+				report.setLength(0);
+				try {
+					if (runCommand(line.split("\\s+"), report)) {
+						out.print(" ok\n");
+						out.append(report);
+					} else {
+						out.print(" failed\n");
+						failures++;
+					}
+				} catch (TransactionFailedException e) {
+					out.print(" failed " + e.getMessage() + "\n");
+					failures++;
+				} catch (Exception e) {
+					out.print(" error " + e.getMessage() + "\n");
+					failures++;
+				}
+			}
+		} finally {
+			boolean saved = srv.endBatch();
+			out.print(saved ? "saved\n" : "not saved: the DB has been changed by another session\n");
+			out.flush();
+		}
+		return failures;
+	}
+
+	/**
+	 * @modifies srv, report
+	 * @effects run the command of words (see runBatch()), append the text of a report to report, return true if it
+	 *          succeeded
+	 */
+	private boolean runCommand(String[] words, StringBuilder report) throws Exception {
+		switch (words[0].toLowerCase()) {
+		case "login":
+			return srv.flushBatch() && srv.login(arg(words, 1), arg(words, 2)).equals("logged in");
+		case "logout":
+			srv.flushBatch();
+			return srv.signOut().equals("signed out");
+		case "buy":
+			return srv.purchase(arg(words, 1), Integer.parseInt(arg(words, 2)));
+		case "sell":
+			LotQueue.Order order = words.length > 3 && words[3].equalsIgnoreCase("lifo") ? LotQueue.Order.LIFO
+					: LotQueue.Order.FIFO;
+			return srv.sell(arg(words, 1), Integer.parseInt(arg(words, 2)), order);
+		case "nextday":
+			return srv.nextDay();
+		case "save":
+			return srv.flushBatch();
+		case "report":
+			String name = arg(words, 1).toLowerCase();
+			switch (name) {
+			case "stocks":
+				srv.listAllStocks(report, 0, Integer.MAX_VALUE);
+				break;
+			case "own":
+				srv.listOwnStocks(report, 0, Integer.MAX_VALUE);
+				break;
+			case "track":
+				srv.trackStocks(report, 0, Integer.MAX_VALUE);
+				break;
+			case "top":
+				report.append(srv.viewTopEarners());
+				break;
+			case "returns":
+				report.append(srv.viewTopReturns());
+				break;
+			case "orders":
+				report.append(srv.listTriggerOrders());
+				break;
+			case "risk":
+				report.append(srv.riskReport());
+				break;
+			default:
+				throw new IllegalArgumentException("unknown report: " + name);
+			}
+			return true;
+		default:
+			throw new IllegalArgumentException("unknown command: " + words[0]);
+		}
+	}
+
+	private static String arg(String[] words, int i) {
+		if (i >= words.length) {
+			throw new IllegalArgumentException(words[0] + ": missing argument " + i);
+		}
+		return words[i];
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0 && args[0].equals("--batch")) {
+			Reader r = args.length > 1 ? Files.newBufferedReader(Paths.get(args[1]), StandardCharsets.UTF_8)
+					: new InputStreamReader(System.in, StandardCharsets.UTF_8);
+			PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16),
+					false);
+			int failures;
+			try (BufferedReader in = new BufferedReader(r)) {
+				failures = new StockClient(StockServer.forBatch("defaultDB")).runBatch(in, out);
+			} finally {
+				out.flush();
+			}
+			System.exit(failures == 0 ? 0 : 1);
+		}
+
 		StockClient client = new StockClient();
 		client.run();
 
@@ -0,0 +1,123 @@
+package stocktrader.server;
+
+import stocktrader.common.TransactionFailedException;
+
+/**
+ * @Overview A class that contains the validation and accounting rules of a trade (in Money ticks). It works on
+ *           User and Stock objects only, so it is shared by StockServer.purchase(), StockServer.sellStock() and
+ *           the orders that fire automatically on price updates.
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public abstract class Broker {
+	/**
+	 * @modifies u.ownStock, u.balance, stock.availableQuantity
+	 * @effects <pre>
+	 *  if quantity < 0 \/ quantity > stock.availableQuantity
+	 *    throw TransactionFailedException with the message: not enough quantity
+	 *  else if u.balance < (stock.currentPrice * quantity)
+	 *    throw TransactionFailedException with the message: not enough money
+	 *  else if quantity, time (epoch milliseconds) or day is not valid for a purchase
+	 *    throw TransactionFailedException with the message: invalid purchase
+	 *  else
+	 *    add a lot of quantity shares at stock.currentPrice into u.ownStock
+	 *    (update) subtract quantity from stock.availableQuantity
+	 *    (update) subtract u.balance
+	 * </pre>
+	 */
+	public static void buy(User u, Stock stock, int quantity, long time, int day) throws TransactionFailedException {
+		if (quantity < 0 || quantity > stock.getAvailableQuantity()) {
+			throw new TransactionFailedException("not enough quantity");
+		}
+
+		long cost;
+		try {
+			cost = Money.times(stock.getCurrentPrice(), quantity);
+		} catch (ArithmeticException e) {
+			throw new TransactionFailedException("not enough money");
+		}
+		if (u.getBalance() < cost) {
+			throw new TransactionFailedException("not enough money");
+		}
+
+		if (!u.addToOwnStock(stock, quantity, stock.getCurrentPrice(), time, day)) {
+			throw new TransactionFailedException("invalid purchase");
+		}
+
+		// update the stock
+		stock.setAvailableQuantity(stock.getAvailableQuantity() - quantity);
+		// update u.balance
+		u.setBalance(u.getBalance() - cost);
+	}
+
+	/**
+	 * @requires 0 <= lotNo < u.sizeOfOwnStock()
+	 * @modifies u.ownStock, u.balance, u.realizedProfit, s.availableQuantity
+	 * @effects <pre>
+	 *  let sp be the lotNo-th lot of u.ownStock, s be sp.theStock
+	 *  if quantity < 0 \/ quantity > sp.quantity
+	 *    throw TransactionFailedException with the message: invalid quantity
+	 *  else
+	 *    if sp.quantity = quantity
+	 *      remove sp from u.ownStock
+	 *    else
+	 *      subtract quantity from sp.quantity
+	 *    (update) add quantity to s.availableQuantity
+	 *    (update) add s.currentPrice * quantity to u.balance
+	 *    (update) add (s.currentPrice - sp.purchasePrice) * quantity to u.realizedProfit
+	 * </pre>
+	 */
+	public static void sell(User u, int lotNo, int quantity) throws TransactionFailedException {
+		LotStore lots = u.getLots();
+		int oldQuantity = lots.quantityAt(lotNo);
+		if (quantity < 0 || quantity > oldQuantity) {
+			throw new TransactionFailedException("invalid quantity");
+		}
+
+		Stock s = lots.stockAt(lotNo);
+		long cost = Money.times(lots.priceAt(lotNo), quantity);
+		if (oldQuantity - quantity > 0) {
+			u.reduceOwnStock(lotNo, quantity);
+		} else {
+			u.removeFromOwnStock(lotNo);
+		}
+
+		// update the stock
+		s.setAvailableQuantity(s.getAvailableQuantity() + quantity);
+		// update u.balance
+		long proceeds = Money.times(s.getCurrentPrice(), quantity);
+		u.setBalance(u.getBalance() + proceeds);
+		u.addRealizedProfit(proceeds - cost);
+	}
+
+	/**
+	 * Sells quantity shares of stock across the StockPurchase(s) of u, in FIFO or LIFO order.
+	 * @modifies u.ownStock, u.balance, u.realizedProfit, stock.availableQuantity
+	 * @effects <pre>
+	 *  if quantity <= 0 \/ quantity > total quantity of stock that u owns
+	 *    throw TransactionFailedException with the message: invalid quantity
+	 *  else
+	 *    take quantity shares from the StockPurchase(s) of stock in u.ownStock, oldest first if order is FIFO,
+	 *    newest first if order is LIFO (see User.consumeOwnStock())
+	 *    (update) add quantity to stock.availableQuantity
+	 *    (update) add stock.currentPrice * quantity to u.balance
+	 *    (update) add stock.currentPrice * quantity - purchase cost of the shares taken to u.realizedProfit
+	 *    return the profit realized by this sale
+	 * </pre>
+	 */
+	public static long sellLots(User u, Stock stock, int quantity, LotQueue.Order order)
+			throws TransactionFailedException {
+		if (quantity <= 0 || quantity > u.quantityOf(stock)) {
+			throw new TransactionFailedException("invalid quantity");
+		}
+
+		long cost = u.consumeOwnStock(stock, quantity, order);
+		// update the stock
+		stock.setAvailableQuantity(stock.getAvailableQuantity() + quantity);
+		// update u.balance
+		long proceeds = Money.times(stock.getCurrentPrice(), quantity);
+		u.setBalance(u.getBalance() + proceeds);
+		u.addRealizedProfit(proceeds - cost);
+		return proceeds - cost;
+	}
+}
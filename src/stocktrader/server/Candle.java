@@ -0,0 +1,100 @@
+package stocktrader.server;
+
+/**
+ * @Overview Candle represents the open, high, low, close prices and the traded volume of a stock in one period
+ * @attributes <pre>
+ * period		long
+ * open			double
+ * high			double
+ * low			double
+ * close		double
+ * volume		long
+ * </pre>
+ * @Object a typical Candle is c:<p, o, h, l, c, v> where p is the number of the period (batch number, day or week),
+ *         o, h, l, c are the first, highest, lowest, last price in the period, v is the number of shares traded
+ * AF(c) = c:<p, o, h, l, c, v>
+ * @rep_invariant
+ * 	l <= o <= h && l <= c <= h && v>=0
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public class Candle {
+	public enum Resolution {
+		/**
+		 * one candle per batch of price changes (i.e. per nextDay())
+		 */
+		BATCH,
+		DAY,
+		/**
+		 * days 1-7 are week 1, days 8-14 are week 2, ...
+		 */
+		WEEK
+	}
+
+	private final long period;
+	private final double open;
+	private final double high;
+	private final double low;
+	private final double close;
+	private final long volume;
+
+	/**
+	 * @effects initialize this as c:<period, open, high, low, close, volume>
+	 */
+	public Candle(long period, double open, double high, double low, double close, long volume) {
+		this.period = period;
+		this.open = open;
+		this.high = high;
+		this.low = low;
+		this.close = close;
+		this.volume = volume;
+	}
+
+	/**
+	 * @effects return period
+	 */
+	public long getPeriod() {
+		return period;
+	}
+
+	/**
+	 * @effects return open
+	 */
+	public double getOpen() {
+		return open;
+	}
+
+	/**
+	 * @effects return high
+	 */
+	public double getHigh() {
+		return high;
+	}
+
+	/**
+	 * @effects return low
+	 */
+	public double getLow() {
+		return low;
+	}
+
+	/**
+	 * @effects return close
+	 */
+	public double getClose() {
+		return close;
+	}
+
+	/**
+	 * @effects return volume
+	 */
+	public long getVolume() {
+		return volume;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + ":<" + period + ", " + open + ", " + high + ", " + low + ", " + close
+				+ ", " + volume + ">";
+	}
+}
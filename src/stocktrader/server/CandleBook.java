@@ -0,0 +1,168 @@
+package stocktrader.server;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * @Overview CandleBook keeps the latest OHLCV candles of every stock at every Candle.Resolution. Candles are updated
+ *           in place on each price change or fill and are never recomputed from the price history.
+ * @attributes <pre>
+ * batch		long
+ * series		HashMap<String, CandleSeries[]>
+ * </pre>
+ * @Object a typical CandleBook is c:<b, s> where b is the number of the current batch of price changes,
+ *         s maps a stock id to one CandleSeries per resolution (indexed by Resolution.ordinal())
+ * AF(c) = c:<b, s>
+ * @rep_invariant
+ * 	b>=0 && s!=null
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public class CandleBook implements Serializable {
+	/**
+	 * number of candles kept for each stock and resolution
+	 */
+	public static final int CAPACITY = 512;
+
+	private long batch;
+	private HashMap<String, CandleSeries[]> series;
+
+	/**
+	 * @effects initialize this as c:<0, {}>
+	 */
+	public CandleBook() {
+		series = new HashMap<>();
+	}
+
+	/**
+	 * @modifies this.batch
+	 * @effects start a new batch of price changes, i.e. the following updates go into new BATCH candles
+	 */
+	public void beginBatch() {
+		batch++;
+	}
+
+	/**
+	 * @modifies this
+	 * @effects update the candles of stockId at all resolutions with the new price
+	 */
+	public void onPrice(String stockId, double price, int day) {
+		update(stockId, price, 0, day);
+	}
+
+	/**
+	 * @modifies this
+	 * @effects update the candles of stockId at all resolutions with quantity shares traded at price
+	 */
+	public void onFill(String stockId, double price, int quantity, int day) {
+		update(stockId, price, quantity, day);
+	}
+
+	/**
+	 * @effects <pre>
+	 *  return the latest min(n, number of candles) candles of stockId at resolution, oldest first
+	 *  (an empty array if stockId has no candles)
+	 * </pre>
+	 */
+	public Candle[] latest(String stockId, Candle.Resolution resolution, int n) {
+		CandleSeries[] s = series.get(stockId);
+		return (s != null) ? s[resolution.ordinal()].latest(n) : new Candle[0];
+	}
+
+	private void update(String stockId, double price, long volume, int day) {
+		CandleSeries[] s = series.get(stockId);
+		if (s == null) {
+			s = new CandleSeries[Candle.Resolution.values().length];
+			for (int i = 0; i < s.length; i++) {
+				s[i] = new CandleSeries();
+			}
+			series.put(stockId, s);
+		}
+		s[Candle.Resolution.BATCH.ordinal()].update(batch, price, volume);
+		s[Candle.Resolution.DAY.ordinal()].update(day, price, volume);
+		s[Candle.Resolution.WEEK.ordinal()].update((day - 1) / 7 + 1, price, volume);
+	}
+
+	/**
+	 * @Overview A ring buffer of at most CAPACITY candles stored in parallel primitive arrays.
+	 *           Arrays grow on demand so that stocks with few candles stay small.
+	 */
+	private static class CandleSeries implements Serializable {
+		private long[] period = new long[4];
+		private double[] open = new double[4];
+		private double[] high = new double[4];
+		private double[] low = new double[4];
+		private double[] close = new double[4];
+		private long[] volume = new long[4];
+		private int head; // index of the oldest candle
+		private int count;
+
+		void update(long p, double price, long vol) {
+			if (count > 0) {
+				int last = (head + count - 1) % period.length;
+				if (period[last] == p) {
+					high[last] = Math.max(high[last], price);
+					low[last] = Math.min(low[last], price);
+					close[last] = price;
+					volume[last] += vol;
+					return;
+				}
+			}
+
+			if (count == period.length) {
+				if (count < CAPACITY) {
+					grow();
+				} else {
+					// drop the oldest candle
+					head = (head + 1) % period.length;
+					count--;
+				}
+			}
+			int i = (head + count) % period.length;
+			period[i] = p;
+			open[i] = price;
+			high[i] = price;
+			low[i] = price;
+			close[i] = price;
+			volume[i] = vol;
+			count++;
+		}
+
+		Candle[] latest(int n) {
+			n = Math.max(0, Math.min(n, count));
+			Candle[] result = new Candle[n];
+			int first = head + count - n;
+			for (int k = 0; k < n; k++) {
+				int i = (first + k) % period.length;
+				result[k] = new Candle(period[i], open[i], high[i], low[i], close[i], volume[i]);
+			}
+			return result;
+		}
+
+		private void grow() {
+			int newLength = Math.min(period.length * 2, CAPACITY);
+			period = rotate(period, newLength);
+			open = rotate(open, newLength);
+			high = rotate(high, newLength);
+			low = rotate(low, newLength);
+			close = rotate(close, newLength);
+			volume = rotate(volume, newLength);
+			head = 0;
+		}
+
+		private long[] rotate(long[] a, int newLength) {
+			long[] b = Arrays.copyOf(a, newLength);
+			System.arraycopy(a, head, b, 0, a.length - head);
+			System.arraycopy(a, 0, b, a.length - head, head);
+			return b;
+		}
+
+		private double[] rotate(double[] a, int newLength) {
+			double[] b = Arrays.copyOf(a, newLength);
+			System.arraycopy(a, head, b, 0, a.length - head);
+			System.arraycopy(a, 0, b, a.length - head, head);
+			return b;
+		}
+	}
+}
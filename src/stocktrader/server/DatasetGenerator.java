@@ -0,0 +1,475 @@
+package stocktrader.server;
+
+import stocktrader.common.NotPossibleException;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @Overview DatasetGenerator writes a new DB of any size: users users, stocks stocks, and lots for every user
+ *           (lotsPerUser lots on average, the most popular stocks being bought the most), all drawn from seed, so
+ *           the same arguments always give the same DB, byte for byte.
+ *           The lots are bought as Broker.buy() would buy them: a user starts with some money for every lot it asks
+ *           for, a lot it cannot pay is refused, and the cost of a lot is taken from the balance of the user and
+ *           its shares from the availableQuantity of the stock. Every stock is issued with its drawn quantity plus
+ *           the shares its lots ask for, so it never runs short: it ends with its drawn quantity plus the shares of
+ *           the refused lots. Because a stock is written with the first user holding it, the users are drawn twice:
+ *           once to count the refused shares of every stock, then again to be written.
+ *           The users are generated in parallel, chunk by chunk, each chunk from its own random generator derived
+ *           from seed and its number, and they are written to the DB in order as their chunks are ready, a few
+ *           chunks ahead at most. The lots of a user are written as columns of numbers (see LotStore) and given
+ *           back as soon as the user is written, so the generator never holds the lots of the dataset: only the
+ *           stocks, and the users themselves, which the stream has to remember because it writes every object
+ *           once.
+ *           The DB has the fixed head read by StockServer (the other parts are built by the server when it first
+ *           loads the DB); it is written to a temporary file which then replaces `DBname.dat`.
+ *           Usage: DatasetGenerator users stocks lotsPerUser [seed] [threads] [DB name]
+ * @attributes <pre>
+ * users		int
+ * stocks		int
+ * lotsPerUser	int
+ * seed			long
+ * threads		int
+ * </pre>
+ * @Object a typical DatasetGenerator is c:<u, s, l, sd, t>
+ * AF(c) = c:<u, s, l, sd, t>
+ * @rep_invariant
+ * 	u >= 0 && 1 <= s <= 26^6 && l >= 0 && t >= 1
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public class DatasetGenerator {
+	/**
+	 * the editor of a DB that has not been saved by the server yet, it must not be a valid User.userName
+	 */
+	static final String SETUP_EDITOR = "000 SeRvEr_-_SeTuP 000";
+	private static final int CHUNK = 4096;
+	private static final int MAX_STOCKS = 26 * 26 * 26 * 26 * 26 * 26;
+	/**
+	 * the lots of a generated DB are bought on day 1, from 2021-11-27 00:00 UTC on
+	 */
+	private static final long FIRST_PURCHASE = 1_637_971_200_000L;
+	private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+	/**
+	 * the money of a user is between $20 and $30 times 1 + LOT_BUDGET * the number of lots it asks for
+	 */
+	private static final int LOT_BUDGET = 25;
+	private static final int STOCK_STREAM = 1;
+	private static final int USER_STREAM = 2;
+
+	private final int users;
+	private final int stocks;
+	private final int lotsPerUser;
+	private final long seed;
+	private final int threads;
+
+	/**
+	 * @effects <pre>
+	 *  if users < 0 \/ stocks < 1 \/ stocks > 26^6 \/ lotsPerUser < 0 \/ threads < 1
+	 *    throw IllegalArgumentException
+	 *  else
+	 *    initialize this as c:<users, stocks, lotsPerUser, seed, threads>
+	 * </pre>
+	 */
+	public DatasetGenerator(int users, int stocks, int lotsPerUser, long seed, int threads) {
+		if (users < 0 || stocks < 1 || stocks > MAX_STOCKS || lotsPerUser < 0 || threads < 1) {
+			throw new IllegalArgumentException("invalid dataset:'" + users + ", " + stocks + ", " + lotsPerUser + ", "
+					+ threads + "'");
+		}
+		this.users = users;
+		this.stocks = stocks;
+		this.lotsPerUser = lotsPerUser;
+		this.seed = seed;
+		this.threads = threads;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.err.println("Usage: DatasetGenerator users stocks lotsPerUser [seed] [threads] [DB name]");
+			return;
+		}
+		int users = Integer.parseInt(args[0]);
+		int stocks = Integer.parseInt(args[1]);
+		int lots = Integer.parseInt(args[2]);
+		long seed = args.length > 3 ? Long.parseLong(args[3]) : 1L;
+		int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+		String dbName = args.length > 5 ? args[5] : "defaultDB";
+
+		long t0 = System.nanoTime();
+		new DatasetGenerator(users, stocks, lots, seed, threads).generate(dbName);
+		System.out.println(String.format("%d users, %d stocks, %d lots per user on average (seed %d): %s.dat, %d MB"
+				+ " in %.1f s", users, stocks, lots, seed, dbName, new File(dbName + ".dat").length() >> 20,
+				(System.nanoTime() - t0) / 1e9));
+	}
+
+	/**
+	 * @modifies `DBname.dat`
+	 * @effects write the DB of this into `DBname.dat`
+	 * @throws IOException if the file cannot be written
+	 */
+	public void generate(String DBname) throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			ArrayList<Stock> market = generateStocks(pool);
+			Stock[] m = market.toArray(new Stock[market.size()]);
+			issueStocks(pool, m);
+			// written at the end of day 1, after the lots
+			writeDB(DBname, new Date(FIRST_PURCHASE + DAY_MILLIS), new UserStream(users, new Pipeline(pool, m)),
+					market);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * @modifies `DBname.dat`
+	 * @effects write a new DB of users and stocks on day 1 into `DBname.dat`
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void writeDB(String DBname, final List<User> users, List<Stock> stocks) throws IOException {
+		writeDB(DBname, MarketClock.system().virtualDate(1), new UserStream(users.size(), new UserSource() {
+			@Override
+			public void writeTo(ObjectOutputStream out) throws IOException {
+				for (User u : users) {
+					out.writeObject(u);
+				}
+			}
+		}), stocks);
+	}
+
+	private static void writeDB(String DBname, Date time, UserStream users, List<Stock> stocks) throws IOException {
+		File target = new File(DBname + ".dat");
+		File tmp = File.createTempFile(target.getName(), ".tmp", target.getAbsoluteFile().getParentFile());
+		try {
+			try (ObjectOutputStream oos = new ObjectOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+				oos.writeObject(time);
+				oos.writeObject(SETUP_EDITOR);
+				oos.writeObject(users);
+				oos.writeObject(new ArrayList<>(stocks));
+				oos.writeObject(1);
+			}
+			try {
+				Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * @effects return the stocks of this, generated in parallel by pool
+	 */
+	private ArrayList<Stock> generateStocks(ExecutorService pool) throws IOException {
+		// the ids are the numbers of an affine permutation of [0, 26^length) written in letters, so they are all
+		// different and do not follow the order of the stocks
+		int length = 3;
+		long range = 26 * 26 * 26;
+		while (range < stocks) {
+			length++;
+			range *= 26;
+		}
+		SplittableRandom r = random(seed, STOCK_STREAM, -1);
+		long a = 1 + 2 * r.nextLong(range / 2);
+		while (a % 13 == 0) {
+			a += 2;
+		}
+		final long multiplier = a % range;
+		final long offset = r.nextLong(range);
+		final long idRange = range;
+		final int idLength = length;
+
+		ArrayList<Future<Stock[]>> chunks = new ArrayList<>();
+		for (int c = 0; c * CHUNK < stocks; c++) {
+			final int chunk = c;
+			chunks.add(pool.submit(new Callable<Stock[]>() {
+				@Override
+				public Stock[] call() throws NotPossibleException {
+					SplittableRandom rnd = random(seed, STOCK_STREAM, chunk);
+					int from = chunk * CHUNK;
+					Stock[] s = new Stock[Math.min(CHUNK, stocks - from)];
+					for (int k = 0; k < s.length; k++) {
+						long n = (multiplier * (from + k) + offset) % idRange;
+						s[k] = new Stock(letters(n, idLength), randomCompanyName(rnd), randomStockPrice(rnd),
+								randomQuantity(rnd));
+					}
+					return s;
+				}
+			}));
+		}
+		ArrayList<Stock> market = new ArrayList<>(stocks);
+		for (Future<Stock[]> f : chunks) {
+			for (Stock s : get(f)) {
+				market.add(s);
+			}
+		}
+		return market;
+	}
+
+	/**
+	 * @requires market.length == stocks
+	 * @modifies market[k].availableQuantity for every k
+	 * @effects <pre>
+	 *  draw the users of every chunk on pool, and issue every stock of market with its drawn quantity plus the
+	 *  shares its lots ask for, minus the shares of the lots bought (i.e. plus the shares of the refused lots)
+	 * </pre>
+	 */
+	private void issueStocks(ExecutorService pool, Stock[] market) throws IOException {
+		final Stock[] m = market;
+		final AtomicLongArray refused = new AtomicLongArray(m.length);
+		ArrayList<Future<User[]>> chunks = new ArrayList<>();
+		for (int c = 0; c * CHUNK < users; c++) {
+			final int chunk = c;
+			chunks.add(pool.submit(new Callable<User[]>() {
+				@Override
+				public User[] call() throws NotPossibleException {
+					return drawUsers(chunk, m, refused, false);
+				}
+			}));
+		}
+		for (Future<User[]> f : chunks) {
+			get(f);
+		}
+		for (int k = 0; k < m.length; k++) {
+			m[k].setAvailableQuantity((int) Math.min(Integer.MAX_VALUE, m[k].getAvailableQuantity() + refused.get(k)));
+		}
+	}
+
+	/**
+	 * @requires market.length == stocks /\ the stocks of market have been issued (see issueStocks())
+	 * @effects return the users of chunk (numbered from chunk * CHUNK + 1), with their lots of stocks of market
+	 */
+	private User[] generateUsers(int chunk, Stock[] market) throws NotPossibleException {
+		return drawUsers(chunk, market, null, true);
+	}
+
+	/**
+	 * @requires market.length == stocks
+	 * @modifies refused
+	 * @effects <pre>
+	 *  draw the users of chunk (numbered from chunk * CHUNK + 1) and the lots they ask for; every user starts with
+	 *  randomBalance() * (1 + LOT_BUDGET * the number of lots it asks for), and for every lot, in order
+	 *    if the user cannot pay price * quantity
+	 *      the lot is refused (as Broker.buy() refuses it): if refused!=null, add quantity to refused[stock]
+	 *    else
+	 *      subtract price * quantity from the balance of the user and add the lot to it
+	 *  if build
+	 *    return the users
+	 *  else
+	 *    return null
+	 * </pre>
+	 */
+	private User[] drawUsers(int chunk, Stock[] market, AtomicLongArray refused, boolean build)
+			throws NotPossibleException {
+		SplittableRandom rnd = random(seed, USER_STREAM, chunk);
+		int from = chunk * CHUNK;
+		User[] u = build ? new User[Math.min(CHUNK, users - from)] : null;
+		for (int k = 0, n = Math.min(CHUNK, users - from); k < n; k++) {
+			int no = from + k + 1;
+			// about lotsPerUser lots, a few users having many more
+			int lots = (int) Math.min(50L * lotsPerUser, (long) (-Math.log(1 - rnd.nextDouble()) * lotsPerUser));
+			long balance = Money.times(randomBalance(rnd), 1 + (long) LOT_BUDGET * lots);
+			User user = build ? new User("user" + no, "pw" + no, "User " + no, balance, 1) : null;
+			for (int i = 0; i < lots; i++) {
+				// the stocks at the beginning of the market are the most popular
+				double popularity = rnd.nextDouble();
+				int stock = (int) (market.length * popularity * popularity);
+				Stock s = market[stock];
+				long price = Math.max(1, Money.scale(s.getCurrentPrice(),
+						Money.RATE_SCALE / 2 + rnd.nextLong(Money.RATE_SCALE)));
+				int quantity = 1 + rnd.nextInt(100);
+				long time = FIRST_PURCHASE + rnd.nextLong(DAY_MILLIS);
+				long cost = Money.times(price, quantity);
+				if (balance < cost) {
+					if (refused != null) {
+						refused.addAndGet(stock, quantity);
+					}
+					continue;
+				}
+				balance -= cost;
+				if (build) {
+					user.addToOwnStock(s, quantity, price, time, 1);
+				}
+			}
+			if (build) {
+				user.setBalance(balance);
+				u[k] = user;
+			}
+		}
+		return u;
+	}
+
+	/**
+	 * @effects return the random generator of chunk in stream, drawn from seed
+	 */
+	private static SplittableRandom random(long seed, int stream, int chunk) {
+		return new SplittableRandom(new SplittableRandom(seed ^ ((long) stream << 32 | (chunk & 0xffffffffL)))
+				.nextLong());
+	}
+
+	private static <T> T get(Future<T> f) throws IOException {
+		try {
+			return f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while generating the dataset");
+		} catch (ExecutionException e) {
+			throw new IOException("cannot generate the dataset", e.getCause());
+		}
+	}
+
+	/**
+	 * @effects return n written in base 26 with the letters A-Z, on length letters
+	 */
+	static String letters(long n, int length) {
+		char[] c = new char[length];
+		for (int i = length - 1; i >= 0; i--) {
+			c[i] = (char) ('A' + n % 26);
+			n /= 26;
+		}
+		return new String(c);
+	}
+
+	/**
+	 * @effects return a random balance between $20 and $30
+	 */
+	static long randomBalance(SplittableRandom rnd) {
+		return Money.of(Math.ceil(rnd.nextDouble() * 100 + 200) / 10);
+	}
+
+	/**
+	 * @effects return a random price between $1 and $20
+	 */
+	static long randomStockPrice(SplittableRandom rnd) {
+		return Money.of(Math.ceil(rnd.nextDouble() * 190 + 10) / 10);
+	}
+
+	/**
+	 * @effects return a random quantity between 100 and 1000
+	 */
+	static int randomQuantity(SplittableRandom rnd) {
+		return (int) (rnd.nextDouble() * 900 + 100);
+	}
+
+	/**
+	 * @effects return length random uppercase letters
+	 */
+	static String randomLetters(SplittableRandom rnd, int length) {
+		char[] c = new char[length];
+		for (int i = 0; i < length; i++) {
+			c[i] = (char) ('A' + rnd.nextInt(26));
+		}
+		return new String(c);
+	}
+
+	/**
+	 * @effects return a random company name of 3 doubled uppercase letters, such as AABBCC
+	 */
+	static String randomCompanyName(SplittableRandom rnd) {
+		char[] c = new char[6];
+		for (int i = 0; i < 6; i += 2) {
+			c[i] = c[i + 1] = (char) ('A' + rnd.nextInt(26));
+		}
+		return new String(c);
+	}
+
+	/**
+	 * @Overview Writes the users of a UserStream to the stream of the DB.
+	 */
+	private interface UserSource {
+		void writeTo(ObjectOutputStream out) throws IOException;
+	}
+
+	/**
+	 * @Overview The users of this generator, generated by pool at most 2 chunks per thread ahead of the chunk being
+	 *           written.
+	 */
+	private final class Pipeline implements UserSource {
+		private final ExecutorService pool;
+		private final Stock[] market;
+
+		private Pipeline(ExecutorService pool, Stock[] market) {
+			this.pool = pool;
+			this.market = market;
+		}
+
+		@Override
+		public void writeTo(ObjectOutputStream out) throws IOException {
+			int chunks = (users + CHUNK - 1) / CHUNK;
+			ArrayDeque<Future<User[]>> window = new ArrayDeque<>();
+			int next = 0;
+			for (int c = 0; c < chunks; c++) {
+				while (next < chunks && window.size() < 2 * threads) {
+					final int chunk = next++;
+					window.add(pool.submit(new Callable<User[]>() {
+						@Override
+						public User[] call() throws NotPossibleException {
+							return generateUsers(chunk, market);
+						}
+					}));
+				}
+				for (User u : get(window.poll())) {
+					out.writeObject(u);
+					// the stream keeps u until it is closed, its lots are in the stream already
+					u.getLots().clear();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @Overview The users of a DB, written one by one from a UserSource instead of from the elements of a list.
+	 *           In the DB it is read back as an ArrayList<User> holding the users.
+	 */
+	private static final class UserStream extends ArrayList<User> {
+		private static final long serialVersionUID = 1L;
+		private final transient int count;
+		private final transient UserSource source;
+
+		private UserStream(int count, UserSource source) {
+			this.count = count;
+			this.source = source;
+		}
+
+		private void writeObject(ObjectOutputStream out) throws IOException {
+			out.defaultWriteObject();
+			out.writeInt(count);
+			source.writeTo(out);
+		}
+
+		private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+			in.defaultReadObject();
+			int n = in.readInt();
+			ensureCapacity(n);
+			for (int i = 0; i < n; i++) {
+				add((User) in.readObject());
+			}
+		}
+
+		private Object readResolve() {
+			return new ArrayList<>(this);
+		}
+	}
+}
@@ -0,0 +1,377 @@
+package stocktrader.server;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * @Overview Leaderboard ranks users by balance (highest first), ties broken by currentDate (lowest first) and then
+ *           by userName. It is an order-statistic treap whose nodes live in parallel arrays, so "top K",
+ *           "page N" and "rank of u" take O(log n) (plus the size of the answer) and the ranking is only
+ *           touched when a user's balance or currentDate changes.
+ *           Every node keeps the key its user had when it was last updated, so update() can find the old place
+ *           of a user after its balance has changed.
+ * @attributes <pre>
+ * users		User[]
+ * balances		long[]
+ * dates		int[]
+ * left			int[]
+ * right		int[]
+ * sizes		int[]
+ * priorities	int[]
+ * root			int
+ * count		int
+ * free			int
+ * seed			int
+ * nodes		HashMap<String, Integer>
+ * </pre>
+ * @Object a typical Leaderboard is c:<u, b, d, l, r, sz, p, rt, n, f, s> where node i (i >= 1) is the user u[i]
+ *         with the key <b[i], d[i]>, l[i], r[i] are its children (0 is no node), sz[i] is the size of its subtree,
+ *         p[i] is its heap priority, rt is the root, n is the number of slots in use, f is the first free slot
+ *         (freed slots are chained through l), s is the state of the priority generator
+ * AF(c) = c:<u, b, d, l, r, sz, p, rt, n, f, s>
+ * @rep_invariant
+ * 	the in-order sequence from rt is sorted by (b desc, d asc, userName asc) &&
+ * 	p[i] >= p[l[i]] && p[i] >= p[r[i]] &&
+ * 	sz[i] == 1 + sz[l[i]] + sz[r[i]] && sz[0] == 0 &&
+ * 	nodes maps the userName of every user in the tree to its node (derived attribute)
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public class Leaderboard implements Serializable {
+	private User[] users;
+	private long[] balances;
+	private int[] dates;
+	private int[] left;
+	private int[] right;
+	private int[] sizes;
+	private int[] priorities;
+	private int root;
+	private int count;
+	private int free;
+	private int seed;
+	private transient HashMap<String, Integer> nodes;
+	// results of split()
+	private transient int splitLeft;
+	private transient int splitRight;
+
+	/**
+	 * @effects initialize this with all users in users
+	 */
+	public Leaderboard(List<User> users) {
+		int capacity = Math.max(8, users.size() + 1);
+		this.users = new User[capacity];
+		this.balances = new long[capacity];
+		this.dates = new int[capacity];
+		this.left = new int[capacity];
+		this.right = new int[capacity];
+		this.sizes = new int[capacity];
+		this.priorities = new int[capacity];
+		this.count = 1; // slot 0 is the empty tree
+		this.seed = 0x2545F491;
+		this.nodes = new HashMap<>(capacity * 4 / 3 + 1);
+		for (User u : users) {
+			update(u);
+		}
+	}
+
+	/**
+	 * @effects return the number of users in this
+	 */
+	public int size() {
+		return sizes[root];
+	}
+
+	/**
+	 * @modifies this
+	 * @effects <pre>
+	 *  if u is not in this
+	 *    add u
+	 *  else if u.balance or u.currentDate has changed since u was last added or updated
+	 *    move u to its new rank
+	 * </pre>
+	 */
+	public void update(User u) {
+		Integer n = nodes.get(u.getUserName());
+		if (n == null) {
+			int i = allocate(u);
+			insert(i);
+			nodes.put(u.getUserName(), i);
+		} else {
+			int i = n;
+			if (balances[i] == u.getBalance() && dates[i] == u.getCurrentDate()) {
+				users[i] = u;
+				return;
+			}
+			delete(i);
+			users[i] = u;
+			balances[i] = u.getBalance();
+			dates[i] = u.getCurrentDate();
+			left[i] = 0;
+			right[i] = 0;
+			sizes[i] = 1;
+			insert(i);
+		}
+	}
+
+	/**
+	 * @modifies this
+	 * @effects remove u from this if it is in this
+	 */
+	public void remove(User u) {
+		Integer n = nodes.remove(u.getUserName());
+		if (n != null) {
+			int i = n;
+			delete(i);
+			users[i] = null;
+			left[i] = free;
+			free = i;
+		}
+	}
+
+	/**
+	 * @effects <pre>
+	 *  if u is in this
+	 *    return the rank of u, 1 being the first
+	 *  else
+	 *    return -1
+	 * </pre>
+	 */
+	public int rankOf(User u) {
+		Integer n = nodes.get(u.getUserName());
+		if (n == null) {
+			return -1;
+		}
+		int i = n;
+		int rank = 1;
+		int t = root;
+		while (t != 0) {
+			int c = compare(i, t);
+			if (c < 0) {
+				t = left[t];
+			} else {
+				rank += sizes[left[t]];
+				if (c == 0) {
+					break;
+				}
+				rank++;
+				t = right[t];
+			}
+		}
+		return rank;
+	}
+
+	/**
+	 * @requires 1 <= rank <= size()
+	 * @effects return the user at rank
+	 */
+	public User get(int rank) {
+		int t = root;
+		int k = rank - 1;
+		while (t != 0) {
+			int l = sizes[left[t]];
+			if (k < l) {
+				t = left[t];
+			} else if (k == l) {
+				return users[t];
+			} else {
+				k -= l + 1;
+				t = right[t];
+			}
+		}
+		throw new IndexOutOfBoundsException("rank: " + rank + ", size: " + size());
+	}
+
+	/**
+	 * @effects return the users ranked from fromRank to toRank (both inclusive, clipped to [1, size()]), in order
+	 */
+	public ArrayList<User> range(int fromRank, int toRank) {
+		int from = Math.max(1, fromRank);
+		int to = Math.min(size(), toRank);
+		ArrayList<User> result = new ArrayList<>(Math.max(0, to - from + 1));
+		if (from <= to) {
+			collect(root, 0, from - 1, to - 1, result);
+		}
+		return result;
+	}
+
+	/**
+	 * @effects return range(1, k)
+	 */
+	public ArrayList<User> top(int k) {
+		return range(1, k);
+	}
+
+	/**
+	 * @requires pageSize > 0
+	 * @effects return the users of the page-th page (0 being the first) when pages hold pageSize users
+	 */
+	public ArrayList<User> page(int page, int pageSize) {
+		long from = (long) page * pageSize + 1;
+		if (page < 0 || from > size()) {
+			return new ArrayList<>(0);
+		}
+		return range((int) from, (int) Math.min(size(), from + pageSize - 1));
+	}
+
+	/**
+	 * @modifies result
+	 * @effects append the users of the subtree t whose 0-based rank (offset + rank in t) is in [from, to]
+	 */
+	private void collect(int t, int offset, int from, int to, List<User> result) {
+		while (t != 0) {
+			int mine = offset + sizes[left[t]];
+			if (from < mine) {
+				collect(left[t], offset, from, to, result);
+			}
+			if (mine > to) {
+				return;
+			}
+			if (mine >= from) {
+				result.add(users[t]);
+			}
+			offset = mine + 1;
+			t = right[t];
+		}
+	}
+
+	/**
+	 * @effects return a negative number, 0, or a positive number as node a ranks before, the same as, or after b
+	 */
+	private int compare(int a, int b) {
+		if (balances[a] != balances[b]) {
+			return balances[a] > balances[b] ? -1 : 1;
+		}
+		if (dates[a] != dates[b]) {
+			return dates[a] < dates[b] ? -1 : 1;
+		}
+		return users[a].getUserName().compareTo(users[b].getUserName());
+	}
+
+	private int allocate(User u) {
+		int i;
+		if (free != 0) {
+			i = free;
+			free = left[i];
+		} else {
+			if (count == users.length) {
+				grow();
+			}
+			i = count++;
+		}
+		users[i] = u;
+		balances[i] = u.getBalance();
+		dates[i] = u.getCurrentDate();
+		left[i] = 0;
+		right[i] = 0;
+		sizes[i] = 1;
+		priorities[i] = nextPriority();
+		return i;
+	}
+
+	private void grow() {
+		int n = users.length * 2;
+		users = Arrays.copyOf(users, n);
+		balances = Arrays.copyOf(balances, n);
+		dates = Arrays.copyOf(dates, n);
+		left = Arrays.copyOf(left, n);
+		right = Arrays.copyOf(right, n);
+		sizes = Arrays.copyOf(sizes, n);
+		priorities = Arrays.copyOf(priorities, n);
+	}
+
+	private int nextPriority() {
+		// xorshift32
+		int x = seed;
+		x ^= x << 13;
+		x ^= x >>> 17;
+		x ^= x << 5;
+		seed = x;
+		return x;
+	}
+
+	private void insert(int i) {
+		split(root, i);
+		root = merge(merge(splitLeft, i), splitRight);
+	}
+
+	private void delete(int i) {
+		split(root, i);
+		int l = splitLeft;
+		root = merge(l, removeFirst(splitRight));
+	}
+
+	/**
+	 * @effects splitLeft = the nodes of t that rank before node i, splitRight = the other nodes of t
+	 */
+	private void split(int t, int i) {
+		if (t == 0) {
+			splitLeft = 0;
+			splitRight = 0;
+		} else if (compare(t, i) < 0) {
+			split(right[t], i);
+			right[t] = splitLeft;
+			pull(t);
+			splitLeft = t;
+		} else {
+			split(left[t], i);
+			left[t] = splitRight;
+			pull(t);
+			splitRight = t;
+		}
+	}
+
+	/**
+	 * @requires every node of a ranks before every node of b
+	 * @effects return the tree holding the nodes of a and b
+	 */
+	private int merge(int a, int b) {
+		if (a == 0) {
+			return b;
+		}
+		if (b == 0) {
+			return a;
+		}
+		if (priorities[a] >= priorities[b]) {
+			right[a] = merge(right[a], b);
+			pull(a);
+			return a;
+		} else {
+			left[b] = merge(a, left[b]);
+			pull(b);
+			return b;
+		}
+	}
+
+	private int removeFirst(int t) {
+		if (left[t] == 0) {
+			return right[t];
+		}
+		left[t] = removeFirst(left[t]);
+		pull(t);
+		return t;
+	}
+
+	private void pull(int t) {
+		sizes[t] = 1 + sizes[left[t]] + sizes[right[t]];
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		nodes = new HashMap<>(users.length * 4 / 3 + 1);
+		for (int i = 1; i < count; i++) {
+			if (users[i] != null) {
+				nodes.put(users[i].getUserName(), i);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + ":<" + size() + " users>";
+	}
+}
@@ -0,0 +1,180 @@
+package stocktrader.server;
+
+/**
+ * @Overview LotQueue represents the lots of one stock in the order they were bought, as a deque over a ring of
+ *           slots of a LotStore (where the quantity and the purchase price of every lot are kept), so a sale reads
+ *           and consumes lots from either end without touching the other lots. Slots only grow from the oldest
+ *           lot to the newest one, so a lot is found by binary search.
+ * @attributes <pre>
+ * slots			int[]
+ * head				int
+ * size				int
+ * </pre>
+ * @Object a typical LotQueue is c:<s, h, n> where s is a ring of capacity s.length, h is the place of the oldest lot,
+ *         n is the number of lots; the i-th oldest lot is at slot s[(h + i) % s.length] of the LotStore
+ * AF(c) = c:<s, h, n>
+ * @rep_invariant
+ * 	s.length is a power of 2 &&
+ * 	0 <= h < s.length && 0 <= n <= s.length &&
+ * 	the slots of the lots are increasing from the oldest lot to the newest one
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public class LotQueue {
+	public enum Order {
+		/**
+		 * the oldest lot is sold first
+		 */
+		FIFO,
+		/**
+		 * the newest lot is sold first
+		 */
+		LIFO
+	}
+
+	private int[] slots;
+	private int head;
+	private int size;
+
+	/**
+	 * @effects initialize this as an empty queue
+	 */
+	LotQueue() {
+		slots = new int[2];
+	}
+
+	/**
+	 * @effects return the number of lots
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @effects return true if this holds no lot
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @requires 0 <= i < size
+	 * @effects return the slot of the i-th oldest lot
+	 */
+	int get(int i) {
+		return slots[place(i)];
+	}
+
+	/**
+	 * @effects <pre>
+	 *  if slot is in this
+	 *    return its position, 0 being the oldest lot
+	 *  else
+	 *    return -1
+	 * </pre>
+	 */
+	int indexOf(int slot) {
+		int lo = 0;
+		int hi = size - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int s = slots[place(mid)];
+			if (s < slot) {
+				lo = mid + 1;
+			} else if (s > slot) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @requires slot is greater than every slot in this
+	 * @modifies this
+	 * @effects append slot as the newest lot
+	 */
+	void add(int slot) {
+		if (size == slots.length) {
+			grow();
+		}
+		slots[place(size)] = slot;
+		size++;
+	}
+
+	/**
+	 * @requires slot is not in this
+	 * @modifies this
+	 * @effects insert slot among the lots so that the slots stay increasing
+	 */
+	void insert(int slot) {
+		if (size == slots.length) {
+			grow();
+		}
+		int i = size;
+		while (i > 0 && slots[place(i - 1)] > slot) {
+			slots[place(i)] = slots[place(i - 1)];
+			i--;
+		}
+		slots[place(i)] = slot;
+		size++;
+	}
+
+	/**
+	 * @requires 0 <= i < size
+	 * @modifies this
+	 * @effects remove the i-th oldest lot, shifting the lots on the shorter side by one
+	 */
+	void removeAt(int i) {
+		if (i < size / 2) {
+			for (int j = i; j > 0; j--) {
+				slots[place(j)] = slots[place(j - 1)];
+			}
+			head = (head + 1) & (slots.length - 1);
+		} else {
+			for (int j = i; j < size - 1; j++) {
+				slots[place(j)] = slots[place(j + 1)];
+			}
+		}
+		size--;
+	}
+
+	/**
+	 * @requires !isEmpty()
+	 * @effects return the position of the lot that order sells first
+	 */
+	int next(Order order) {
+		return order == Order.FIFO ? 0 : size - 1;
+	}
+
+	/**
+	 * @requires moved[s] >= 0 for every slot s in this, moved is increasing on them
+	 * @modifies this
+	 * @effects replace every slot s in this with moved[s]
+	 */
+	void remap(int[] moved) {
+		for (int i = 0; i < size; i++) {
+			int k = place(i);
+			slots[k] = moved[slots[k]];
+		}
+	}
+
+	private int place(int i) {
+		return (head + i) & (slots.length - 1);
+	}
+
+	private void grow() {
+		int[] s = new int[slots.length * 2];
+		for (int i = 0; i < size; i++) {
+			s[i] = slots[place(i)];
+		}
+		slots = s;
+		head = 0;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + ":<" + size + " lots>";
+	}
+}
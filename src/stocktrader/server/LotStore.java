@@ -0,0 +1,658 @@
+package stocktrader.server;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * @Overview LotStore represents all lots (purchases) of one User in the order they were bought, kept in columns
+ *           of primitives instead of one StockPurchase object per lot: the stock of a lot is an ordinal in the
+ *           table of the stocks the user has held, its purchase date is a number of epoch milliseconds.
+ *           A StockPurchase is created only when a lot is read as an object (get(), asList()); the other readers
+ *           use the primitive getters, forEach() or a Cursor, which walk the lots without allocating.
+ *           A lot that is sold entirely is only marked as removed (quantity 0); removed lots are dropped in one
+ *           pass (compaction) once they outnumber the others; only the methods that change the lots compact, so
+ *           reading lots (by position, through asList() or a Cursor) never moves them.
+ *           The lots of every stock are also grouped in a Position, which refers to them by slot.
+ * @attributes <pre>
+ * stocks		Stock[]
+ * stockCount	int
+ * ordinals		int[]
+ * quantities	int[]
+ * prices		long[]
+ * times		long[]
+ * days			int[]
+ * size			int
+ * live			int
+ * modCount		int
+ * ordinalOf	HashMap<String, Integer>
+ * positions	HashMap<String, Position>
+ * ranks		int[]
+ * ranksOf		int
+ * </pre>
+ * @Object a typical LotStore is c:<st, sc, o, q, p, t, d, n, l> where st[0..sc-1] is the table of stocks, slot k
+ *         (0 <= k < n) is a lot of the stock st[o[k]] bought q[k] shares at the price p[k] (in Money ticks) on
+ *         the date t[k] (epoch milliseconds) and the day d[k], l is the number of lots that are not removed
+ *         (q[k] > 0); the i-th lot is the i-th slot that is not removed
+ *         (ordinalOf, positions are derived attributes: ordinalOf maps the id of st[j] to j, positions groups the
+ *         lots that are not removed by stock id; modCount counts the changes of the slots, so that a walk over
+ *         the lots fails fast when they change under it; while some lots are removed, ranks[i] is the slot of
+ *         the i-th lot as of modCount ranksOf, built on the first read by position after a change)
+ * AF(c) = c:<st, sc, o, q, p, t, d, n, l>
+ * @rep_invariant
+ * 	0 <= l <= n <= o.length == q.length == p.length == t.length == d.length &&
+ * 	for each slot k < n: 0 <= o[k] < sc && q[k] >= 0 && p[k] >= 0 && d[k] >= 1 &&
+ * 	l == number of slots k < n where q[k] > 0 &&
+ * 	positions has exactly one non-empty Position for each stock id of a lot, holding the slots of that id
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public class LotStore implements Serializable {
+	/**
+	 * @Overview A callback that receives the values of one lot
+	 */
+	public interface Visitor {
+		/**
+		 * @effects handle the lot of quantity shares of theStock bought at purchasePrice (in Money ticks) on
+		 *          purchaseTime (in epoch milliseconds) and purchaseDay
+		 */
+		void visit(Stock theStock, int quantity, long purchasePrice, long purchaseTime, int purchaseDay);
+	}
+
+	/**
+	 * number of removed lots below which the store is never compacted
+	 */
+	private static final int MIN_COMPACT = 16;
+
+	private transient Stock[] stocks;
+	private transient int stockCount;
+	private transient int[] ordinals;
+	private transient int[] quantities;
+	private transient long[] prices;
+	private transient long[] times;
+	private transient int[] days;
+	private transient int size;
+	private transient int live;
+	private transient int modCount;
+	private transient HashMap<String, Integer> ordinalOf; // derived attribute
+	private transient HashMap<String, Position> positions; // derived attribute
+	private transient int[] ranks; // derived attribute
+	private transient int ranksOf;
+
+	/**
+	 * @effects initialize this as an empty store
+	 */
+	LotStore() {
+		init(4, 8);
+	}
+
+	private void init(int stockCapacity, int capacity) {
+		stocks = new Stock[stockCapacity];
+		ordinals = new int[capacity];
+		quantities = new int[capacity];
+		prices = new long[capacity];
+		times = new long[capacity];
+		days = new int[capacity];
+		ordinalOf = new HashMap<>();
+		positions = new HashMap<>();
+		ranks = null;
+	}
+
+	/**
+	 * @effects return the number of lots
+	 */
+	public int size() {
+		return live;
+	}
+
+	/**
+	 * @effects return true if this holds no lot
+	 */
+	public boolean isEmpty() {
+		return live == 0;
+	}
+
+	/**
+	 * @requires 0 <= i < size()
+	 * @effects return a new StockPurchase holding the i-th lot
+	 */
+	public StockPurchase get(int i) {
+		return lotAt(slotOf(i));
+	}
+
+	/**
+	 * @requires 0 <= i < size()
+	 * @effects return the stock of the i-th lot
+	 */
+	public Stock stockAt(int i) {
+		return stocks[ordinals[slotOf(i)]];
+	}
+
+	/**
+	 * @requires 0 <= i < size()
+	 * @effects return the quantity of the i-th lot
+	 */
+	public int quantityAt(int i) {
+		return quantities[slotOf(i)];
+	}
+
+	/**
+	 * @requires 0 <= i < size()
+	 * @effects return the purchase price of the i-th lot (in Money ticks)
+	 */
+	public long priceAt(int i) {
+		return prices[slotOf(i)];
+	}
+
+	/**
+	 * @requires 0 <= i < size()
+	 * @effects return the purchase date of the i-th lot (in epoch milliseconds)
+	 */
+	public long timeAt(int i) {
+		return times[slotOf(i)];
+	}
+
+	/**
+	 * @requires 0 <= i < size()
+	 * @effects return the purchase day of the i-th lot
+	 */
+	public int dayAt(int i) {
+		return days[slotOf(i)];
+	}
+
+	/**
+	 * @effects return an unmodifiable view of the lots in the order they were bought (every read creates a
+	 *          StockPurchase, and leaves the slots of the lots as they are)
+	 */
+	public List<StockPurchase> asList() {
+		return new AbstractList<StockPurchase>() {
+			@Override
+			public StockPurchase get(int i) {
+				return LotStore.this.get(i);
+			}
+
+			@Override
+			public int size() {
+				return live;
+			}
+		};
+	}
+
+	/**
+	 * @requires visitor does not change this
+	 * @effects call visitor.visit() with the values of every lot, in the order they were bought
+	 * @throws ConcurrentModificationException if this changes during the walk
+	 */
+	public void forEach(Visitor visitor) {
+		int expected = modCount;
+		for (int k = 0; k < size; k++) {
+			if (quantities[k] > 0) {
+				visitor.visit(stocks[ordinals[k]], quantities[k], prices[k], times[k], days[k]);
+				if (modCount != expected) {
+					throw new ConcurrentModificationException();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @effects return a new Cursor before the first lot
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * @effects <pre>
+	 *  if a lot of the stock whose id is stockId is in this
+	 *    return the Position of that stock
+	 *  else
+	 *    return null
+	 * </pre>
+	 */
+	public Position positionOf(String stockId) {
+		return positions.get(stockId);
+	}
+
+	/**
+	 * @effects return an unmodifiable view of all Position(s), one per stock in this
+	 */
+	public Collection<Position> getPositions() {
+		return Collections.unmodifiableCollection(positions.values());
+	}
+
+	/**
+	 * @requires theStock!=null /\ quantity > 0 /\ purchasePrice >= 0 /\ purchaseDay >= 1
+	 * @modifies this
+	 * @effects append a lot with the given values as the newest lot, return its slot
+	 */
+	int add(Stock theStock, int quantity, long purchasePrice, long purchaseTime, int purchaseDay) {
+		if (size == quantities.length) {
+			grow(size * 2);
+		}
+		int k = size++;
+		write(k, theStock, quantity, purchasePrice, purchaseTime, purchaseDay);
+		live++;
+		positionFor(theStock).add(k);
+		return k;
+	}
+
+	/**
+	 * @requires sp is valid
+	 * @modifies this
+	 * @effects append a lot with the values of sp as the newest lot, return its slot
+	 */
+	int add(StockPurchase sp) {
+		return add(sp.getTheStock(), sp.getQuantity(), sp.getPurchasePrice(), sp.getPurchaseTime(),
+				sp.getPurchaseDay());
+	}
+
+	/**
+	 * @requires the lot at slot is not removed /\ sp is valid
+	 * @modifies this
+	 * @effects replace the lot at slot with the values of sp (at the same place)
+	 */
+	void set(int slot, StockPurchase sp) {
+		Position old = positions.get(stocks[ordinals[slot]].getId());
+		old.remove(slot);
+		if (old.isEmpty()) {
+			positions.remove(old.getTheStock().getId());
+		}
+		write(slot, sp.getTheStock(), sp.getQuantity(), sp.getPurchasePrice(), sp.getPurchaseTime(),
+				sp.getPurchaseDay());
+		positionFor(sp.getTheStock()).insert(slot);
+	}
+
+	/**
+	 * @requires the lot at slot is not removed /\ 0 < quantity < its quantity
+	 * @modifies this
+	 * @effects subtract quantity from the quantity of the lot at slot
+	 */
+	void reduce(int slot, int quantity) {
+		positions.get(stocks[ordinals[slot]].getId()).reduce(slot, quantity);
+		modCount++;
+		quantities[slot] -= quantity;
+	}
+
+	/**
+	 * @modifies this
+	 * @effects remove every lot, and give back the memory they used
+	 */
+	void clear() {
+		modCount++;
+		stockCount = 0;
+		size = 0;
+		live = 0;
+		init(4, 8);
+	}
+
+	/**
+	 * @requires the lot at slot is not removed
+	 * @modifies this
+	 * @effects remove the lot at slot
+	 */
+	void remove(int slot) {
+		Position p = positions.get(stocks[ordinals[slot]].getId());
+		p.remove(slot);
+		if (p.isEmpty()) {
+			positions.remove(p.getTheStock().getId());
+		}
+		take(slot, quantities[slot]);
+		compactIfSparse();
+	}
+
+	/**
+	 * @requires 0 < quantity <= the total quantity of s in this
+	 * @modifies this
+	 * @effects take quantity shares of s from its lots, oldest lot first if order is FIFO, newest lot first if
+	 *          order is LIFO, removing every lot that is sold entirely; return the purchase cost of the shares taken
+	 */
+	long consume(Stock s, int quantity, LotQueue.Order order) {
+		Position p = positions.get(s.getId());
+		long cost = p.consume(quantity, order);
+		if (p.isEmpty()) {
+			positions.remove(s.getId());
+		}
+		compactIfSparse();
+		return cost;
+	}
+
+	/**
+	 * Used by Position, which has already taken the shares from its totals (and the lot from its queue if it is
+	 * sold entirely).
+	 * @requires the lot at slot is not removed /\ 0 < quantity <= its quantity
+	 * @modifies this
+	 * @effects subtract quantity from the quantity of the lot at slot, marking it removed if it reaches 0
+	 */
+	void take(int slot, int quantity) {
+		modCount++;
+		quantities[slot] -= quantity;
+		if (quantities[slot] == 0) {
+			live--;
+		}
+	}
+
+	/**
+	 * @effects return the quantity of the lot at slot
+	 */
+	int quantityOfSlot(int slot) {
+		return quantities[slot];
+	}
+
+	/**
+	 * @effects return the purchase price of the lot at slot
+	 */
+	long priceOfSlot(int slot) {
+		return prices[slot];
+	}
+
+	/**
+	 * @effects return a new StockPurchase holding the lot at slot
+	 */
+	StockPurchase lotAt(int slot) {
+		return new StockPurchase(stocks[ordinals[slot]], quantities[slot], prices[slot], times[slot], days[slot]);
+	}
+
+	/**
+	 * @effects return a copy of this (sharing the Stock(s))
+	 */
+	LotStore copy() {
+		LotStore c = new LotStore();
+		c.init(Math.max(4, stockCount), Math.max(8, live));
+		for (int k = 0; k < size; k++) {
+			if (quantities[k] > 0) {
+				c.add(stocks[ordinals[k]], quantities[k], prices[k], times[k], days[k]);
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * Does not move any lot, so it never invalidates a walk over the lots.
+	 * @requires 0 <= i < size()
+	 * @effects <pre>
+	 *  if no lot is removed
+	 *    return i
+	 *  else
+	 *    if ranks is older than modCount
+	 *      rebuild ranks from the slots that are not removed
+	 *    return ranks[i]
+	 * </pre>
+	 */
+	int slotOf(int i) {
+		if (i < 0 || i >= live) {
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + live);
+		}
+		if (live == size) {
+			return i;
+		}
+		if (ranks == null || ranksOf != modCount) {
+			if (ranks == null || ranks.length < live) {
+				ranks = new int[Math.max(8, live)];
+			}
+			int n = 0;
+			for (int k = 0; k < size; k++) {
+				if (quantities[k] > 0) {
+					ranks[n++] = k;
+				}
+			}
+			ranksOf = modCount;
+		}
+		return ranks[i];
+	}
+
+	private Position positionFor(Stock s) {
+		Position p = positions.get(s.getId());
+		if (p == null) {
+			p = new Position(this, s);
+			positions.put(s.getId(), p);
+		}
+		return p;
+	}
+
+	private void write(int k, Stock theStock, int quantity, long purchasePrice, long purchaseTime, int purchaseDay) {
+		modCount++;
+		ordinals[k] = ordinalFor(theStock);
+		quantities[k] = quantity;
+		prices[k] = purchasePrice;
+		times[k] = purchaseTime;
+		days[k] = purchaseDay;
+	}
+
+	private int ordinalFor(Stock s) {
+		Integer o = ordinalOf.get(s.getId());
+		if (o != null) {
+			return o;
+		}
+		if (stockCount == stocks.length) {
+			stocks = Arrays.copyOf(stocks, stockCount * 2);
+		}
+		stocks[stockCount] = s;
+		ordinalOf.put(s.getId(), stockCount);
+		return stockCount++;
+	}
+
+	private void compactIfSparse() {
+		if (size - live > Math.max(live, MIN_COMPACT)) {
+			compact();
+		}
+	}
+
+	/**
+	 * @modifies this
+	 * @effects drop the removed lots, moving the others down in the same order, and update the slots of positions
+	 */
+	private void compact() {
+		modCount++;
+		int[] moved = new int[size];
+		int n = 0;
+		for (int k = 0; k < size; k++) {
+			if (quantities[k] > 0) {
+				ordinals[n] = ordinals[k];
+				quantities[n] = quantities[k];
+				prices[n] = prices[k];
+				times[n] = times[k];
+				days[n] = days[k];
+				moved[k] = n++;
+			} else {
+				moved[k] = -1;
+			}
+		}
+		size = n;
+		for (Position p : positions.values()) {
+			p.remap(moved);
+		}
+	}
+
+	private void grow(int capacity) {
+		ordinals = Arrays.copyOf(ordinals, capacity);
+		quantities = Arrays.copyOf(quantities, capacity);
+		prices = Arrays.copyOf(prices, capacity);
+		times = Arrays.copyOf(times, capacity);
+		days = Arrays.copyOf(days, capacity);
+	}
+
+	/**
+	 * Writes the stock table, then every column of the lots that are not removed.
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(stockCount);
+		for (int j = 0; j < stockCount; j++) {
+			out.writeObject(stocks[j]);
+		}
+		out.writeInt(live);
+		for (int k = 0; k < size; k++) {
+			if (quantities[k] > 0) {
+				out.writeInt(ordinals[k]);
+			}
+		}
+		for (int k = 0; k < size; k++) {
+			if (quantities[k] > 0) {
+				out.writeInt(quantities[k]);
+			}
+		}
+		for (int k = 0; k < size; k++) {
+			if (quantities[k] > 0) {
+				out.writeLong(prices[k]);
+			}
+		}
+		for (int k = 0; k < size; k++) {
+			if (quantities[k] > 0) {
+				out.writeLong(times[k]);
+			}
+		}
+		for (int k = 0; k < size; k++) {
+			if (quantities[k] > 0) {
+				out.writeInt(days[k]);
+			}
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		int sc = in.readInt();
+		Stock[] table = new Stock[sc];
+		for (int j = 0; j < sc; j++) {
+			table[j] = (Stock) in.readObject();
+		}
+		int n = in.readInt();
+		init(Math.max(4, sc), Math.max(8, n));
+		for (int j = 0; j < sc; j++) {
+			ordinalFor(table[j]);
+		}
+		for (int k = 0; k < n; k++) {
+			ordinals[k] = in.readInt();
+		}
+		for (int k = 0; k < n; k++) {
+			quantities[k] = in.readInt();
+		}
+		for (int k = 0; k < n; k++) {
+			prices[k] = in.readLong();
+		}
+		for (int k = 0; k < n; k++) {
+			times[k] = in.readLong();
+		}
+		for (int k = 0; k < n; k++) {
+			days[k] = in.readInt();
+		}
+		size = n;
+		live = n;
+		for (int k = 0; k < n; k++) {
+			positionFor(stocks[ordinals[k]]).add(k);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + ":<" + live + " lots, " + stockCount + " stocks>";
+	}
+
+	/**
+	 * @Overview A Cursor walks the lots of a LotStore in the order they were bought, one lot at a time, and reads
+	 *           the values of the current lot as primitives. It does not allocate after it is created.
+	 *           The LotStore must not change during the walk; reading it meanwhile (by position or through asList())
+ *           does not change it.
+	 * @attributes <pre>
+	 * slot			int
+	 * index		int
+	 * expected		int
+	 * </pre>
+	 * @Object a typical Cursor is c:<k, i, m> where k is the slot of the current lot (-1 before the first lot),
+	 *         i is the position of the current lot (0 being the oldest lot), m is the modCount of the store when
+	 *         the cursor was created
+	 * AF(c) = c:<k, i, m>
+	 * @rep_invariant
+	 * 	-1 <= k <= size && (k == -1 || k == size || quantities[k] > 0)
+	 */
+	public final class Cursor {
+		private int slot = -1;
+		private int index = -1;
+		private final int expected = modCount;
+
+		private Cursor() {
+		}
+
+		/**
+		 * @modifies this
+		 * @effects <pre>
+		 *  if there is a lot after the current lot
+		 *    move to it
+		 *    return true
+		 *  else
+		 *    return false
+		 * </pre>
+		 * @throws ConcurrentModificationException if the store has changed since this was created
+		 */
+		public boolean next() {
+			if (modCount != expected) {
+				throw new ConcurrentModificationException();
+			}
+			for (int k = slot + 1; k < size; k++) {
+				if (quantities[k] > 0) {
+					slot = k;
+					index++;
+					return true;
+				}
+			}
+			slot = size;
+			return false;
+		}
+
+		/**
+		 * @requires next() has returned true
+		 * @effects return the position of the current lot, 0 being the oldest lot
+		 */
+		public int index() {
+			return index;
+		}
+
+		/**
+		 * @requires next() has returned true
+		 * @effects return the stock of the current lot
+		 */
+		public Stock stock() {
+			return stocks[ordinals[slot]];
+		}
+
+		/**
+		 * @requires next() has returned true
+		 * @effects return the quantity of the current lot
+		 */
+		public int quantity() {
+			return quantities[slot];
+		}
+
+		/**
+		 * @requires next() has returned true
+		 * @effects return the purchase price of the current lot (in Money ticks)
+		 */
+		public long price() {
+			return prices[slot];
+		}
+
+		/**
+		 * @requires next() has returned true
+		 * @effects return the purchase date of the current lot (in epoch milliseconds)
+		 */
+		public long time() {
+			return times[slot];
+		}
+
+		/**
+		 * @requires next() has returned true
+		 * @effects return the purchase day of the current lot
+		 */
+		public int day() {
+			return days[slot];
+		}
+	}
+}
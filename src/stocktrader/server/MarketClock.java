@@ -0,0 +1,131 @@
+package stocktrader.server;
+
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * @Overview MarketClock is the only source of time of the server. It gives the wall clock in epoch milliseconds
+ *           and maps a simulated day of the market to a virtual time: day 1 is the wall clock, every other day adds
+ *           one day to it (you can sleep for one day, so you can modify time).
+ *           The server uses system(); tests and benchmarks use manual(), whose wall clock only moves when it is
+ *           read (by a fixed step) or advanced, so runs are deterministic.
+ *           The bounds used by validations are computed once, so checking a date does not allocate.
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public abstract class MarketClock {
+	/**
+	 * milliseconds per simulated day
+	 */
+	public static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+	/**
+	 * every date of the market is after this time (1900/0/1 00:00 in the default time zone, in epoch milliseconds)
+	 */
+	public static final long MIN_TIME = minTime();
+
+	private static final MarketClock SYSTEM = new MarketClock() {
+		@Override
+		public long now() {
+			return System.currentTimeMillis();
+		}
+	};
+
+	/**
+	 * @effects return the clock of the system
+	 */
+	public static MarketClock system() {
+		return SYSTEM;
+	}
+
+	/**
+	 * @requires startMillis > MIN_TIME /\ stepMillis >= 0
+	 * @effects return a new Manual clock starting at startMillis and moving by stepMillis on every read
+	 */
+	public static Manual manual(long startMillis, long stepMillis) {
+		return new Manual(startMillis, stepMillis);
+	}
+
+	/**
+	 * @effects return the wall clock in epoch milliseconds
+	 */
+	public abstract long now();
+
+	/**
+	 * @requires day >= 1
+	 * @effects return now() + (day - 1) days
+	 */
+	public long virtualTime(int day) {
+		return now() + (day - 1) * DAY_MILLIS;
+	}
+
+	/**
+	 * @requires day >= 1
+	 * @effects return a new Date at virtualTime(day)
+	 */
+	public Date virtualDate(int day) {
+		return new Date(virtualTime(day));
+	}
+
+	/**
+	 * @effects return true if time (in epoch milliseconds) is a valid date of the market, i.e. after MIN_TIME
+	 */
+	public static boolean isValidTime(long time) {
+		return time > MIN_TIME;
+	}
+
+	private static long minTime() {
+		Calendar c = Calendar.getInstance();
+		c.clear();
+		c.set(1900, 0, 1);
+		return c.getTimeInMillis();
+	}
+
+	/**
+	 * @Overview A clock controlled by its user: it starts at a given time and moves by a fixed step every time
+	 *           it is read, and when advance() or set() is called.
+	 * @attributes <pre>
+	 * time		long
+	 * step		long
+	 * </pre>
+	 * @Object a typical Manual is c:<t, s> where t is the time the next read returns, s is the step of a read
+	 * AF(c) = c:<t, s>
+	 * @rep_invariant
+	 * 	s >= 0
+	 */
+	public static class Manual extends MarketClock {
+		private long time;
+		private final long step;
+
+		private Manual(long time, long step) {
+			this.time = time;
+			this.step = step;
+		}
+
+		/**
+		 * @modifies this
+		 * @effects return time, then add step to time
+		 */
+		@Override
+		public synchronized long now() {
+			long t = time;
+			time += step;
+			return t;
+		}
+
+		/**
+		 * @modifies this
+		 * @effects add millis to time
+		 */
+		public synchronized void advance(long millis) {
+			time += millis;
+		}
+
+		/**
+		 * @modifies this
+		 * @effects time = millis
+		 */
+		public synchronized void set(long millis) {
+			time = millis;
+		}
+	}
+}
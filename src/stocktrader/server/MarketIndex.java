@@ -0,0 +1,168 @@
+package stocktrader.server;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * @Overview MarketIndex represents a market-wide index over all stocks. The weighted sum of prices is kept
+ *           incrementally: a price update only applies the delta of that constituent, and the sum is recomputed
+ *           from the constituents every CORRECTION_INTERVAL updates to remove floating-point drift.
+ * @attributes <pre>
+ * weighting		Weighting
+ * slots			HashMap<String, Integer>
+ * weights			double[]
+ * prices			double[]
+ * count			int
+ * sum				double
+ * divisor			double
+ * updates			int
+ * </pre>
+ * @Object a typical MarketIndex is c:<wt, sl, w, p, n, s, dv, u> where wt is how constituents are weighted,
+ *         sl maps a stock id to its slot in w and p, w[i] and p[i] are the weight and last price of a constituent,
+ *         n is the number of constituents, s is sum of w[i] * p[i], dv is the divisor,
+ *         u is the number of updates since the last drift correction
+ * AF(c) = c:<wt, sl, w, p, n, s, dv, u>, the value of the index is s / dv
+ * @rep_invariant
+ * 	wt!=null && sl!=null && sl.size == n &&
+ * 	dv>0 && u>=0
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public class MarketIndex implements Serializable {
+	public enum Weighting {
+		/**
+		 * every constituent has weight 1
+		 */
+		PRICE,
+		/**
+		 * every constituent is weighted by its number of shares (available on the market + owned by users)
+		 */
+		CAP
+	}
+
+	/**
+	 * id of the index in PriceHistory, this String must not be a valid Stock.id
+	 */
+	public static final String SERIES_ID = "*INDEX*";
+	public static final double BASE_VALUE = 100d;
+	public static final int CORRECTION_INTERVAL = 1 << 16;
+
+	private Weighting weighting;
+	private HashMap<String, Integer> slots;
+	private double[] weights;
+	private double[] prices;
+	private int count;
+	private double sum;
+	private double divisor;
+	private int updates;
+
+	/**
+	 * @effects <pre>
+	 *  initialize this with all stocks as constituents, weighted by weighting
+	 *  (the shares owned by users are counted from users when weighting is CAP)
+	 *  the divisor is chosen so that the value of the index starts at BASE_VALUE
+	 * </pre>
+	 */
+	public MarketIndex(Weighting weighting, List<Stock> stocks, List<User> users) {
+		this.weighting = weighting;
+		this.slots = new HashMap<>();
+		this.weights = new double[Math.max(8, stocks.size())];
+		this.prices = new double[weights.length];
+
+		HashMap<String, Long> owned = new HashMap<>();
+		if (weighting == Weighting.CAP) {
+			for (User u : users) {
+				for (Position p : u.getPositions()) {
+					String id = p.getTheStock().getId();
+					Long q = owned.get(id);
+					owned.put(id, (q != null ? q : 0L) + p.getQuantity());
+				}
+			}
+		}
+
+		for (Stock s : stocks) {
+			Long q = owned.get(s.getId());
+			double w = weighting == Weighting.PRICE ? 1d : s.getAvailableQuantity() + (q != null ? q : 0L);
+			addSlot(s.getId(), w, Money.toDouble(s.getCurrentPrice()));
+		}
+		correctDrift();
+		divisor = sum > 0 ? sum / BASE_VALUE : 1d;
+	}
+
+	/**
+	 * @effects return weighting
+	 */
+	public Weighting getWeighting() {
+		return weighting;
+	}
+
+	/**
+	 * @effects return the current value of the index
+	 */
+	public double value() {
+		return sum / divisor;
+	}
+
+	/**
+	 * @modifies this
+	 * @effects <pre>
+	 *  if s is a constituent
+	 *    sum += weight of s * (s.currentPrice - last price of s)
+	 *  else
+	 *    add s as a new constituent and change the divisor so that the value of the index does not jump
+	 *  every CORRECTION_INTERVAL updates, recompute sum from all constituents
+	 * </pre>
+	 */
+	public void update(Stock s) {
+		Integer slot = slots.get(s.getId());
+		double price = Money.toDouble(s.getCurrentPrice());
+		if (slot == null) {
+			double value = value();
+			double w = weighting == Weighting.PRICE ? 1d : s.getAvailableQuantity();
+			addSlot(s.getId(), w, price);
+			sum += w * price;
+			if (value > 0) {
+				divisor = sum / value;
+			}
+			return;
+		}
+
+		int i = slot;
+		sum += weights[i] * (price - prices[i]);
+		prices[i] = price;
+		if (++updates >= CORRECTION_INTERVAL) {
+			correctDrift();
+		}
+	}
+
+	/**
+	 * @modifies this.sum, this.updates
+	 * @effects sum = sum of weights[i] * prices[i] for all constituents, updates = 0
+	 */
+	public void correctDrift() {
+		double total = 0;
+		for (int i = 0; i < count; i++) {
+			total += weights[i] * prices[i];
+		}
+		sum = total;
+		updates = 0;
+	}
+
+	private void addSlot(String id, double weight, double price) {
+		if (count == weights.length) {
+			weights = Arrays.copyOf(weights, count * 2);
+			prices = Arrays.copyOf(prices, count * 2);
+		}
+		slots.put(id, count);
+		weights[count] = weight;
+		prices[count] = price;
+		count++;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + ":<" + weighting + ", " + count + " constituents, " + value() + ">";
+	}
+}
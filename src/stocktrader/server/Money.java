@@ -0,0 +1,102 @@
+package stocktrader.server;
+
+/**
+ * @Overview A class that contains the fixed-point arithmetic of money. Every price, balance and profit is a long
+ *           number of ticks, SCALE ticks being 1 dollar, so sums and quantities are exact and two amounts can be
+ *           compared with ==. Rates are longs too, in basis points (RATE_SCALE being 1, i.e. 100%). Only the
+ *           operations that leave the ticks (a rate, a division, a conversion from a double) round, always to the
+ *           nearest tick with halves away from zero. The arithmetic does not allocate and, apart from the
+ *           conversions from and to double, uses no floating point.
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public abstract class Money {
+	/**
+	 * ticks per dollar
+	 */
+	public static final long SCALE = 10_000L;
+	/**
+	 * basis points per unit of rate: a rate of RATE_SCALE leaves an amount as it is
+	 */
+	public static final long RATE_SCALE = 10_000L;
+	/**
+	 * ticks per cent
+	 */
+	private static final long CENT = SCALE / 100;
+
+	/**
+	 * @effects return amount (in dollars) in ticks, rounded to the nearest tick with halves away from zero
+	 */
+	public static long of(double amount) {
+		return round(amount * SCALE);
+	}
+
+	/**
+	 * @effects return ticks in dollars
+	 */
+	public static double toDouble(long ticks) {
+		return (double) ticks / SCALE;
+	}
+
+	/**
+	 * @effects <pre>
+	 *  if price * quantity fits in a long
+	 *    return price * quantity
+	 *  else
+	 *    throw ArithmeticException
+	 * </pre>
+	 */
+	public static long times(long price, long quantity) {
+		return Math.multiplyExact(price, quantity);
+	}
+
+	/**
+	 * @effects <pre>
+	 *  if amount * rate fits in a long
+	 *    return amount * rate / RATE_SCALE (rate being in basis points), rounded to the nearest tick with halves
+	 *    away from zero
+	 *  else
+	 *    throw ArithmeticException
+	 * </pre>
+	 */
+	public static long scale(long amount, long rate) {
+		long p = Math.multiplyExact(amount, rate);
+		return (p >= 0 ? p + RATE_SCALE / 2 : p - RATE_SCALE / 2) / RATE_SCALE;
+	}
+
+	/**
+	 * @requires quantity > 0
+	 * @effects return amount / quantity, rounded to the nearest tick with halves away from zero
+	 */
+	public static long divide(long amount, long quantity) {
+		long q = amount / quantity;
+		long r = amount % quantity;
+		if (Math.abs(r) * 2 >= quantity) {
+			q += (amount < 0) ? -1 : 1;
+		}
+		return q;
+	}
+
+	/**
+	 * @effects return ticks as dollars with 2 decimals (e.g. "-12.30"), rounded to the nearest cent with halves
+	 *          away from zero
+	 */
+	public static String format(long ticks) {
+		long cents = divide(ticks, CENT);
+		StringBuilder sb = new StringBuilder(24);
+		if (cents < 0) {
+			sb.append('-');
+			cents = -cents;
+		}
+		sb.append(cents / 100).append('.');
+		long c = cents % 100;
+		if (c < 10) {
+			sb.append('0');
+		}
+		return sb.append(c).toString();
+	}
+
+	private static long round(double ticks) {
+		return (long) (ticks < 0 ? ticks - 0.5 : ticks + 0.5);
+	}
+}
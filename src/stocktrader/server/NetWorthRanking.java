@@ -0,0 +1,293 @@
+package stocktrader.server;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * @Overview NetWorthRanking is a snapshot of the net worth (money + stocks at the current prices) and the return
+ *           of every user, ranked both ways. It is computed once per day close: the values are read in parallel
+ *           over partitions of the users (each User keeps its market value up to date, so this is O(1) per user),
+ *           then ranked by a radix sort. Afterwards it is only read: reports page through the ranked arrays
+ *           without touching the users.
+ * @attributes <pre>
+ * day				int
+ * userNames		String[]
+ * netWorths		long[]
+ * returns			double[]
+ * dates			int[]
+ * byNetWorth		int[]
+ * byReturn			int[]
+ * </pre>
+ * @Object a typical NetWorthRanking is c:<d, un, nw, r, cd, bn, br> where d is the day it was computed on,
+ *         un[i], nw[i], r[i], cd[i] are the userName, net worth, return (in %) and currentDate of the i-th user,
+ *         bn and br are the users ordered by net worth and by return (highest first, ties broken by currentDate
+ *         then by the order of users)
+ * AF(c) = c:<d, un, nw, r, cd, bn, br>
+ * @rep_invariant
+ * 	un, nw, r, cd, bn, br have the same length &&
+ * 	bn and br are permutations of 0..un.length-1
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public class NetWorthRanking implements Serializable {
+	public enum Key {
+		NET_WORTH, RETURN
+	}
+
+	/**
+	 * number of users below which a partition is computed on the current thread
+	 */
+	private static final int THRESHOLD = 1 << 13;
+
+	private int day;
+	private String[] userNames;
+	private long[] netWorths;
+	private double[] returns;
+	private int[] dates;
+	private int[] byNetWorth;
+	private int[] byReturn;
+	private transient HashMap<String, Integer> positions;
+	private transient int[] netWorthRanks;
+	private transient int[] returnRanks;
+
+	private NetWorthRanking(int day, int n) {
+		this.day = day;
+		this.userNames = new String[n];
+		this.netWorths = new long[n];
+		this.returns = new double[n];
+		this.dates = new int[n];
+		this.byNetWorth = new int[n];
+		this.byReturn = new int[n];
+	}
+
+	/**
+	 * @effects compute the net worth and the return of every user in users on pool, rank them and return the result
+	 */
+	public static NetWorthRanking compute(List<User> users, int day, ForkJoinPool pool) {
+		NetWorthRanking r = new NetWorthRanking(day, users.size());
+		User[] us = users.toArray(new User[users.size()]);
+		pool.invoke(r.new ValueTask(us, 0, us.length));
+		r.sort(r.byNetWorth, r.netWorths, null);
+		r.sort(r.byReturn, null, r.returns);
+		return r;
+	}
+
+	/**
+	 * @effects return day
+	 */
+	public int getDay() {
+		return day;
+	}
+
+	/**
+	 * @effects return the number of users
+	 */
+	public int size() {
+		return userNames.length;
+	}
+
+	/**
+	 * @requires 1 <= rank <= size()
+	 * @effects return the index (in the order of users given to compute()) of the user at rank by key
+	 */
+	public int userAt(Key key, int rank) {
+		return (key == Key.NET_WORTH ? byNetWorth : byReturn)[rank - 1];
+	}
+
+	/**
+	 * @effects return the userName of the i-th user
+	 */
+	public String userNameOf(int i) {
+		return userNames[i];
+	}
+
+	/**
+	 * @effects return the net worth of the i-th user (in Money ticks)
+	 */
+	public long netWorthOf(int i) {
+		return netWorths[i];
+	}
+
+	/**
+	 * @effects return the return (in %) of the i-th user
+	 */
+	public double returnOf(int i) {
+		return returns[i];
+	}
+
+	/**
+	 * @effects return the currentDate of the i-th user
+	 */
+	public int dateOf(int i) {
+		return dates[i];
+	}
+
+	/**
+	 * @effects <pre>
+	 *  if there is a user whose name is userName
+	 *    return its rank by key, 1 being the first
+	 *  else
+	 *    return -1
+	 * </pre>
+	 */
+	public int rankOf(Key key, String userName) {
+		if (positions == null) {
+			positions = new HashMap<>(userNames.length * 4 / 3 + 1);
+			for (int i = 0; i < userNames.length; i++) {
+				positions.put(userNames[i], i);
+			}
+		}
+		Integer i = positions.get(userName);
+		if (i == null) {
+			return -1;
+		}
+		if (key == Key.NET_WORTH) {
+			if (netWorthRanks == null) {
+				netWorthRanks = invert(byNetWorth);
+			}
+			return netWorthRanks[i];
+		} else {
+			if (returnRanks == null) {
+				returnRanks = invert(byReturn);
+			}
+			return returnRanks[i];
+		}
+	}
+
+	/**
+	 * @effects return ranks where ranks[order[k]] = k + 1
+	 */
+	private static int[] invert(int[] order) {
+		int[] ranks = new int[order.length];
+		for (int k = 0; k < order.length; k++) {
+			ranks[order[k]] = k + 1;
+		}
+		return ranks;
+	}
+
+	/**
+	 * Sorts with a stable LSD radix sort: first by currentDate, then by an order-preserving 64-bit image of the
+	 * values, 16 bits per pass. Passes where all users have the same digit are skipped.
+	 * @modifies order
+	 * @requires order is the identity permutation /\ exactly one of longs, doubles is not null
+	 * @effects sort order by the values in longs or doubles (highest first), ties broken by currentDate (lowest
+	 *          first) then by index
+	 */
+	private void sort(int[] order, long[] longs, double[] doubles) {
+		int n = order.length;
+		long[] keys = new long[n];
+		long[] tmpKeys = new long[n];
+		int[] ord = order;
+		int[] tmpOrder = new int[n];
+		int[] counts = new int[1 << 16];
+
+		for (int pass = 0; pass < 2; pass++) {
+			if (pass == 0) {
+				for (int i = 0; i < n; i++) {
+					keys[i] = dates[ord[i]] & 0xFFFFFFFFL;
+				}
+			} else {
+				for (int i = 0; i < n; i++) {
+					long b;
+					if (longs != null) {
+						b = longs[ord[i]];
+					} else {
+						b = Double.doubleToLongBits(doubles[ord[i]] + 0d);
+						// signed order of the doubles
+						b ^= (b >> 63) & Long.MAX_VALUE;
+					}
+					// reversed (highest first) and made unsigned
+					keys[i] = ~b ^ Long.MIN_VALUE;
+				}
+			}
+			for (int shift = 0; shift < (pass == 0 ? 32 : 64); shift += 16) {
+				if (digitPass(keys, ord, tmpKeys, tmpOrder, counts, shift)) {
+					long[] k = keys;
+					keys = tmpKeys;
+					tmpKeys = k;
+					int[] o = ord;
+					ord = tmpOrder;
+					tmpOrder = o;
+				}
+			}
+		}
+		if (ord != order) {
+			System.arraycopy(ord, 0, order, 0, n);
+		}
+	}
+
+	/**
+	 * @modifies tmpKeys, tmpOrder, counts
+	 * @effects <pre>
+	 *  if the 16-bit digits of keys at shift are not all the same
+	 *    write keys and order stably sorted by that digit into tmpKeys and tmpOrder
+	 *    return true
+	 *  else
+	 *    return false
+	 * </pre>
+	 */
+	private static boolean digitPass(long[] keys, int[] order, long[] tmpKeys, int[] tmpOrder, int[] counts, int shift) {
+		int n = keys.length;
+		Arrays.fill(counts, 0);
+		for (int i = 0; i < n; i++) {
+			counts[(int) (keys[i] >>> shift) & 0xFFFF]++;
+		}
+		if (n == 0 || counts[(int) (keys[0] >>> shift) & 0xFFFF] == n) {
+			return false;
+		}
+		int sum = 0;
+		for (int d = 0; d < counts.length; d++) {
+			int c = counts[d];
+			counts[d] = sum;
+			sum += c;
+		}
+		for (int i = 0; i < n; i++) {
+			int at = counts[(int) (keys[i] >>> shift) & 0xFFFF]++;
+			tmpKeys[at] = keys[i];
+			tmpOrder[at] = order[i];
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + ":<day " + day + ", " + size() + " users>";
+	}
+
+	/**
+	 * @Overview Computes the values of a range of users, splitting it in halves down to THRESHOLD users
+	 */
+	private class ValueTask extends RecursiveAction {
+		private final User[] users;
+		private final int from;
+		private final int to;
+
+		ValueTask(User[] users, int from, int to) {
+			this.users = users;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= THRESHOLD) {
+				for (int i = from; i < to; i++) {
+					User u = users[i];
+					userNames[i] = u.getUserName();
+					netWorths[i] = u.getNetWorth();
+					returns[i] = u.getReturnPercent();
+					dates[i] = u.getCurrentDate();
+					byNetWorth[i] = i;
+					byReturn[i] = i;
+				}
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new ValueTask(users, from, mid), new ValueTask(users, mid, to));
+			}
+		}
+	}
+}
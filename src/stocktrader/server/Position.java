@@ -0,0 +1,211 @@
+package stocktrader.server;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * @Overview Position represents everything a User holds of one stock: the lots of that stock in the LotStore of
+ *           the User and their totals, which are updated on every buy and sell instead of being recomputed.
+ *           A sale by quantity consumes the lots in FIFO or LIFO order from a LotQueue, so it only visits
+ *           the lots it sells.
+ * @attributes <pre>
+ * store		LotStore
+ * theStock		Stock
+ * lots			LotQueue
+ * quantity		long
+ * totalCost	long
+ * </pre>
+ * @Object a typical Position is c:<st, s, l, q, tc> where st is the store of the lots, s is the stock, l is the
+ *         slots of the lots of s in st in the order they were bought, q is the total quantity, tc is the total
+ *         purchase cost of l (in Money ticks)
+ * AF(c) = c:<st, s, l, q, tc>
+ * @rep_invariant
+ * 	st!=null && s!=null && l!=null &&
+ * 	q == sum of the quantities of l in st &&
+ * 	tc == sum of quantity * purchase price of l in st
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public class Position {
+	private LotStore store;
+	private Stock theStock;
+	private LotQueue lots;
+	private long quantity;
+	private long totalCost;
+
+	/**
+	 * @effects initialize this as c:<store, theStock, [], 0, 0>
+	 */
+	Position(LotStore store, Stock theStock) {
+		this.store = store;
+		this.theStock = theStock;
+		this.lots = new LotQueue();
+	}
+
+	/**
+	 * @effects return theStock
+	 */
+	public Stock getTheStock() {
+		return theStock;
+	}
+
+	/**
+	 * @effects return quantity
+	 */
+	public long getQuantity() {
+		return quantity;
+	}
+
+	/**
+	 * @effects return totalCost
+	 */
+	public long getTotalCost() {
+		return totalCost;
+	}
+
+	/**
+	 * @effects <pre>
+	 *  if quantity > 0
+	 *    return totalCost / quantity, rounded to the nearest tick
+	 *  else
+	 *    return 0
+	 * </pre>
+	 */
+	public long getAveragePrice() {
+		return quantity > 0 ? Money.divide(totalCost, quantity) : 0;
+	}
+
+	/**
+	 * @effects return an unmodifiable view of the lots, oldest first (every read creates a StockPurchase)
+	 */
+	public List<StockPurchase> getLots() {
+		return new AbstractList<StockPurchase>() {
+			@Override
+			public StockPurchase get(int i) {
+				if (i < 0 || i >= lots.size()) {
+					throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + lots.size());
+				}
+				return store.lotAt(lots.get(i));
+			}
+
+			@Override
+			public int size() {
+				return lots.size();
+			}
+		};
+	}
+
+	/**
+	 * @effects return true if this holds no lot
+	 */
+	public boolean isEmpty() {
+		return lots.isEmpty();
+	}
+
+	/**
+	 * @effects return the oldest lot, or null if this is empty
+	 */
+	StockPurchase first() {
+		return lots.isEmpty() ? null : store.lotAt(lots.get(0));
+	}
+
+	/**
+	 * @requires slot is newer than every lot in this
+	 * @modifies this
+	 * @effects append the lot at slot to lots and add it to the totals
+	 */
+	void add(int slot) {
+		lots.add(slot);
+		addToTotals(slot);
+	}
+
+	/**
+	 * @modifies this
+	 * @effects insert the lot at slot in lots (in the order of slots) and add it to the totals
+	 */
+	void insert(int slot) {
+		lots.insert(slot);
+		addToTotals(slot);
+	}
+
+	/**
+	 * @modifies this
+	 * @effects <pre>
+	 *  if the lot at slot is in lots
+	 *    remove it from lots and from the totals
+	 *    return true
+	 *  else
+	 *    return false
+	 * </pre>
+	 */
+	boolean remove(int slot) {
+		int i = lots.indexOf(slot);
+		if (i >= 0) {
+			lots.removeAt(i);
+			quantity -= store.quantityOfSlot(slot);
+			totalCost -= store.quantityOfSlot(slot) * store.priceOfSlot(slot);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @requires the lot at slot is in lots, its quantity is about to be reduced by quantity in store
+	 * @modifies this
+	 * @effects subtract quantity shares of the lot at slot from the totals
+	 */
+	void reduce(int slot, int quantity) {
+		this.quantity -= quantity;
+		this.totalCost -= quantity * store.priceOfSlot(slot);
+	}
+
+	/**
+	 * @requires 0 < quantity <= this.quantity
+	 * @modifies this, store
+	 * @effects <pre>
+	 *  take quantity shares from lots in order (oldest lot first if FIFO, newest lot first if LIFO):
+	 *    a lot that is sold entirely is removed from lots and from store
+	 *    the quantity of a lot that is sold partly is reduced in store
+	 *  subtract the shares taken from the totals
+	 *  return the purchase cost of the shares taken
+	 * </pre>
+	 */
+	long consume(int quantity, LotQueue.Order order) {
+		long cost = 0;
+		int remaining = quantity;
+		while (remaining > 0) {
+			int i = lots.next(order);
+			int slot = lots.get(i);
+			int q = store.quantityOfSlot(slot);
+			int taken = Math.min(q, remaining);
+			cost += taken * store.priceOfSlot(slot);
+			if (taken == q) {
+				lots.removeAt(i);
+			}
+			store.take(slot, taken);
+			remaining -= taken;
+		}
+		this.quantity -= quantity;
+		this.totalCost -= cost;
+		return cost;
+	}
+
+	/**
+	 * @modifies this
+	 * @effects replace the slot s of every lot with moved[s] (the lots have been moved in store)
+	 */
+	void remap(int[] moved) {
+		lots.remap(moved);
+	}
+
+	private void addToTotals(int slot) {
+		quantity += store.quantityOfSlot(slot);
+		totalCost += store.quantityOfSlot(slot) * store.priceOfSlot(slot);
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + ":<" + theStock.getId() + ", " + lots.size() + " lots, " + quantity
+				+ ", " + totalCost + ">";
+	}
+}
@@ -0,0 +1,121 @@
+package stocktrader.server;
+
+import java.io.Serializable;
+import java.util.HashMap;
+
+/**
+ * @Overview PriceHistory keeps a PriceSeries of daily close prices for every stock id and, when it is enabled,
+ *           a PriceSeries of every intraday price change (indexed by tick number instead of day). Prices are
+ *           recorded in Money ticks; the queries return them in dollars, converted once from the ticks.
+ * @attributes <pre>
+ * daily			HashMap<String, PriceSeries>
+ * intraday			HashMap<String, PriceSeries>
+ * </pre>
+ * @Object a typical PriceHistory is c:<d, i> where d maps a stock id to its daily close prices,
+ *         i maps a stock id to its intraday prices or is null if intraday prices are not recorded
+ * AF(c) = c:<d, i>
+ * @rep_invariant
+ * 	d!=null
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public class PriceHistory implements Serializable {
+	private static final long serialVersionUID = -4335366548172563644L;
+
+	private HashMap<String, PriceSeries> daily;
+	private HashMap<String, PriceSeries> intraday;
+
+	/**
+	 * @effects <pre>
+	 *  if recordIntraday
+	 *    initialize this as c:<{}, {}>
+	 *  else
+	 *    initialize this as c:<{}, null>
+	 * </pre>
+	 */
+	public PriceHistory(boolean recordIntraday) {
+		daily = new HashMap<>();
+		intraday = recordIntraday ? new HashMap<String, PriceSeries>() : null;
+	}
+
+	/**
+	 * @modifies this
+	 * @effects <pre>
+	 *  record price (in Money ticks) as the latest price of stockId on day
+	 *  if intraday prices are recorded
+	 *    append price to the intraday series of stockId
+	 * </pre>
+	 */
+	public void record(String stockId, int day, long price) {
+		seriesOf(daily, stockId).record(day, price);
+		if (intraday != null) {
+			PriceSeries s = seriesOf(intraday, stockId);
+			s.record(s.lastDay() + 1, price);
+		}
+	}
+
+	/**
+	 * @effects <pre>
+	 *  if there is a close price of stockId on day
+	 *    return it (in dollars)
+	 *  else
+	 *    return Double.NaN
+	 * </pre>
+	 */
+	public double close(String stockId, int day) {
+		PriceSeries s = daily.get(stockId);
+		return (s != null && s.contains(day)) ? Money.toDouble(s.close(day)) : Double.NaN;
+	}
+
+	/**
+	 * @effects return the close prices (in dollars) of stockId from fromDay to toDay (both inclusive) that are
+	 *          recorded
+	 */
+	public double[] range(String stockId, int fromDay, int toDay) {
+		PriceSeries s = daily.get(stockId);
+		return (s != null) ? toDollars(s.range(fromDay, toDay)) : new double[0];
+	}
+
+	/**
+	 * @effects <pre>
+	 *  if intraday prices of stockId are recorded
+	 *    return the intraday prices (in dollars) with tick number from fromTick to toTick (both inclusive,
+	 *    starting at 1)
+	 *  else
+	 *    return an empty array
+	 * </pre>
+	 */
+	public double[] intradayRange(String stockId, int fromTick, int toTick) {
+		PriceSeries s = (intraday != null) ? intraday.get(stockId) : null;
+		return (s != null) ? toDollars(s.range(fromTick, toTick)) : new double[0];
+	}
+
+	/**
+	 * @effects <pre>
+	 *  if stockId has daily prices
+	 *    return its PriceSeries
+	 *  else
+	 *    return null
+	 * </pre>
+	 */
+	public PriceSeries seriesOf(String stockId) {
+		return daily.get(stockId);
+	}
+
+	private static double[] toDollars(long[] ticks) {
+		double[] prices = new double[ticks.length];
+		for (int i = 0; i < ticks.length; i++) {
+			prices[i] = Money.toDouble(ticks[i]);
+		}
+		return prices;
+	}
+
+	private static PriceSeries seriesOf(HashMap<String, PriceSeries> map, String stockId) {
+		PriceSeries s = map.get(stockId);
+		if (s == null) {
+			s = new PriceSeries();
+			map.put(stockId, s);
+		}
+		return s;
+	}
+}
@@ -0,0 +1,253 @@
+package stocktrader.server;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * @Overview PriceSeries represents the prices of one stock on consecutive days. Prices are taken, kept and
+ *           returned as Money ticks, so they are never rounded here. Every CHUNK_SIZE values are sealed into a byte[] chunk holding the first tick
+ *           followed by the delta of each next tick, all zigzag-varint encoded; the last, open chunk is a plain
+ *           long[]. A query only decodes the chunks that overlap the requested days.
+ * @attributes <pre>
+ * firstDay		int
+ * size			int
+ * chunks		ArrayList<byte[]>
+ * tail			long[]
+ * </pre>
+ * @Object a typical PriceSeries is c:<f, n, ch, t> where f is the day of the first price, n is the number of prices,
+ *         ch is the sealed chunks, t is the open chunk
+ * AF(c) = c:<f, n, ch, t> = the prices of days f, f+1, ..., f+n-1
+ * @rep_invariant
+ * 	f>=1 && n>=0 &&
+ * 	ch!=null && t!=null &&
+ * 	n == ch.size * CHUNK_SIZE + number of values in t &&
+ * 	n>0 -> t has at least 1 value
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public class PriceSeries implements Serializable {
+	private static final long serialVersionUID = -6647073839648669237L;
+	public static final int CHUNK_SIZE = 256;
+
+	private int firstDay;
+	private int size;
+	private ArrayList<byte[]> chunks;
+	private transient long[] tail;
+
+	/**
+	 * @effects initialize this as c:<1, 0, [], []>
+	 */
+	public PriceSeries() {
+		firstDay = 1;
+		chunks = new ArrayList<>();
+		tail = new long[CHUNK_SIZE];
+	}
+
+	/**
+	 * @effects return the day of the first price
+	 */
+	public int firstDay() {
+		return firstDay;
+	}
+
+	/**
+	 * @effects return the day of the last price, or firstDay - 1 if this is empty
+	 */
+	public int lastDay() {
+		return firstDay + size - 1;
+	}
+
+	/**
+	 * @effects return the number of prices
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * The last price recorded in a day is the close of that day.
+	 * @modifies this
+	 * @effects <pre>
+	 *  if this is empty
+	 *    firstDay = day, append ticks
+	 *  else if day == lastDay
+	 *    replace the last price with ticks
+	 *  else if day > lastDay
+	 *    repeat the last price for the missing days, then append ticks
+	 *  else
+	 *    do nothing (history is append-only)
+	 * </pre>
+	 */
+	public void record(int day, long ticks) {
+		if (size == 0) {
+			firstDay = day;
+			append(ticks);
+			return;
+		}
+
+		int last = lastDay();
+		if (day == last) {
+			tail[tailSize() - 1] = ticks;
+		} else if (day > last) {
+			long prev = tail[tailSize() - 1];
+			for (int d = last + 1; d < day; d++) {
+				append(prev);
+			}
+			append(ticks);
+		}
+	}
+
+	/**
+	 * @effects return true if firstDay <= day <= lastDay
+	 */
+	public boolean contains(int day) {
+		return size > 0 && day >= firstDay && day <= lastDay();
+	}
+
+	/**
+	 * @effects <pre>
+	 *  if contains(day)
+	 *    return the close price of day (in Money ticks)
+	 *  else
+	 *    throw IndexOutOfBoundsException
+	 * </pre>
+	 */
+	public long close(int day) {
+		if (!contains(day)) {
+			throw new IndexOutOfBoundsException("Day: " + day + ", Days: " + firstDay + ".." + lastDay());
+		}
+		int i = day - firstDay;
+
+		int chunk = i / CHUNK_SIZE;
+		int offset = i % CHUNK_SIZE;
+		if (chunk == chunks.size()) {
+			return tail[offset];
+		}
+
+		byte[] b = chunks.get(chunk);
+		int[] pos = new int[1];
+		long v = readVarLong(b, pos);
+		for (int k = 0; k < offset; k++) {
+			v += readVarLong(b, pos);
+		}
+		return v;
+	}
+
+	/**
+	 * @effects <pre>
+	 *  return the close prices (in Money ticks) of days max(fromDay, firstDay) .. min(toDay, lastDay) in order,
+	 *  or an empty array if the two ranges do not overlap
+	 * </pre>
+	 */
+	public long[] range(int fromDay, int toDay) {
+		int from = Math.max(fromDay, firstDay) - firstDay;
+		int to = Math.min(toDay, lastDay()) - firstDay;
+		if (size == 0 || from > to) {
+			return new long[0];
+		}
+
+		long[] result = new long[to - from + 1];
+		int n = 0;
+		for (int chunk = from / CHUNK_SIZE; chunk <= to / CHUNK_SIZE; chunk++) {
+			int start = chunk * CHUNK_SIZE;
+			int lo = Math.max(from, start) - start;
+			int hi = Math.min(to, start + CHUNK_SIZE - 1) - start;
+
+			if (chunk == chunks.size()) {
+				for (int k = lo; k <= hi; k++) {
+					result[n++] = tail[k];
+				}
+			} else {
+				byte[] b = chunks.get(chunk);
+				int[] pos = new int[1];
+				long v = readVarLong(b, pos);
+				for (int k = 0; k <= hi; k++) {
+					if (k > 0) {
+						v += readVarLong(b, pos);
+					}
+					if (k >= lo) {
+						result[n++] = v;
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	private int tailSize() {
+		return size - chunks.size() * CHUNK_SIZE;
+	}
+
+	private void append(long ticks) {
+		if (size > 0 && tailSize() == CHUNK_SIZE) {
+			chunks.add(encode(tail, CHUNK_SIZE));
+		}
+		tail[tailSize()] = ticks;
+		size++;
+	}
+
+	/**
+	 * @effects return values[0..n) encoded as the first value followed by the deltas, all zigzag varints
+	 */
+	private static byte[] encode(long[] values, int n) {
+		byte[] buf = new byte[n * 10];
+		int pos = 0;
+		long prev = 0;
+		for (int i = 0; i < n; i++) {
+			long zz = zigzag(values[i] - prev);
+			while ((zz & ~0x7FL) != 0) {
+				buf[pos++] = (byte) ((zz & 0x7F) | 0x80);
+				zz >>>= 7;
+			}
+			buf[pos++] = (byte) zz;
+			prev = values[i];
+		}
+		return Arrays.copyOf(buf, pos);
+	}
+
+	private static long zigzag(long v) {
+		return (v << 1) ^ (v >> 63);
+	}
+
+	/**
+	 * @modifies pos
+	 * @effects read the varint at b[pos[0]], move pos[0] after it and return the decoded value
+	 */
+	private static long readVarLong(byte[] b, int[] pos) {
+		long zz = 0;
+		int shift = 0;
+		byte x;
+		do {
+			x = b[pos[0]++];
+			zz |= (long) (x & 0x7F) << shift;
+			shift += 7;
+		} while ((x & 0x80) != 0);
+		return (zz >>> 1) ^ -(zz & 1);
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeObject(encode(tail, tailSize()));
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		byte[] b = (byte[]) in.readObject();
+		tail = new long[CHUNK_SIZE];
+		int[] pos = new int[1];
+		long v = 0;
+		for (int i = 0; pos[0] < b.length; i++) {
+			v += readVarLong(b, pos);
+			tail[i] = v;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + ":<" + firstDay + ", " + size + ", " + chunks.size() + " chunks>";
+	}
+}
@@ -0,0 +1,227 @@
+package stocktrader.server;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @Overview ReportCache keeps the text-based reports a server has rendered, keyed by the report, the user it was
+ *           rendered for, its page and the version of the DB it was rendered from, so a report that is asked for
+ *           again before the DB changes is returned without loading the DB. A save makes a new version, so the
+ *           reports of an older version are never returned again; they are dropped when this server saves, or
+ *           evicted as the least recently used reports when the cache is full.
+ *           ReportCache is thread-safe: it is shared by all the sessions of a JVM.
+ * @attributes <pre>
+ * capacity		int
+ * entries		LinkedHashMap<Key, String>
+ * hits			long
+ * misses		long
+ * evictions	long
+ * </pre>
+ * @Object a typical ReportCache is c:<n, e, h, m, ev> where n is the maximum number of reports, e is the reports
+ *         from the least recently used to the most recently used, h and m are the lookups that found and did not
+ *         find a report, ev is the reports evicted because the cache was full
+ * AF(c) = c:<n, e, h, m, ev>
+ * @rep_invariant
+ * 	n > 0 && e.size() <= n && h >= 0 && m >= 0 && ev >= 0
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public class ReportCache {
+	public enum Report {
+		ALL_STOCKS, OWN_STOCKS, TRACK_STOCKS, TOP_EARNERS, TOP_RETURNS, TOP_EARNERS_PAGE
+	}
+
+	private final int capacity;
+	private final LinkedHashMap<Key, String> entries;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * @requires capacity > 0
+	 * @effects initialize this as c:<capacity, [], 0, 0, 0>
+	 */
+	public ReportCache(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("invalid capacity:'" + capacity + "'");
+		}
+		this.capacity = capacity;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	/**
+	 * @modifies this
+	 * @effects <pre>
+	 *  if a report is kept for (report, user, page, pageSize, version)
+	 *    mark it as the most recently used report, add 1 to hits
+	 *    return it
+	 *  else
+	 *    add 1 to misses
+	 *    return null
+	 * </pre>
+	 */
+	synchronized String get(Report report, String user, int page, int pageSize, Version version) {
+		String text = entries.get(new Key(report, user, page, pageSize, version));
+		if (text != null) {
+			hits++;
+		} else {
+			misses++;
+		}
+		return text;
+	}
+
+	/**
+	 * @modifies this
+	 * @effects <pre>
+	 *  keep text as the most recently used report for (report, user, page, pageSize, version)
+	 *  if there are more than capacity reports
+	 *    evict the least recently used report, add 1 to evictions
+	 * </pre>
+	 */
+	synchronized void put(Report report, String user, int page, int pageSize, Version version, String text) {
+		entries.put(new Key(report, user, page, pageSize, version), text);
+		if (entries.size() > capacity) {
+			Iterator<Map.Entry<Key, String>> it = entries.entrySet().iterator();
+			it.next();
+			it.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * @modifies this
+	 * @effects remove every report (the counters are kept)
+	 */
+	synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * @effects return the number of reports kept
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @effects return capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @effects return hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @effects return misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @effects return evictions
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return getClass().getSimpleName() + ":<" + entries.size() + " of " + capacity + " reports, " + hits + " hits, "
+				+ misses + " misses, " + evictions + " evictions>";
+	}
+
+	/**
+	 * @Overview A version of the DB: the path of its file, the time and the editor of its last save, read from
+	 *           the head of the file, and the length and the modification time of the file.
+	 * @attributes <pre>
+	 * path			String
+	 * time			long
+	 * editor		String
+	 * length		long
+	 * modified		long
+	 * </pre>
+	 * @Object a typical Version is c:<p, t, e, l, m>
+	 * AF(c) = c:<p, t, e, l, m>
+	 * @rep_invariant
+	 * 	p!=null && e!=null
+	 */
+	static final class Version {
+		private final String path;
+		private final long time;
+		private final String editor;
+		private final long length;
+		private final long modified;
+
+		Version(String path, long time, String editor, long length, long modified) {
+			this.path = path;
+			this.time = time;
+			this.editor = editor;
+			this.length = length;
+			this.modified = modified;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Version)) {
+				return false;
+			}
+			Version v = (Version) o;
+			return time == v.time && length == v.length && modified == v.modified && editor.equals(v.editor)
+					&& path.equals(v.path);
+		}
+
+		@Override
+		public int hashCode() {
+			return (((path.hashCode() * 31 + Long.hashCode(time)) * 31 + editor.hashCode()) * 31
+					+ Long.hashCode(length)) * 31 + Long.hashCode(modified);
+		}
+
+		@Override
+		public String toString() {
+			return getClass().getSimpleName() + ":<" + path + ", " + time + ", " + editor + ", " + length + ", " + modified + ">";
+		}
+	}
+
+	private static final class Key {
+		private final Report report;
+		private final String user;
+		private final int page;
+		private final int pageSize;
+		private final Version version;
+
+		private Key(Report report, String user, int page, int pageSize, Version version) {
+			this.report = report;
+			this.user = user;
+			this.page = page;
+			this.pageSize = pageSize;
+			this.version = version;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key) o;
+			return report == k.report && page == k.page && pageSize == k.pageSize && version.equals(k.version)
+					&& (user == null ? k.user == null : user.equals(k.user));
+		}
+
+		@Override
+		public int hashCode() {
+			int h = report.hashCode();
+			h = h * 31 + (user == null ? 0 : user.hashCode());
+			h = h * 31 + page;
+			h = h * 31 + pageSize;
+			return h * 31 + version.hashCode();
+		}
+	}
+}
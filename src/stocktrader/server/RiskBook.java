@@ -0,0 +1,137 @@
+package stocktrader.server;
+
+import stocktrader.server.risk.MonteCarloVaR;
+import stocktrader.server.risk.RiskReport;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * @Overview RiskBook keeps the risk reports of every user, simulated in the background once nextDay() has saved a
+ *           new version of the DB. A run takes as many paths (from MIN_PATHS to MAX_PATHS) as fit in BUDGET_MILLIS
+ *           at the cost per path and position measured by the last run, so a risk run over every user ends within
+ *           the window of a nextDay(). Only the reports of the latest run are kept, and only for the version of the
+ *           DB it was started for.
+ *           RiskBook is thread-safe: it is shared by all the sessions of a JVM.
+ * @attributes <pre>
+ * pool				ForkJoinPool
+ * nanosPerStep		double
+ * version			ReportCache.Version
+ * confidences		double[]
+ * index			HashMap<String, Integer>
+ * task				ForkJoinTask<RiskReport[]>
+ * </pre>
+ * @Object a typical RiskBook is c:<p, n, v, cl, i, t> where p runs the simulations, n is the time a run has taken
+ *         per path and position (in nanoseconds), v is the version of the DB of the latest run, cl is its
+ *         confidence levels, i maps a userName to its place in the reports, t is the run (null before the first)
+ * AF(c) = c:<p, n, v, cl, i, t>
+ * @rep_invariant
+ * 	p!=null && n>0 && (t==null || (v!=null && cl!=null && i!=null))
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public class RiskBook {
+	/**
+	 * the time a run over every user may take
+	 */
+	public static final long BUDGET_MILLIS = 1_000;
+	public static final int MIN_PATHS = 1_000;
+	public static final int MAX_PATHS = 10_000;
+
+	private final ForkJoinPool pool;
+	private double nanosPerStep = 50; // until the first run is measured: 1 core, antithetic paths
+	private ReportCache.Version version;
+	private double[] confidences;
+	private HashMap<String, Integer> index;
+	private ForkJoinTask<RiskReport[]> task;
+
+	/**
+	 * @effects initialize this as c:<pool, 50, null, null, null, null>
+	 */
+	RiskBook(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * @effects return the number of paths a run over the positions of users may take to end within BUDGET_MILLIS,
+	 *          from MIN_PATHS to MAX_PATHS
+	 */
+	synchronized int pathsFor(List<User> users) {
+		long steps = Math.max(1, positionsOf(users));
+		long paths = (long) (BUDGET_MILLIS * 1_000_000 / (nanosPerStep * steps));
+		return (int) Math.min(MAX_PATHS, Math.max(MIN_PATHS, paths & ~1L));
+	}
+
+	/**
+	 * The portfolios of users are read before this returns, so they may change while the run goes on.
+	 * @modifies this
+	 * @effects <pre>
+	 *  start simulating the portfolio of every user in users with var in p, as the run of version at confidences
+	 *  (the reports of the previous run are dropped)
+	 *  once the run ends, set n to its time per path and position
+	 * </pre>
+	 */
+	synchronized void start(ReportCache.Version version, List<User> users, MonteCarloVaR var,
+			double[] confidences) {
+		HashMap<String, Integer> names = new HashMap<>(users.size() * 4 / 3 + 1);
+		for (int i = 0; i < users.size(); i++) {
+			names.put(users.get(i).getUserName(), i);
+		}
+		final long steps = Math.max(1, positionsOf(users)) * var.getPaths();
+		final ForkJoinTask<RiskReport[]> run = var.taskAll(users, confidences);
+		this.version = version;
+		this.confidences = confidences.clone();
+		this.index = names;
+		this.task = run;
+		pool.execute(new Runnable() {
+			@Override
+			public void run() {
+				long t0 = System.nanoTime();
+				run.invoke();
+				measured((double) (System.nanoTime() - t0) / steps);
+			}
+		});
+	}
+
+	/**
+	 * @effects <pre>
+	 *  if the run of version at confidences has ended and userName is one of its users
+	 *    return the RiskReport of userName
+	 *  else
+	 *    return null
+	 * </pre>
+	 */
+	synchronized RiskReport reportOf(ReportCache.Version version, String userName, double[] confidences) {
+		if (task == null || version == null || !version.equals(this.version)
+				|| !Arrays.equals(confidences, this.confidences) || !task.isDone()
+				|| task.isCompletedAbnormally()) {
+			return null;
+		}
+		Integer i = index.get(userName);
+		return (i != null) ? task.join()[i] : null;
+	}
+
+	/**
+	 * @effects return the time the last run has taken per path and position, in nanoseconds
+	 */
+	public synchronized double getNanosPerStep() {
+		return nanosPerStep;
+	}
+
+	private synchronized void measured(double nanos) {
+		if (nanos > 0) {
+			nanosPerStep = nanos;
+		}
+	}
+
+	private static long positionsOf(List<User> users) {
+		long n = 0;
+		for (User u : users) {
+			n += u.getPositions().size();
+		}
+		return n;
+	}
+}
@@ -2,12 +2,11 @@ package stocktrader.server;
 
 import stocktrader.common.NotPossibleException;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Calendar;
+import java.util.List;
+import java.util.SplittableRandom;
 
 /**
  * Must be run before the main program
@@ -18,47 +17,42 @@ import java.util.Calendar;
  *       random quantity between 100 and 1000
  *       random price between $1 and $20
  * Saves all data into the file `defaultDB.dat`
+ * (with the arguments of DatasetGenerator, a generated DB of any size is saved instead)
  * @Version 1.0.211127
  * @author Mr. QuanDD, Phan Quang Tuan
  */
 public class ServerSetup {
 
-	public static double randomBalance() {
-		return Math.ceil(Math.random() * 100 + 200) / 10;
+	public static long randomBalance() {
+		return DatasetGenerator.randomBalance(new SplittableRandom());
 	}
 
-	public static double randomStockPrice() {
-		return Math.ceil(Math.random() * 190 + 10) / 10;
+	public static long randomStockPrice() {
+		return DatasetGenerator.randomStockPrice(new SplittableRandom());
 	}
 
 	public static String randomStockName() {
-		String s = "";
-
-		for (int i = 0; i < 3; i++) {
-			char c = (char) ((Math.random() * 26) + 65);
-			s += c;
-		}
-
-		return s;
+		return DatasetGenerator.randomLetters(new SplittableRandom(), 3);
 	}
 
 	public static String randomCompStockName() {
-		String s = "";
-
-		for (int i = 0; i < 3; i++) {
-			char c = (char) ((Math.random() * 26) + 65);
-			String tmp = "" + c + c;
-			s += tmp;
-		}
-
-		return s;
+		return DatasetGenerator.randomCompanyName(new SplittableRandom());
 	}
 
 	public static int randomQuantity() {
-		return (int) ((Math.random() * 900) + 100);
+		return DatasetGenerator.randomQuantity(new SplittableRandom());
 	}
 
+	/**
+	 * Without arguments, write the default fixture; with the arguments of DatasetGenerator, write a generated DB
+	 * of that size instead.
+	 */
 	public static void main(String[] args) throws NotPossibleException, IOException {
+		if (args.length > 0) {
+			DatasetGenerator.main(args);
+			return;
+		}
+
 		// init users
 		ArrayList<User> users = new ArrayList<>();
 		User[] u = new User[5];
@@ -70,28 +64,36 @@ public class ServerSetup {
 
 		users.addAll(Arrays.asList(u));
 
-		// init stocks
+		writeDB("defaultDB", users, initStocks());
+	}
+
+	/**
+	 * @effects return the stocks of a new market: 5 well-known stocks and 5 random ones
+	 */
+	public static ArrayList<Stock> initStocks() throws NotPossibleException {
 		ArrayList<Stock> stocks = new ArrayList<>();
 		Stock[] s = new Stock[5];
-		s[0] = new Stock("COMP", "composite.,ltd", 12.88, 12);
-		s[1] = new Stock("NDX", "noDogex", 11.3, 103);
-		s[2] = new Stock("SPX", "sp500", 3.25, 1500);
-		s[3] = new Stock("INDU", "india adu", 10.25, 50);
-		s[4] = new Stock("TLA", "Tesla", 100.163, 15);
+		s[0] = new Stock("COMP", "composite.,ltd", Money.of(12.88), 12);
+		s[1] = new Stock("NDX", "noDogex", Money.of(11.3), 103);
+		s[2] = new Stock("SPX", "sp500", Money.of(3.25), 1500);
+		s[3] = new Stock("INDU", "india adu", Money.of(10.25), 50);
+		s[4] = new Stock("TLA", "Tesla", Money.of(100.163), 15);
 
 		stocks.addAll(Arrays.asList(s));
 
 		for (int i = 0; i < 5; i++) {
 			stocks.add(new Stock(randomStockName(), randomCompStockName(), randomStockPrice(), randomQuantity()));
 		}
+		return stocks;
+	}
 
-		// write server data into a file
-		ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream("defaultDB.dat"));
-		oos.writeObject(Calendar.getInstance().getTime());
-		oos.writeObject("000 SeRvEr_-_SeTuP 000"); // this String must not be a valid User.userName
-		oos.writeObject(users);
-		oos.writeObject(stocks);
-		oos.writeObject(1);
-		oos.close();
+	/**
+	 * @modifies `DBname.dat`
+	 * @effects write a new DB of users and stocks on day 1 into `DBname.dat` (the other parts of the DB are built
+	 *          by the server when it first loads it)
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void writeDB(String DBname, List<User> users, List<Stock> stocks) throws IOException {
+		DatasetGenerator.writeDB(DBname, users, stocks);
 	}
 }
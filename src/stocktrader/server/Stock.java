@@ -9,23 +9,26 @@ import java.io.Serializable;
  * @attributes <pre>
  * id				String
  * companyName		String
- * currentPrice		double
+ * currentPrice		long
  * quantity			int
  *
  * </pre>
- * @Object a typical Stock is :<i, c, p, q> where i is id, c is companyName, p is currentPrice, q is availableQuantity
+ * @Object a typical Stock is :<i, c, p, q> where i is id, c is companyName, p is currentPrice (in Money ticks),
+ *         q is availableQuantity
  * AF(c) = :<i, c, p, q>
  * @rep_invariant
  * 	i!=null && 3<=i.length<=6 &&
  * 	c!=null && 0<c.length<=20 &&
- * 	p>=0d && q>=0
+ * 	p>=0 && q>=0
  * @Version 1.0.211127
  * @author Phan Quang Tuan
  */
 public class Stock implements Serializable {
+	private static final long serialVersionUID = -6302280245995109311L;
+
 	private String id;
 	private String companyName;
-	private double currentPrice;
+	private long currentPrice;
 	private int availableQuantity;
 
 	/**
@@ -35,7 +38,7 @@ public class Stock implements Serializable {
 	 * else
 	 * 	throw NotPossibleException</pre>
 	 */
-	public Stock(String id, String companyName, double currentPrice, int availableQuantity) throws NotPossibleException {
+	public Stock(String id, String companyName, long currentPrice, int availableQuantity) throws NotPossibleException {
 		if (!validateID(id)) {
 			throw new NotPossibleException(getClass().getSimpleName() + ".init: invalid id:'" + id + "'");
 		}
@@ -91,7 +94,7 @@ public class Stock implements Serializable {
 	 *   return false
 	 * </pre>
 	 */
-	private boolean validateCurrentPrice(double currentPrice) {
+	private boolean validateCurrentPrice(long currentPrice) {
 		return currentPrice >= 0;
 	}
 
@@ -122,9 +125,9 @@ public class Stock implements Serializable {
 	}
 
 	/**
-	 * @effects return currentPrice
+	 * @effects return currentPrice (in Money ticks)
 	 */
-	public double getCurrentPrice() {
+	public long getCurrentPrice() {
 		return currentPrice;
 	}
 
@@ -136,7 +139,7 @@ public class Stock implements Serializable {
 	 *   do nothing
 	 * </pre>
 	 */
-	public void setCurrentPrice(double currentPrice) {
+	public void setCurrentPrice(long currentPrice) {
 		if (validateCurrentPrice(currentPrice)) {
 			this.currentPrice = currentPrice;
 		}
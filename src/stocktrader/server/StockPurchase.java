@@ -3,7 +3,6 @@ package stocktrader.server;
 import stocktrader.common.NotPossibleException;
 
 import java.io.Serializable;
-import java.util.Calendar;
 import java.util.Date;
 
 /**
@@ -11,25 +10,28 @@ import java.util.Date;
  * @attributes <pre>
  * theStock			Stock
  * quantity			int
- * purchasePrice	double
+ * purchasePrice	long
  * purchaseDate		Date
  * </pre>
- * @Object a typical Stock is :<t, q, p, d> where t is theStock, q is quantity, p is purchasePrice, d is purchaseDate,
+ * @Object a typical Stock is :<t, q, p, d> where t is theStock, q is quantity, p is purchasePrice (in Money ticks),
+ *         d is purchaseDate,
  *         pd is purchaseDay
  * AF(c) = c:<t, q, p, d, pd>
  * @rep_invariant
  * 	t!=null &&
  * 	q>0 &&
- * 	p>=0d &&
+ * 	p>=0 &&
  * 	d is after 1900/0/1 &&
  * 	pd>=1
  * @Version 1.0.211127
  * @author Phan Quang Tuan
  */
 public class StockPurchase implements Serializable {
+	private static final long serialVersionUID = -1955040827357499807L;
+
 	private Stock theStock;
 	private int quantity;
-	private double purchasePrice;
+	private long purchasePrice;
 	private Date purchaseDate;
 	private int purchaseDay;
 
@@ -40,7 +42,7 @@ public class StockPurchase implements Serializable {
 	 * else
 	 * 	throw NotPossibleException</pre>
 	 */
-	public StockPurchase(Stock theStock, int quantity, double purchasePrice, Date purchaseDate, int purchaseDay)
+	public StockPurchase(Stock theStock, int quantity, long purchasePrice, Date purchaseDate, int purchaseDay)
 			throws NotPossibleException {
 		if (!validateStock(theStock)) {
 			throw new NotPossibleException(getClass().getSimpleName() + ".init: invalid theStock:'" + theStock + "'");
@@ -68,8 +70,20 @@ public class StockPurchase implements Serializable {
 		this.theStock = theStock;
 		this.quantity = quantity;
 		this.purchasePrice = purchasePrice;
-		this.purchaseDate = Calendar.getInstance().getTime();
-		this.purchaseDate.setTime(purchaseDate.getTime());
+		this.purchaseDate = new Date(purchaseDate.getTime());
+		this.purchaseDay = purchaseDay;
+	}
+
+	/**
+	 * Used by LotStore to turn a lot back into an object; the values come from a valid StockPurchase.
+	 * @requires theStock, quantity, purchasePrice, purchaseTime, purchaseDay are valid
+	 * @effects initialize this as c:<theStock, quantity, purchasePrice, purchaseTime, purchaseDay>
+	 */
+	StockPurchase(Stock theStock, int quantity, long purchasePrice, long purchaseTime, int purchaseDay) {
+		this.theStock = theStock;
+		this.quantity = quantity;
+		this.purchasePrice = purchasePrice;
+		this.purchaseDate = new Date(purchaseTime);
 		this.purchaseDay = purchaseDay;
 	}
 
@@ -105,8 +119,8 @@ public class StockPurchase implements Serializable {
 	 *   return false
 	 * </pre>
 	 */
-	private boolean validatePurchasePrice(double purchasePrice) {
-		return purchasePrice >= 0d;
+	private boolean validatePurchasePrice(long purchasePrice) {
+		return purchasePrice >= 0;
 	}
 
 	/**
@@ -118,14 +132,7 @@ public class StockPurchase implements Serializable {
 	 * </pre>
 	 */
 	private boolean validatePurchaseDate(Date purchaseDate) {
-		Calendar cal = Calendar.getInstance();
-		if (purchaseDate != null) {
-			cal.setTime(purchaseDate);
-		}
-
-		Calendar minCal = Calendar.getInstance();
-		minCal.set(1900, 0, 1);
-		return (purchaseDate != null && cal.getTime().after(minCal.getTime()));
+		return purchaseDate != null && MarketClock.isValidTime(purchaseDate.getTime());
 	}
 
 	/**
@@ -185,7 +192,7 @@ public class StockPurchase implements Serializable {
 	/**
 	 * @effects return purchasePrice
 	 */
-	public double getPurchasePrice() {
+	public long getPurchasePrice() {
 		return purchasePrice;
 	}
 
@@ -197,7 +204,7 @@ public class StockPurchase implements Serializable {
 	 *   do nothing
 	 * </pre>
 	 */
-	public void setPurchasePrice(double purchasePrice) {
+	public void setPurchasePrice(long purchasePrice) {
 		if (validatePurchasePrice(purchasePrice)) {
 			this.purchasePrice = purchasePrice;
 		}
@@ -210,6 +217,13 @@ public class StockPurchase implements Serializable {
 		return (Date) purchaseDate.clone();
 	}
 
+	/**
+	 * @effects return purchaseDate in epoch milliseconds (without copying purchaseDate)
+	 */
+	public long getPurchaseTime() {
+		return purchaseDate.getTime();
+	}
+
 	/**
 	 * @effects <pre>
 	 * if purchaseDate is valid
@@ -0,0 +1,578 @@
+package stocktrader.server;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * @Overview StockScreener answers queries over the stocks of the market (a price range, a minimum available
+ *           quantity and a prefix of the company name, sorted by price, quantity or id, one page at a time) from
+ *           sorted indexes of the stocks, so a query does not scan or sort the whole market.
+ *           A stock is known by its ordinal, its position in the market. The price and quantity indexes keep the
+ *           key every stock had when it was last updated, so update() finds the old place of a stock after its
+ *           price or quantity has changed and moves it to its new place; inside a batch (every price changes at
+ *           the end of a day) the price index is sorted once when the batch ends instead.
+ *           A query reads the page in order from the index of its sort key when the filters keep enough of it,
+ *           and otherwise collects the matches from the smallest range an index gives for a filter and sorts only
+ *           them.
+ * @attributes <pre>
+ * stocks		Stock[]
+ * prices		long[]
+ * quantities	long[]
+ * idRanks		long[]
+ * byPrice		int[]
+ * byQuantity	int[]
+ * byId			int[]
+ * byName		int[]
+ * batch		int
+ * dirty		boolean
+ * </pre>
+ * @Object a typical StockScreener is c:<s, p, q, r, bp, bq, bi, bn, b, d> where s[o] is the stock of ordinal o,
+ *         p[o], q[o] are its price (in Money ticks) and available quantity when it was last updated, r[o] is its
+ *         position in bi, bp, bq, bi, bn are the ordinals sorted by (p, ordinal), (q, ordinal), id and
+ *         (company name ignoring case, ordinal), b is the depth of the current batch, d is true if bp has to be
+ *         sorted again
+ * AF(c) = c:<s, p, q, r, bp, bq, bi, bn, b, d>
+ * @rep_invariant
+ * 	s.length == p.length == q.length == r.length == bp.length == bq.length == bi.length == bn.length &&
+ * 	bp, bq, bi, bn are permutations of the ordinals, sorted as above (bp only if !d) &&
+ * 	bi[r[o]] == o for every ordinal o && b >= 0
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public class StockScreener implements Serializable {
+	public enum SortKey {
+		PRICE, QUANTITY, ID
+	}
+
+	private Stock[] stocks;
+	private long[] prices;
+	private long[] quantities;
+	private long[] idRanks;
+	private int[] byPrice;
+	private int[] byQuantity;
+	private int[] byId;
+	private int[] byName;
+	private transient int batch;
+	private boolean dirty;
+
+	/**
+	 * @effects initialize this with the stocks of source, the ordinal of a stock being its index in source
+	 */
+	public StockScreener(List<Stock> source) {
+		int n = source.size();
+		stocks = source.toArray(new Stock[n]);
+		prices = new long[n];
+		quantities = new long[n];
+		idRanks = new long[n];
+		for (int o = 0; o < n; o++) {
+			prices[o] = stocks[o].getCurrentPrice();
+			quantities[o] = stocks[o].getAvailableQuantity();
+		}
+		byPrice = sorted(prices);
+		byQuantity = sorted(quantities);
+		byId = sorted(new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return stocks[a].getId().compareTo(stocks[b].getId());
+			}
+		});
+		for (int r = 0; r < n; r++) {
+			idRanks[byId[r]] = r;
+		}
+		byName = sorted(new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				int c = String.CASE_INSENSITIVE_ORDER.compare(stocks[a].getCompanyName(), stocks[b].getCompanyName());
+				return c != 0 ? c : Integer.compare(a, b);
+			}
+		});
+	}
+
+	/**
+	 * @effects return the number of stocks
+	 */
+	public int size() {
+		return stocks.length;
+	}
+
+	/**
+	 * @requires 0 <= ordinal < size()
+	 * @effects return the stock of ordinal
+	 */
+	public Stock stockAt(int ordinal) {
+		return stocks[ordinal];
+	}
+
+	/**
+	 * @modifies this
+	 * @effects start a batch: until the batch ends, price changes are recorded without moving the stocks in the
+	 *          price index
+	 */
+	public void beginBatch() {
+		batch++;
+	}
+
+	/**
+	 * @modifies this
+	 * @effects end the current batch; when the outermost batch ends, sort the price index again if a price has
+	 *          changed in it
+	 */
+	public void endBatch() {
+		if (batch > 0 && --batch == 0 && dirty) {
+			sortPrices();
+		}
+	}
+
+	/**
+	 * @modifies this
+	 * @effects <pre>
+	 *  if s is in this
+	 *    move s to the places of its current price and available quantity in the indexes
+	 *  else
+	 *    do nothing
+	 * </pre>
+	 */
+	public void update(Stock s) {
+		int o = ordinalOf(s);
+		if (o < 0) {
+			return;
+		}
+		long price = s.getCurrentPrice();
+		if (price != prices[o]) {
+			if (batch > 0 || dirty) {
+				prices[o] = price;
+				dirty = true;
+			} else {
+				move(byPrice, prices, o, price);
+			}
+		}
+		long quantity = s.getAvailableQuantity();
+		if (quantity != quantities[o]) {
+			move(byQuantity, quantities, o, quantity);
+		}
+	}
+
+	/**
+	 * @requires query!=null
+	 * @modifies this
+	 * @effects <pre>
+	 *  let matches be the ordinals of the stocks whose price is in [query.minPrice, query.maxPrice], whose
+	 *  available quantity is >= query.minQuantity and whose company name starts with query.namePrefix (ignoring
+	 *  case), sorted by query.sortKey (ties broken by ordinal), descending if query.descending
+	 *  return at most query.limit of matches, starting from the one at query.offset
+	 * </pre>
+	 */
+	public int[] select(Query query) {
+		if (dirty) {
+			sortPrices();
+		}
+		int n = stocks.length;
+		if (query.minPrice > query.maxPrice || query.limit == 0) {
+			return new int[0];
+		}
+
+		// the range every filter keeps in its index
+		int priceFrom = lowerBound(byPrice, prices, 0, n, query.minPrice, -1);
+		int priceTo = lowerBound(byPrice, prices, priceFrom, n, query.maxPrice, Integer.MAX_VALUE);
+		int quantityFrom = lowerBound(byQuantity, quantities, 0, n, query.minQuantity, -1);
+		int nameFrom = 0;
+		int nameTo = n;
+		if (!query.namePrefix.isEmpty()) {
+			nameFrom = nameLowerBound(query.namePrefix);
+			nameTo = namePrefixEnd(nameFrom, query.namePrefix);
+		}
+
+		int[] sortIndex;
+		long[] sortKeys;
+		int sortFrom;
+		int sortTo;
+		switch (query.sortKey) {
+		case PRICE:
+			sortIndex = byPrice;
+			sortKeys = prices;
+			sortFrom = priceFrom;
+			sortTo = priceTo;
+			break;
+		case QUANTITY:
+			sortIndex = byQuantity;
+			sortKeys = quantities;
+			sortFrom = quantityFrom;
+			sortTo = n;
+			break;
+		default:
+			sortIndex = byId;
+			sortKeys = idRanks;
+			sortFrom = 0;
+			sortTo = n;
+			break;
+		}
+
+		// the smallest range a filter keeps
+		int[] scanIndex = byPrice;
+		int scanFrom = priceFrom;
+		int scanTo = priceTo;
+		if (n - quantityFrom < scanTo - scanFrom) {
+			scanIndex = byQuantity;
+			scanFrom = quantityFrom;
+			scanTo = n;
+		}
+		if (nameTo - nameFrom < scanTo - scanFrom) {
+			scanIndex = byName;
+			scanFrom = nameFrom;
+			scanTo = nameTo;
+		}
+		int candidates = scanTo - scanFrom;
+		if (candidates == 0) {
+			return new int[0];
+		}
+
+		// reading in order stops after offset + limit matches, about 1 in n / candidates rows of the sort range match
+		long wanted = Math.min((long) query.offset + query.limit, candidates);
+		long streamCost = Math.min(sortTo - sortFrom, wanted * n / candidates);
+		long collectCost = candidates + (long) candidates * (32 - Integer.numberOfLeadingZeros(candidates));
+		if (streamCost <= collectCost) {
+			return stream(query, sortIndex, sortFrom, sortTo);
+		}
+		return collect(query, scanIndex, scanFrom, scanTo, sortKeys);
+	}
+
+	/**
+	 * @effects return the page of query read in order from sortIndex[from..to)
+	 */
+	private int[] stream(Query query, int[] sortIndex, int from, int to) {
+		int[] page = new int[Math.min(query.limit, Math.min(to - from, 1024))];
+		int size = 0;
+		int skipped = 0;
+		for (int k = 0; k < to - from && size < query.limit; k++) {
+			int o = sortIndex[query.descending ? to - 1 - k : from + k];
+			if (matches(o, query)) {
+				if (skipped < query.offset) {
+					skipped++;
+				} else {
+					if (size == page.length) {
+						page = Arrays.copyOf(page, (int) Math.min(query.limit, page.length * 2L));
+					}
+					page[size++] = o;
+				}
+			}
+		}
+		return size == page.length ? page : Arrays.copyOf(page, size);
+	}
+
+	/**
+	 * @effects return the page of query from the matches in scanIndex[from..to), sorted by sortKeys
+	 */
+	private int[] collect(Query query, int[] scanIndex, int from, int to, long[] sortKeys) {
+		int[] matches = new int[to - from];
+		int m = 0;
+		for (int k = from; k < to; k++) {
+			int o = scanIndex[k];
+			if (matches(o, query)) {
+				matches[m++] = o;
+			}
+		}
+		mergeSort(matches, new int[m], 0, m, sortKeys);
+		int size = (int) Math.max(0, Math.min(query.limit, (long) m - query.offset));
+		int[] page = new int[size];
+		for (int k = 0; k < size; k++) {
+			page[k] = matches[query.descending ? m - 1 - query.offset - k : query.offset + k];
+		}
+		return page;
+	}
+
+	private boolean matches(int o, Query query) {
+		return prices[o] >= query.minPrice && prices[o] <= query.maxPrice && quantities[o] >= query.minQuantity
+				&& stocks[o].getCompanyName().regionMatches(true, 0, query.namePrefix, 0, query.namePrefix.length());
+	}
+
+	/**
+	 * @effects <pre>
+	 *  if s is in this
+	 *    return its ordinal
+	 *  else
+	 *    return -1
+	 * </pre>
+	 */
+	private int ordinalOf(Stock s) {
+		String id = s.getId();
+		int lo = 0;
+		int hi = byId.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (stocks[byId[mid]].getId().compareTo(id) < 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		// the stocks with the same id follow each other
+		for (int r = lo; r < byId.length && stocks[byId[r]].getId().equals(id); r++) {
+			if (stocks[byId[r]] == s) {
+				return byId[r];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @requires o is in index, keys[o] is its key in index
+	 * @modifies index, keys
+	 * @effects keys[o] = key, and move o to its place in index, shifting only the ordinals between its old place
+	 *          and its new place
+	 */
+	private static void move(int[] index, long[] keys, int o, long key) {
+		int n = index.length;
+		int i = lowerBound(index, keys, 0, n, keys[o], o);
+		keys[o] = key;
+		if (i + 1 < n && before(keys, index[i + 1], o)) {
+			int j = lowerBound(index, keys, i + 1, n, key, o);
+			System.arraycopy(index, i + 1, index, i, j - 1 - i);
+			index[j - 1] = o;
+		} else if (i > 0 && before(keys, o, index[i - 1])) {
+			int j = lowerBound(index, keys, 0, i, key, o);
+			System.arraycopy(index, j, index, j + 1, i - j);
+			index[j] = o;
+		}
+	}
+
+	/**
+	 * @effects return true if (keys[a], a) < (keys[b], b)
+	 */
+	private static boolean before(long[] keys, int a, int b) {
+		return keys[a] < keys[b] || (keys[a] == keys[b] && a < b);
+	}
+
+	/**
+	 * @requires index[from..to) is sorted by (keys, ordinal)
+	 * @effects return the first position p in [from, to) where (keys[index[p]], index[p]) >= (key, o), or to
+	 */
+	private static int lowerBound(int[] index, long[] keys, int from, int to, long key, int o) {
+		int lo = from;
+		int hi = to;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			int p = index[mid];
+			if (keys[p] < key || (keys[p] == key && p < o)) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * @effects return the first position p in byName where the company name of byName[p] >= prefix (ignoring case)
+	 */
+	private int nameLowerBound(String prefix) {
+		int lo = 0;
+		int hi = byName.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (String.CASE_INSENSITIVE_ORDER.compare(stocks[byName[mid]].getCompanyName(), prefix) < 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * @requires from == nameLowerBound(prefix)
+	 * @effects return the first position p >= from in byName where the company name of byName[p] does not start
+	 *          with prefix (ignoring case), or byName.length (the names that start with prefix follow each other)
+	 */
+	private int namePrefixEnd(int from, String prefix) {
+		int lo = from;
+		int hi = byName.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (stocks[byName[mid]].getCompanyName().regionMatches(true, 0, prefix, 0, prefix.length())) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	private void sortPrices() {
+		mergeSort(byPrice, new int[byPrice.length], 0, byPrice.length, prices);
+		dirty = false;
+	}
+
+	/**
+	 * @effects return the ordinals sorted by (keys, ordinal)
+	 */
+	private static int[] sorted(long[] keys) {
+		int[] index = new int[keys.length];
+		for (int o = 0; o < index.length; o++) {
+			index[o] = o;
+		}
+		mergeSort(index, new int[index.length], 0, index.length, keys);
+		return index;
+	}
+
+	/**
+	 * @effects return the ordinals sorted by order
+	 */
+	private int[] sorted(Comparator<Integer> order) {
+		Integer[] boxed = new Integer[stocks.length];
+		for (int o = 0; o < boxed.length; o++) {
+			boxed[o] = o;
+		}
+		Arrays.sort(boxed, order);
+		int[] index = new int[boxed.length];
+		for (int k = 0; k < index.length; k++) {
+			index[k] = boxed[k];
+		}
+		return index;
+	}
+
+	/**
+	 * @modifies a, tmp
+	 * @effects sort a[from..to) by (keys, ordinal)
+	 */
+	private static void mergeSort(int[] a, int[] tmp, int from, int to, long[] keys) {
+		if (to - from < 2) {
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(a, tmp, from, mid, keys);
+		mergeSort(a, tmp, mid, to, keys);
+		if (!before(keys, a[mid], a[mid - 1])) {
+			return; // already in order, the usual case after a day of small price changes
+		}
+		System.arraycopy(a, from, tmp, from, to - from);
+		int i = from;
+		int j = mid;
+		for (int k = from; k < to; k++) {
+			if (j >= to || (i < mid && !before(keys, tmp[j], tmp[i]))) {
+				a[k] = tmp[i++];
+			} else {
+				a[k] = tmp[j++];
+			}
+		}
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		if (dirty) {
+			sortPrices();
+		}
+		out.defaultWriteObject();
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + ":<" + stocks.length + " stocks" + (dirty ? ", price index unsorted" : "")
+				+ ">";
+	}
+
+	/**
+	 * @Overview A query of a StockScreener: the filters, the sort key and the page. Every filter is off until it
+	 *           is set.
+	 * @attributes <pre>
+	 * minPrice		long
+	 * maxPrice		long
+	 * minQuantity	long
+	 * namePrefix	String
+	 * sortKey		SortKey
+	 * descending	boolean
+	 * offset		int
+	 * limit		int
+	 * </pre>
+	 * @Object a typical Query is c:<lp, hp, q, np, k, d, o, l> where a stock matches if its price (in Money ticks)
+	 *         is in [lp, hp], its available quantity is >= q and its company name starts with np (ignoring case);
+	 *         the matches are sorted by k (descending if d) and the page is at most l of them from the one at o
+	 * AF(c) = c:<lp, hp, q, np, k, d, o, l>
+	 * @rep_invariant
+	 * 	np!=null && k!=null && o >= 0 && l >= 0
+	 */
+	public static class Query implements Serializable {
+		private long minPrice = Long.MIN_VALUE;
+		private long maxPrice = Long.MAX_VALUE;
+		private long minQuantity = Long.MIN_VALUE;
+		private String namePrefix = "";
+		private SortKey sortKey = SortKey.ID;
+		private boolean descending;
+		private int offset;
+		private int limit = Integer.MAX_VALUE;
+
+		/**
+		 * @effects initialize this as a query of every stock by id
+		 */
+		public Query() {
+		}
+
+		/**
+		 * @modifies this
+		 * @effects keep the stocks whose price (in Money ticks) is in [minPrice, maxPrice], return this
+		 */
+		public Query priceBetween(long minPrice, long maxPrice) {
+			this.minPrice = minPrice;
+			this.maxPrice = maxPrice;
+			return this;
+		}
+
+		/**
+		 * @modifies this
+		 * @effects keep the stocks whose available quantity is >= minQuantity, return this
+		 */
+		public Query minQuantity(int minQuantity) {
+			this.minQuantity = minQuantity;
+			return this;
+		}
+
+		/**
+		 * @modifies this
+		 * @effects keep the stocks whose company name starts with prefix, ignoring case (any stock if prefix is
+		 *          null or empty), return this
+		 */
+		public Query namePrefix(String prefix) {
+			this.namePrefix = prefix == null ? "" : prefix;
+			return this;
+		}
+
+		/**
+		 * @modifies this
+		 * @effects sort the matches by key, descending if descending, return this
+		 */
+		public Query sortBy(SortKey key, boolean descending) {
+			if (key == null) {
+				throw new IllegalArgumentException("invalid sort key:'" + key + "'");
+			}
+			this.sortKey = key;
+			this.descending = descending;
+			return this;
+		}
+
+		/**
+		 * @modifies this
+		 * @effects <pre>
+		 *  if offset < 0 \/ limit < 0
+		 *    throw IllegalArgumentException
+		 *  else
+		 *    return at most limit matches, starting from the one at offset, return this
+		 * </pre>
+		 */
+		public Query page(int offset, int limit) {
+			if (offset < 0 || limit < 0) {
+				throw new IllegalArgumentException("invalid page:'" + offset + ", " + limit + "'");
+			}
+			this.offset = offset;
+			this.limit = limit;
+			return this;
+		}
+
+		@Override
+		public String toString() {
+			return getClass().getSimpleName() + ":<" + minPrice + ", " + maxPrice + ", " + minQuantity + ", "
+					+ namePrefix + ", " + sortKey + (descending ? " desc" : "") + ", " + offset + ", " + limit + ">";
+		}
+	}
+}
@@ -3,10 +3,22 @@ package stocktrader.server;
 import stocktrader.common.AccessDeniedException;
 import stocktrader.common.OutOfDateException;
 import stocktrader.common.TransactionFailedException;
+import stocktrader.server.UI.DataExport;
 import stocktrader.server.UI.DisplayReport;
+import stocktrader.server.UI.RecordWriter;
+import stocktrader.server.backtest.PricePaths;
+import stocktrader.server.risk.MonteCarloVaR;
+import stocktrader.server.risk.RiskReport;
 
 import java.io.*;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * @Overview A StockServer communicates with StockClient and works with other entities such as User, Stock, StockPurchase
@@ -17,27 +29,101 @@ import java.util.*;
  * Day			  int
  * lastEdit		  Date
  * editor		  String
+ * triggers		  TriggerBook
+ * history		  PriceHistory
+ * candles		  CandleBook
+ * index		  MarketIndex
+ * leaderboard	  Leaderboard
+ * ranking		  NetWorthRanking
+ * screener		  StockScreener
+ * userIndex	  HashMap<String, User>
+ * stockIndex	  HashMap<String, Stock>
+ * holders		  HashMap<String, HashSet<User>>
+ * sessionToken	  String
+ * clock		  MarketClock
+ * dbName		  String
+ * batch		  boolean
+ * pending		  boolean
+ * loadedVersion  ReportCache.Version
  * </pre>
- * @Object a typical StockServer is c:<ul, cu, s, d, l, e> where ul is users, cu is currentUser, s is stocks, d is day
- *         l is lastEdit which represents time at last DB valid save,
- *         e represents userName that lastly modified the DB
- *   AF(c) = c:<ul, cu, s, d, l, e>
+ * @Object a typical StockServer is c:<ul, cu, s, d, l, e, t, h, ca, i, lb, r, sc> where ul is users, cu is currentUser,
+ *         s is stocks, d is day, l is lastEdit which represents time at last DB valid save,
+ *         e represents userName that lastly modified the DB,
+ *         t is the book of pending stop-loss and buy-limit orders, h is the price history of all stocks
+ *         (including the daily close of i), ca is the OHLCV candles of all stocks, i is the market index,
+ *         lb ranks the users in ul by balance, r ranks the users in ul by net worth and return at the last day close,
+ *         sc indexes the stocks in s by price, available quantity, id and company name
+ *         (userIndex, stockIndex, holders and sessionToken are derived attributes: userIndex maps a userName to
+ *         its User in ul, stockIndex maps a stock id to its Stock in s,
+ *         holders maps a stock id to the users in ul that hold that stock, sessionToken resolves to the userName of cu through the sessions shared by all StockServer objects,
+ *         clock gives the wall clock and the virtual time of d,
+ *         dbName is the name of the file of the default DB without its extension, `defaultDB` unless it is given,
+ *         batch is true between beginBatch() and endBatch(), pending is true if a change made in the batch is not
+ *         saved yet, loadedVersion is the version of the DB last loaded or saved by this session, null while a
+ *         change of this session may not be saved)
+ *   AF(c) = c:<ul, cu, s, d, l, e, t, h, ca, i, lb, r, sc>
  * @rep_invariant
  *   ul != null && cu != null && cu is in ul &&
  *   a>=0 &&
- *   s != null && e != null
+ *   s != null && e != null && t != null && h != null && ca != null && i != null &&
+ *   lb != null && lb.size == ul.size && r != null && r.size == ul.size && sc != null && sc.size == s.size &&
+ *   userIndex.size == ul.size && stockIndex.size == s.size &&
+ *   for all u in ul, s in s: u is in holders[s.id] <=> u.quantityOf(s) > 0
  *
  * @Version 1.0.211127
  * @BasedOnVersionOf Mr. QuanDD
  * @author Phan Quang Tuan
  */
 public class StockServer implements Serializable {
+	/**
+	 * daily volatility of a stock without history: nextDay() changes prices by a uniform rate in [-15%, 15%]
+	 */
+	private static final double DEFAULT_VOLATILITY = 0.3 / Math.sqrt(12);
+	private static final int RISK_PATHS = 10_000;
+	private static final double[] RISK_CONFIDENCES = { 0.95, 0.99 };
+	private static final SecureRandom TOKENS = new SecureRandom();
+	/**
+	 * session token -> userName, shared by all sessions
+	 */
+	private static final ConcurrentHashMap<String, String> SESSIONS = new ConcurrentHashMap<>();
+	/**
+	 * the reports rendered by all sessions, by DB version
+	 */
+	private static final ReportCache REPORTS = new ReportCache(256);
+	/**
+	 * the risk reports of every user, simulated after each nextDay() of all sessions
+	 */
+	private static final RiskBook RISKS = new RiskBook(new ForkJoinPool(Runtime.getRuntime().availableProcessors()));
+	/**
+	 * held while checking that a session is up to date and saving it, so two sessions of this JVM cannot both pass
+	 * the check and overwrite each other
+	 */
+	private static final Object DB_LOCK = new Object();
+
 	private ArrayList<User> users;
 	private User currentUser;
 	private ArrayList<Stock> stocks;
 	private int day;
 	private Date lastEdit; // time's at last DB valid save
 	private String editor; // userName that lastly modified the DB
+	private TriggerBook triggers;
+	private PriceHistory history;
+	private CandleBook candles;
+	private MarketIndex index;
+	private Leaderboard leaderboard;
+	private NetWorthRanking ranking;
+	private StockScreener screener;
+	private HashMap<String, User> userIndex;
+	private HashMap<String, Stock> stockIndex;
+	private HashMap<String, HashSet<User>> holders;
+	private String sessionToken;
+	private final MarketClock clock;
+	private final String dbName;
+	private boolean batch;
+	private boolean pending;
+	private boolean outOfDate;
+	private String saveFailure;
+	private ReportCache.Version loadedVersion; // version of the DB this session holds, null if it may differ
 
 	/**
 	 * @effects <pre>
@@ -45,35 +131,136 @@ public class StockServer implements Serializable {
 	 * </pre>
 	 */
 	public StockServer() {
-		defaultLoad();
+		this(MarketClock.system());
+	}
+
+	/**
+	 * @effects <pre>
+	 * this.clock = clock
+	 * Load default DB to initialize all the attributes
+	 * </pre>
+	 */
+	public StockServer(MarketClock clock) {
+		this(clock, "defaultDB");
+	}
+
+	/**
+	 * @effects <pre>
+	 * this.dbName = dbName
+	 * Load the DB `dbName.dat` to initialize all the attributes
+	 * </pre>
+	 */
+	public StockServer(String dbName) {
+		this(MarketClock.system(), dbName);
+	}
+
+	/**
+	 * @effects <pre>
+	 * this.clock = clock
+	 * this.dbName = dbName
+	 * Load the DB `dbName.dat` to initialize all the attributes
+	 * </pre>
+	 */
+	public StockServer(MarketClock clock, String dbName) {
+		this(clock, dbName, true);
+	}
+
+	private StockServer(MarketClock clock, String dbName, boolean load) {
+		this.clock = clock;
+		this.dbName = dbName;
+		if (load) {
+			defaultLoad();
+		}
+	}
+
+	/**
+	 * @effects <pre>
+	 *  return a StockServer on the DB `dbName.dat` that has not loaded it yet,
+	 *  for a batch: beginBatch() loads the DB once
+	 * </pre>
+	 */
+	public static StockServer forBatch(String dbName) {
+		return new StockServer(MarketClock.system(), dbName, false);
 	}
 
 	/**
-	 * @modifies currentUser
+	 * @modifies currentUser, sessionToken, `defaultDB.dat`
 	 * @effects <pre>
-	 *  if there exists u in c.users
+	 *  if the DB has never been loaded
+	 *     return "login failed: cannot load the DB"
+	 *  else if there exists u in c.users
 	 *  where u.userName==username /\ u.password==password
+	 *     save the changes of the batch that are not saved yet (see flushBatch())
 	 *     currentUser = u
+	 *     open a new session of u and keep its token in sessionToken
 	 *     return "logged in"
 	 *   else
 	 *     return "login failed"
 	 * </pre>
 	 */
 	public String login(String username, String password) {
-		for (User u : users) {
-			if (u.getUserName().equals(username) && u.getPassword().equals(password)) {
-				currentUser = u;
-				//System.out.println("yahooo"); debug
-				return "logged in";
+		if (userIndex == null) {
+			return "login failed: cannot load the DB";
+		}
+		User u = userIndex.get(username);
+		if (u != null && u.getPassword().equals(password)) {
+			if (!savePending()) {
+				// the DB has been loaded again
+				u = userIndex.get(username);
+				if (u == null) {
+					return "login failed";
+				}
 			}
+			closeSession();
+			currentUser = u;
+			sessionToken = newToken();
+			SESSIONS.put(sessionToken, u.getUserName());
+			return "logged in";
 		}
 		return "login failed";
 	}
 
 	/**
-	 * @modifies currentUser
+	 * Continue a session opened by login(), e.g. by another StockServer object.
+	 * @modifies currentUser, sessionToken
+	 * @effects <pre>
+	 *  if token is the token of an open session of a user u in c.users
+	 *     currentUser = u
+	 *     sessionToken = token
+	 *     return "logged in"
+	 *   else
+	 *     return "invalid session"
+	 * </pre>
+	 */
+	public String resume(String token) {
+		String userName = (token != null) ? SESSIONS.get(token) : null;
+		User u = (userName != null && userIndex != null) ? userIndex.get(userName) : null;
+		if (u == null) {
+			return "invalid session";
+		}
+		currentUser = u;
+		sessionToken = token;
+		return "logged in";
+	}
+
+	/**
+	 * @effects <pre>
+	 *  if currentUser != null
+	 *    return the token of the current session, which can be passed to resume()
+	 *  else
+	 *    return null
+	 * </pre>
+	 */
+	public String getSessionToken() {
+		return (currentUser != null) ? sessionToken : null;
+	}
+
+	/**
+	 * @modifies currentUser, sessionToken, `defaultDB.dat`
 	 * @effects <pre>
 	 *  if currentUser!=null
+	 *    save the changes of the batch that are not saved yet (see flushBatch())
+	 *    close the current session
 	 *    currentUser = null
 	 *    return "signed out"
 	 *  else
@@ -82,6 +269,8 @@ public class StockServer implements Serializable {
 	 */
 	public String signOut() {
 		if (currentUser != null) {
+			savePending();
+			closeSession();
 			currentUser = null;
 			return "signed out";
 		}
@@ -110,6 +299,95 @@ public class StockServer implements Serializable {
 		defaultLoad();
 	}
 
+	/**
+	 * Start a batch of actions, e.g. a script of many trades: the DB is loaded once and kept in memory by the
+	 * actions of the batch, and their changes are saved together instead of after every action.
+	 * @modifies all attributes of this
+	 * @effects <pre>
+	 *  if c.batch
+	 *    return true
+	 *  else
+	 *    Load the default DB
+	 *    if it cannot be loaded
+	 *      return false
+	 *    batch = true
+	 *    until endBatch(), the actions do not load the DB, and their changes are saved by flushBatch(),
+	 *    endBatch(), or login() and signOut() (which save the changes of the user they log out)
+	 *    return true
+	 * </pre>
+	 */
+	public boolean beginBatch() {
+		if (!batch) {
+			if (!loadDB(dbName)) {
+				return false;
+			}
+			pending = false;
+			batch = true;
+		}
+		return true;
+	}
+
+	/**
+	 * @modifies all attributes of this, `defaultDB.dat`
+	 * @effects <pre>
+	 *  if there are changes of the batch that are not saved
+	 *    if DB is up to date
+	 *      save to `defaultDB.dat`
+	 *      return true
+	 *    else
+	 *      Load the default DB (the changes are lost)
+	 *      return false
+	 *  else
+	 *    return true
+	 * </pre>
+	 */
+	public boolean flushBatch() {
+		return savePending();
+	}
+
+	/**
+	 * @modifies all attributes of this, `defaultDB.dat`
+	 * @effects <pre>
+	 *  flushBatch()
+	 *  batch = false
+	 *  return the result of flushBatch()
+	 * </pre>
+	 */
+	public boolean endBatch() {
+		try {
+			return savePending();
+		} finally {
+			batch = false;
+		}
+	}
+
+	/**
+	 * @effects return c.batch
+	 */
+	public boolean isInBatch() {
+		return batch;
+	}
+
+	/**
+	 * @effects <pre>
+	 *  if the last save of this session failed
+	 *    return the reason, which can be shown to the user
+	 *  else
+	 *    return null
+	 * </pre>
+	 */
+	public String getSaveFailure() {
+		return saveFailure;
+	}
+
+	/**
+	 * @effects return true if the last save of this session was refused because another session had saved the DB
+	 *          after this one loaded it (the DB has been loaded again)
+	 */
+	public boolean isOutOfDate() {
+		return outOfDate;
+	}
+
 	/**
 	 * This method checks if user has logged in or not
 	 * @effects <pre>
@@ -125,12 +403,37 @@ public class StockServer implements Serializable {
 		}
 	}
 
+	/**
+	 * Buys a stock by its id, so the stock bought does not depend on the order of the stocks in listAllStocks().
+	 * @modifies all attributes of this, stock.availableQuantity, currentUser.balance, `currentDB.dat`
+	 * @effects <pre>
+	 *  if currentUser==null
+	 *    throw AccessDeniedException
+	 *
+	 *  Load default DB
+	 *  if there is no stock whose id is stockId in c.stocks
+	 *    throw TransactionFailedException with the message: stock doesn't exist
+	 *  else
+	 *    buy quantity shares of that stock with the same rules as purchase(int, int)
+	 * </pre>
+	 */
+	public boolean purchase(String stockId, int quantity) throws AccessDeniedException, TransactionFailedException {
+		checkStatus();
+		defaultLoad();
+		Stock stock = stockOf(stockId);
+		Broker.buy(currentUser, stock, quantity, clock.now(), day);
+		afterTrade(currentUser, stock, quantity);
+		return defaultSave();
+	}
+
 	/**
 	 * Listing all stocks purchased by user
 	 * @modifies all attributes of this
 	 * @effects <pre>
 	 *   if currentUser==null
 	 *     throw AccessDeniedException
+	 *   else if the report is in c.REPORTS for the current version of the DB
+	 *     return it
 	 *   else
 	 *     load default DB
 	 *     return a String containing information
@@ -138,14 +441,73 @@ public class StockServer implements Serializable {
 	 * </pre>
 	 */
 	public String listAllStocks() throws AccessDeniedException {
+		return cachedReport(ReportCache.Report.ALL_STOCKS, 0, 0);
+	}
+
+	/**
+	 * Listing one page of the stocks in the market, streamed to out row by row
+	 * @modifies all attributes of this, out
+	 * @effects <pre>
+	 *   if currentUser==null
+	 *     throw AccessDeniedException
+	 *   else if offset < 0 \/ limit < 0
+	 *     throw IllegalArgumentException
+	 *   else
+	 *     load default DB
+	 *     append to out the information about at most limit stocks in c.stocks, starting from the stock at offset
+	 * </pre>
+	 * @throws IOException if out fails
+	 */
+	public void listAllStocks(Appendable out, int offset, int limit) throws AccessDeniedException, IOException {
 		checkStatus();
+		checkPage(offset, limit);
 		defaultLoad();
+		out.append("last update at: ").append(String.valueOf(lastEdit)).append("\n");
+		DisplayReport.displayAllStock(stocks, offset, limit, out);
+	}
+
+	/**
+	 * Screening the stocks in the market, the stock no. being the one listed in the listAllStocks() method.
+	 * @modifies all attributes of this
+	 * @effects <pre>
+	 *   if currentUser==null
+	 *     throw AccessDeniedException
+	 *   else
+	 *     load default DB
+	 *     return a String containing information about the page of the stocks in c.stocks that match query,
+	 *     in the order of query (see StockScreener.select())
+	 * </pre>
+	 */
+	public String screenStocks(StockScreener.Query query) throws AccessDeniedException {
 		StringBuilder sb = new StringBuilder();
-		sb.append("last update at: ").append(lastEdit).append("\n");
-		sb.append(DisplayReport.displayAllStock(stocks));
+		try {
+			screenStocks(sb, query);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
 		return sb.toString();
 	}
 
+	/**
+	 * Screening the stocks in the market, streamed to out row by row
+	 * @modifies all attributes of this, out
+	 * @effects <pre>
+	 *   if currentUser==null
+	 *     throw AccessDeniedException
+	 *   else
+	 *     load default DB
+	 *     append to out the information about the page of the stocks in c.stocks that match query, in the order
+	 *     of query (see StockScreener.select())
+	 * </pre>
+	 * @throws IOException if out fails
+	 */
+	public void screenStocks(Appendable out, StockScreener.Query query) throws AccessDeniedException, IOException {
+		checkStatus();
+		defaultLoad();
+		out.append("last update at: ").append(String.valueOf(lastEdit)).append("\n");
+		DisplayReport.displayScreen(screener, screener.select(query), out);
+	}
+
 	/**
 	 * This method uses the stock no. listed in the listAllStocks() method.
 	 * @modifies all attributes of this, stock.availableQuantity, currentUser.balance, `currentDB.dat`
@@ -154,9 +516,8 @@ public class StockServer implements Serializable {
 	 *    throw AccessDeniedException
 	 *
 	 *  Load default DB
-	 *  stockNo = stockNo -1
 	 *
-	 *  if stockNo < 0 \/ stockNo >= stocks.size()
+	 *  if stockNo < 1 \/ stockNo > stocks.size()
 	 *    throw TransactionFailedException with the message: stock doesn't exist
 	 *  else
 	 *    if quantity < 0 \/ quantity > stock.availableQuantity
@@ -181,221 +542,937 @@ public class StockServer implements Serializable {
 	public boolean purchase(int stockNo, int quantity) throws AccessDeniedException, TransactionFailedException {
 		checkStatus();
 		defaultLoad();
-		double balance = currentUser.getBalance();
+		Stock stock = stockAt(stockNo);
+		Broker.buy(currentUser, stock, quantity, clock.now(), day);
+		afterTrade(currentUser, stock, quantity);
+		return defaultSave();
+	}
+
+	/**
+	 * Listing all stocks purchased by user
+	 * @modifies all attributes of this
+	 * @effects <pre>
+	 *  if currentUser==null
+	 *    throw AccessDeniedException
+	 *  else if the report of currentUser is in c.REPORTS for the current version of the DB
+	 *    return it
+	 *  else
+	 *    Load default DB
+	 *    return a String containing information
+	 *    about all stocks in c.userStocks
+	 * </pre>
+	 */
+	public String listOwnStocks() throws AccessDeniedException {
+		return cachedReport(ReportCache.Report.OWN_STOCKS, 0, 0);
+	}
+
+	/**
+	 * Listing one page of the stocks purchased by user, streamed to out row by row
+	 * @modifies all attributes of this, out
+	 * @effects <pre>
+	 *  if currentUser==null
+	 *    throw AccessDeniedException
+	 *  else if offset < 0 \/ limit < 0
+	 *    throw IllegalArgumentException
+	 *  else
+	 *    Load default DB
+	 *    append to out the information about at most limit lots in c.userStocks, starting from the lot at offset
+	 * </pre>
+	 * @throws IOException if out fails
+	 */
+	public void listOwnStocks(Appendable out, int offset, int limit) throws AccessDeniedException, IOException {
+		checkStatus();
+		checkPage(offset, limit);
+		defaultLoad();
+		out.append("last update at: ").append(String.valueOf(lastEdit)).append("\n");
+		DisplayReport.displayOwnStock(currentUser.getLots(), offset, limit, out);
+	}
+
+	/**
+	 * This method uses the stock no. listed in the listOwnedStocks() method.
+	 * @modifies all attributes of this, s.quantity, currentUser.balance, `currentDB.dat`
+	 * @effects <pre>
+	 *  if currentUser==null
+	 *    throw AccessDeniedException
+	 *
+	 *   //let's say: s is the stock
+	 *   			  SP is the StockPurchase of the stock
+	 *
+	 *   Load default DB
+	 *   stockNo -= 1
+	 *   if StockNo < 0 \/ StockNo >= list.size
+	 *     throw new TransactionFailedException with message: stock doesn't exist
+	 *   else
+	 *     if quantity < 0 \/ quantity > SP.quantity
+	 *       throw new TransactionFailedException with message: invalid quantity
+	 *     else
+	 *       subtract quantity from SP.quantity
+	 *
+	 *       if SP.quantity = quantity
+	 *         remove SP
+	 *       else
+	 *         (update) add quantity to s.AvailableQuantity
+	 *         (update) add s.currentPrice * quantity to currentUser.balance
+	 *
+	 *       save to default DB
+	 *  	 if save successfully
+	 *    	   return true
+	 *       else
+	 *         return false
+	 * </pre>
+	 */
+	public boolean sellStock(int stockNo, int quantity) throws AccessDeniedException, TransactionFailedException {
+		checkStatus();
+		defaultLoad();
+		LotStore lots = currentUser.getLots();
 
 		stockNo -= 1;
-		if (stockNo < 0 || stockNo >= stocks.size()) {
+		if (stockNo < 0 || stockNo >= lots.size()) {
 			throw new TransactionFailedException("stock doesn't exist");
 		} else {
-			Stock stock = stocks.get(stockNo);
-
-			if (quantity < 0 || quantity > stock.getAvailableQuantity()) {
-				throw new TransactionFailedException("not enough quantity");
-			} else {
-				if (balance < (stock.getCurrentPrice() * quantity)) {
-					throw new TransactionFailedException("not enough money");
-				} else {
-					try {
-						Calendar c = Calendar.getInstance();
-						StockPurchase sp = new StockPurchase(stock, quantity, stock.getCurrentPrice(), c.getTime(),
-								day);
-						currentUser.addToOwnStock(sp);
-					} catch (Exception e) {
-						e.printStackTrace();
-					}
-
-					// update the stock
-					stock.setAvailableQuantity(stock.getAvailableQuantity() - quantity);
-					// update currentUser.balance
-					currentUser.setBalance(currentUser.getBalance() - (stock.getCurrentPrice() * quantity));
-					return defaultSave();
-				}
-			}
+			Stock s = lots.stockAt(stockNo);
+			Broker.sell(currentUser, stockNo, quantity);
+			afterTrade(currentUser, s, quantity);
+			return defaultSave();
 		}
 	}
 
 	/**
-	 * Listing all stocks purchased by user
-	 * @modifies all attributes of this
+	 * Sells shares of a stock by its id, across all StockPurchase(s) of that stock, oldest first.
+	 * @effects return sell(stockId, quantity, LotQueue.Order.FIFO)
+	 */
+	public boolean sell(String stockId, int quantity) throws AccessDeniedException, TransactionFailedException {
+		return sell(stockId, quantity, LotQueue.Order.FIFO);
+	}
+
+	/**
+	 * Sells shares of a stock by its id, across all StockPurchase(s) of that stock in the given order. Only the
+	 * StockPurchase(s) that are sold are visited.
+	 * @modifies all attributes of this, s.quantity, currentUser.balance, currentUser.realizedProfit, `currentDB.dat`
+	 * @effects <pre>
+	 *  if currentUser==null
+	 *    throw AccessDeniedException
+	 *
+	 *  Load default DB
+	 *  if there is no stock whose id is stockId in c.stocks
+	 *    throw TransactionFailedException with message: stock doesn't exist
+	 *  else if quantity <= 0 \/ quantity > quantity of the stock that currentUser owns
+	 *    throw TransactionFailedException with message: invalid quantity
+	 *  else
+	 *    take quantity shares from the StockPurchase(s) of the stock, oldest first if order is FIFO,
+	 *    newest first if order is LIFO, removing those that are sold entirely
+	 *    (update) add quantity to s.AvailableQuantity
+	 *    (update) add s.currentPrice * quantity to currentUser.balance
+	 *    (update) add the profit realized by the sale to currentUser.realizedProfit
+	 *    save to default DB
+	 *    if save successfully
+	 *      return true
+	 *    else
+	 *      return false
+	 * </pre>
+	 */
+	public boolean sell(String stockId, int quantity, LotQueue.Order order)
+			throws AccessDeniedException, TransactionFailedException {
+		checkStatus();
+		defaultLoad();
+		Stock stock = stockOf(stockId);
+		Broker.sellLots(currentUser, stock, quantity, order);
+		afterTrade(currentUser, stock, quantity);
+		return defaultSave();
+	}
+
+	/**
+	 * Randomly change all stock prices as if a day has passed.
+	 * @modifies all attributes of this, c.stocks, currentUser.currentDate, `currentDB.dat`
+	 * @effects <pre>
+	 *  if currentUser==null
+	 *    throw AccessDeniedException
+	 *  else
+	 *    Load default DB
+	 *    record the close price of all stocks and c.index in c.history
+	 *    rank all users by net worth and return at these prices into c.ranking
+	 *    increase c.day by 1
+	 *    randomly change all stock prices
+	 *	  (limit the rate of changing to no more than 15% per day)
+	 *    fill the stop-loss and buy-limit orders triggered by the new prices
+	 *    record the new value of c.index in c.history
+	 *    increase currentUser.currentDate by 1
+	 *    save to default DB
+	 *    if save successfully
+	 *      if !c.batch
+	 *        start the risk run of every user in c.RISKS for the saved DB, in the background
+	 *      return true
+	 *    else
+	 *      return false
+	 * </pre>
+	 */
+	public boolean nextDay() throws AccessDeniedException {
+		checkStatus();
+		defaultLoad();
+		// close the current day of every stock before moving on
+		for (Stock s : stocks) {
+			history.record(s.getId(), day, s.getCurrentPrice());
+		}
+		history.record(MarketIndex.SERIES_ID, day, Money.of(index.value()));
+		ranking = NetWorthRanking.compute(users, day, ForkJoinPool.commonPool());
+
+		//increase c.day by 1
+		day++;
+
+		// update stocks' currentPrice, orders triggered by the new prices are filled on the new day
+		candles.beginBatch();
+		screener.beginBatch();
+		for (Stock s : stocks) {
+			// between -15% and +15%, in basis points
+			long rate = Money.RATE_SCALE * 85 / 100 + (long) (Math.random() * (Money.RATE_SCALE * 30 / 100 + 1));
+			applyPrice(s, Money.scale(s.getCurrentPrice(), rate));
+		}
+		screener.endBatch();
+		history.record(MarketIndex.SERIES_ID, day, Money.of(index.value()));
+
+		// increases currentUser.currentDate by 1
+		currentUser.increaseCurrentDate();
+		leaderboard.update(currentUser);
+		if (!defaultSave()) {
+			return false;
+		}
+		if (!batch) {
+			// the portfolios are read now, the paths are simulated in the background
+			MonteCarloVaR var = new MonteCarloVaR(RISKS.pathsFor(users), 1, DEFAULT_VOLATILITY, day);
+			var.estimateVolatility(history, stocks, day);
+			RISKS.start(loadedVersion, users, var, RISK_CONFIDENCES);
+		}
+		return true;
+	}
+
+	/**
+	 * Show a table-like list of all stocks owned by the user with purchase price and current price,
+	 * and the calculated benefit for each stock.
+	 * @modifies all attributes of this
+	 * @effects <pre>
+	 *  if currentUser==null
+	 *    throw AccessDeniedException
+	 *  else
+	 *    Load default DB
+	 *    if save successfully
+	 *      do nothing
+	 *    else
+	 *      print out the failure message
+	 *    return a String containing information, followed by currentUser.realizedProfit
+	 * </pre>
+	 */
+	public String trackStocks() throws AccessDeniedException {
+		return cachedReport(ReportCache.Report.TRACK_STOCKS, 0, 0);
+	}
+
+	/**
+	 * Tracking one page of the stocks purchased by user, streamed to out row by row
+	 * @modifies all attributes of this, out
+	 * @effects <pre>
+	 *  if currentUser==null
+	 *    throw AccessDeniedException
+	 *  else if offset < 0 \/ limit < 0
+	 *    throw IllegalArgumentException
+	 *  else
+	 *    Load default DB
+	 *    append to out the information about at most limit lots in c.userStocks, starting from the lot at offset,
+	 *    followed by currentUser.realizedProfit
+	 * </pre>
+	 * @throws IOException if out fails
+	 */
+	public void trackStocks(Appendable out, int offset, int limit) throws AccessDeniedException, IOException {
+		checkStatus();
+		checkPage(offset, limit);
+		defaultLoad();
+		out.append("last update at: ").append(String.valueOf(lastEdit)).append("\n");
+		DisplayReport.displayTrackStock(currentUser.getLots(), offset, limit, out);
+		out.append("realized profit: ").append(Money.format(currentUser.getRealizedProfit())).append("\n");
+	}
+
+	/**
+	 * Place an order that sells quantity shares of a stock (the stock no. listed in the listAllStocks() method)
+	 * when its price drops below triggerPrice.
+	 * @modifies all attributes of this, c.triggers, `currentDB.dat`
+	 * @effects <pre>
+	 *  if currentUser==null
+	 *    throw AccessDeniedException
+	 *
+	 *  Load default DB
+	 *  if stock doesn't exist
+	 *    throw TransactionFailedException with the message: stock doesn't exist
+	 *  else if quantity <= 0 \/ quantity > quantity of the stock that currentUser owns
+	 *    throw TransactionFailedException with the message: invalid quantity
+	 *  else if triggerPrice <= 0
+	 *    throw TransactionFailedException with the message: invalid order
+	 *  else if stock.currentPrice < triggerPrice
+	 *    throw TransactionFailedException with the message: trigger price already crossed
+	 *  else
+	 *    add a new STOP_LOSS order into c.triggers
+	 *    save to default DB
+	 *    if save successfully
+	 *      return true
+	 *    else
+	 *      return false
+	 * </pre>
+	 */
+	public boolean placeStopLoss(int stockNo, double triggerPrice, int quantity)
+			throws AccessDeniedException, TransactionFailedException {
+		checkStatus();
+		defaultLoad();
+		Stock stock = stockAt(stockNo);
+
+		if (quantity <= 0 || quantity > currentUser.quantityOf(stock)) {
+			throw new TransactionFailedException("invalid quantity");
+		}
+		long trigger = Money.of(triggerPrice);
+		if (trigger <= 0) {
+			throw new TransactionFailedException("invalid order");
+		}
+		if (stock.getCurrentPrice() < trigger) {
+			throw new TransactionFailedException("trigger price already crossed");
+		}
+
+		triggers.place(TriggerOrder.Type.STOP_LOSS, currentUser.getUserName(), stock.getId(), trigger, quantity, day);
+		return defaultSave();
+	}
+
+	/**
+	 * Place an order that buys quantity shares of a stock (the stock no. listed in the listAllStocks() method)
+	 * when its price falls to limitPrice or lower.
+	 * @modifies all attributes of this, c.triggers, `currentDB.dat`
+	 * @effects <pre>
+	 *  if currentUser==null
+	 *    throw AccessDeniedException
+	 *
+	 *  Load default DB
+	 *  if stock doesn't exist
+	 *    throw TransactionFailedException with the message: stock doesn't exist
+	 *  else if quantity <= 0 \/ limitPrice <= 0
+	 *    throw TransactionFailedException with the message: invalid order
+	 *  else if stock.currentPrice <= limitPrice
+	 *    throw TransactionFailedException with the message: trigger price already crossed
+	 *  else
+	 *    add a new BUY_LIMIT order into c.triggers
+	 *    save to default DB
+	 *    if save successfully
+	 *      return true
+	 *    else
+	 *      return false
+	 * </pre>
+	 */
+	public boolean placeBuyLimit(int stockNo, double limitPrice, int quantity)
+			throws AccessDeniedException, TransactionFailedException {
+		checkStatus();
+		defaultLoad();
+		Stock stock = stockAt(stockNo);
+
+		long limit = Money.of(limitPrice);
+		if (quantity <= 0 || limit <= 0) {
+			throw new TransactionFailedException("invalid order");
+		}
+		if (stock.getCurrentPrice() <= limit) {
+			throw new TransactionFailedException("trigger price already crossed");
+		}
+
+		triggers.place(TriggerOrder.Type.BUY_LIMIT, currentUser.getUserName(), stock.getId(), limit, quantity, day);
+		return defaultSave();
+	}
+
+	/**
+	 * This method uses the order no. listed in the listTriggerOrders() method.
+	 * @modifies all attributes of this, c.triggers, `currentDB.dat`
+	 * @effects <pre>
+	 *  if currentUser==null
+	 *    throw AccessDeniedException
+	 *
+	 *  Load default DB
+	 *  if the order doesn't exist \/ it is not a PENDING order of currentUser
+	 *    throw TransactionFailedException with the message: order cannot be cancelled
+	 *  else
+	 *    cancel the order
+	 *    save to default DB
+	 *    if save successfully
+	 *      return true
+	 *    else
+	 *      return false
+	 * </pre>
+	 */
+	public boolean cancelTriggerOrder(int orderNo) throws AccessDeniedException, TransactionFailedException {
+		checkStatus();
+		defaultLoad();
+		if (!triggers.cancel(orderNo, currentUser.getUserName())) {
+			throw new TransactionFailedException("order cannot be cancelled");
+		}
+		return defaultSave();
+	}
+
+	/**
+	 * Listing all stop-loss and buy-limit orders placed by user
+	 * @modifies all attributes of this
+	 * @effects <pre>
+	 *  if currentUser==null
+	 *    throw AccessDeniedException
+	 *  else
+	 *    Load default DB
+	 *    return a String containing information
+	 *    about the pending orders and the latest closed orders of currentUser in c.triggers
+	 * </pre>
+	 */
+	public String listTriggerOrders() throws AccessDeniedException {
+		checkStatus();
+		defaultLoad();
+		StringBuilder sb = new StringBuilder();
+		sb.append("last update at: ").append(lastEdit).append("\n");
+		sb.append(DisplayReport.displayTriggerOrders(triggers.ordersOf(currentUser.getUserName())));
+		return sb.toString();
+	}
+
+	/**
+	 * @modifies all attributes of this
+	 * @effects <pre>
+	 *  if currentUser==null
+	 *    throw AccessDeniedException
+	 *  else
+	 *    Load default DB if its version differs from the one this session holds
+	 *    return the close prices of the stock with stockId from fromDay to toDay (both inclusive),
+	 *    limited to the days that are recorded
+	 * </pre>
+	 */
+	public double[] priceHistory(String stockId, int fromDay, int toDay) throws AccessDeniedException {
+		checkStatus();
+		loadIfChanged();
+		return history.range(stockId, fromDay, toDay);
+	}
+
+	/**
+	 * @modifies all attributes of this
+	 * @effects <pre>
+	 *  if currentUser==null
+	 *    throw AccessDeniedException
+	 *  else
+	 *    Load default DB if its version differs from the one this session holds
+	 *    if the close price of the stock with stockId on day is recorded
+	 *      return it
+	 *    else
+	 *      return Double.NaN
+	 * </pre>
+	 */
+	public double closeOn(String stockId, int day) throws AccessDeniedException {
+		checkStatus();
+		loadIfChanged();
+		return history.close(stockId, day);
+	}
+
+	/**
+	 * Used to replay the market history in a Backtest
+	 * @modifies all attributes of this
+	 * @effects <pre>
+	 *  if currentUser==null
+	 *    throw AccessDeniedException
+	 *  else
+	 *    Load default DB if its version differs from the one this session holds
+	 *    return the close prices of all stocks from fromDay to toDay (both inclusive)
+	 * </pre>
+	 */
+	public PricePaths pricePaths(int fromDay, int toDay) throws AccessDeniedException {
+		checkStatus();
+		loadIfChanged();
+		return PricePaths.fromHistory(history, stocks, fromDay, toDay);
+	}
+
+	/**
+	 * @modifies all attributes of this
+	 * @effects <pre>
+	 *  if currentUser==null
+	 *    throw AccessDeniedException
+	 *  else
+	 *    Load default DB if its version differs from the one this session holds
+	 *    return the latest n candles of the stock with stockId at resolution, oldest first
+	 * </pre>
+	 */
+	public Candle[] latestCandles(String stockId, Candle.Resolution resolution, int n) throws AccessDeniedException {
+		checkStatus();
+		loadIfChanged();
+		return candles.latest(stockId, resolution, n);
+	}
+
+	/**
+	 * Show the value-at-risk and expected shortfall of the stocks owned by the user over the next day. The report of
+	 * the risk run started by the last nextDay() is shown if it has ended and the DB has not changed since, else
+	 * the report is estimated now by simulating RISK_PATHS price paths.
+	 * @requires every confidence is in (0, 1)
+	 * @modifies all attributes of this
+	 * @effects <pre>
+	 *  if currentUser==null
+	 *    throw AccessDeniedException
+	 *  else
+	 *    Load default DB
+	 *    return a String containing the risk report of currentUser at each confidence level
+	 *    (at 95% and 99% if no confidence is given), from c.RISKS if it holds one for this version of the DB
+	 * </pre>
+	 */
+	public String riskReport(double... confidences) throws AccessDeniedException {
+		checkStatus();
+		defaultLoad();
+		if (confidences.length == 0) {
+			confidences = RISK_CONFIDENCES;
+		}
+		RiskReport report = RISKS.reportOf(loadedVersion, currentUser.getUserName(), confidences);
+		if (report == null) {
+			MonteCarloVaR var = new MonteCarloVaR(RISK_PATHS, 1, DEFAULT_VOLATILITY, day);
+			var.estimateVolatility(history, stocks, day);
+			report = var.run(currentUser, confidences, ForkJoinPool.commonPool());
+		}
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("last update at: ").append(lastEdit).append("\n");
+		sb.append(DisplayReport.displayRiskReport(report));
+		return sb.toString();
+	}
+
+	/**
+	 * view the top earners by net worth (along with the number of days they have run the program)
+	 * @modifies all attributes of this
+	 * @effects <pre>
+	 *  if currentUser==null
+	 *    throw AccessDeniedException
+	 *  else if the report of currentUser is in c.REPORTS for the current version of the DB
+	 *    return it
+	 *  else
+	 *    Load default DB
+	 *    return a String containing information about all users in c.ranking, in order of net worth,
+	 *    and the rank of currentUser
+	 * </pre>
+	 */
+	public String viewTopEarners() throws AccessDeniedException {
+		return cachedReport(ReportCache.Report.TOP_EARNERS, 0, 0);
+	}
+
+	/**
+	 * view the top earners by return (along with the number of days they have run the program)
+	 * @modifies all attributes of this
+	 * @effects <pre>
+	 *  if currentUser==null
+	 *    throw AccessDeniedException
+	 *  else if the report of currentUser is in c.REPORTS for the current version of the DB
+	 *    return it
+	 *  else
+	 *    Load default DB
+	 *    return a String containing information about all users in c.ranking, in order of return,
+	 *    and the rank of currentUser
+	 * </pre>
+	 */
+	public String viewTopReturns() throws AccessDeniedException {
+		return cachedReport(ReportCache.Report.TOP_RETURNS, 0, 0);
+	}
+
+	private String viewRanking(NetWorthRanking.Key key) throws AccessDeniedException {
+		checkStatus();
+		defaultLoad();
+		StringBuilder sb = new StringBuilder();
+		sb.append("last update at: ").append(lastEdit).append(", ranked at the close of day ")
+				.append(ranking.getDay()).append("\n");
+		sb.append(DisplayReport.displayRanking(ranking, key, 1, ranking.size()));
+		sb.append(String.format("your rank: %d of %d\n", ranking.rankOf(key, currentUser.getUserName()),
+				ranking.size()));
+		return sb.toString();
+	}
+
+	/**
+	 * view one page of the users with the highest balance (live, not only at day close) and the rank of currentUser
+	 * @modifies all attributes of this
+	 * @effects <pre>
+	 *  if currentUser==null
+	 *    throw AccessDeniedException
+	 *  else if pageNo < 1 \/ pageSize < 1
+	 *    throw IllegalArgumentException
+	 *  else if the page of currentUser is in c.REPORTS for the current version of the DB
+	 *    return it
+	 *  else
+	 *    Load default DB
+	 *    return a String containing information about the users ranked
+	 *    from (pageNo - 1) * pageSize + 1 to pageNo * pageSize in c.leaderboard, and the rank of currentUser
+	 * </pre>
+	 */
+	public String viewTopEarners(int pageNo, int pageSize) throws AccessDeniedException {
+		checkStatus();
+		if (pageNo < 1 || pageSize < 1) {
+			throw new IllegalArgumentException("invalid page:'" + pageNo + ", " + pageSize + "'");
+		}
+		return cachedReport(ReportCache.Report.TOP_EARNERS_PAGE, pageNo, pageSize);
+	}
+
+	/**
+	 * view the users with the highest balance ranked from offset + 1 to offset + limit, streamed to out row by row,
+	 * and the rank of currentUser
+	 * @modifies all attributes of this, out
+	 * @effects <pre>
+	 *  if currentUser==null
+	 *    throw AccessDeniedException
+	 *  else if offset < 0 \/ limit < 0
+	 *    throw IllegalArgumentException
+	 *  else
+	 *    Load default DB
+	 *    append to out the information about the users ranked from offset + 1 to offset + limit
+	 *    in c.leaderboard, and the rank of currentUser
+	 * </pre>
+	 * @throws IOException if out fails
+	 */
+	public void viewTopEarners(Appendable out, int offset, int limit) throws AccessDeniedException, IOException {
+		checkStatus();
+		checkPage(offset, limit);
+		defaultLoad();
+		out.append("last update at: ").append(String.valueOf(lastEdit)).append("\n");
+		DisplayReport.displayTopEarners(leaderboard, offset, limit, out);
+		out.append(String.format("your rank: %d of %d\n", leaderboard.rankOf(currentUser), leaderboard.size()));
+	}
+
+	/**
+	 * export the stocks in the market as CSV or JSON Lines
+	 * @modifies all attributes of this, out
+	 * @effects <pre>
+	 *  if currentUser==null
+	 *    throw AccessDeniedException
+	 *  else
+	 *    Load default DB
+	 *    write to out a record for every stock in c.stocks
+	 * </pre>
+	 * @throws IOException if out fails
+	 */
+	public void exportAllStocks(WritableByteChannel out, RecordWriter.Format format)
+			throws AccessDeniedException, IOException {
+		checkStatus();
+		defaultLoad();
+		DataExport.exportAllStock(stocks, out, format);
+	}
+
+	/**
+	 * export the stocks purchased by user as CSV or JSON Lines
+	 * @modifies all attributes of this, out
+	 * @effects <pre>
+	 *  if currentUser==null
+	 *    throw AccessDeniedException
+	 *  else
+	 *    Load default DB
+	 *    write to out a record for every lot in c.userStocks
+	 * </pre>
+	 * @throws IOException if out fails
+	 */
+	public void exportOwnStocks(WritableByteChannel out, RecordWriter.Format format)
+			throws AccessDeniedException, IOException {
+		checkStatus();
+		defaultLoad();
+		DataExport.exportOwnStock(currentUser.getUserName(), currentUser.getLots(), out, format);
+	}
+
+	/**
+	 * export the profit of every lot purchased by user as CSV or JSON Lines
+	 * @modifies all attributes of this, out
 	 * @effects <pre>
 	 *  if currentUser==null
 	 *    throw AccessDeniedException
 	 *  else
 	 *    Load default DB
-	 *    return a String containing information
-	 *    about all stocks in c.userStocks
+	 *    write to out a record for every lot in c.userStocks, with its current price and profit
 	 * </pre>
+	 * @throws IOException if out fails
 	 */
-	public String listOwnStocks() throws AccessDeniedException {
+	public void exportTrackStocks(WritableByteChannel out, RecordWriter.Format format)
+			throws AccessDeniedException, IOException {
 		checkStatus();
 		defaultLoad();
-		StringBuilder sb = new StringBuilder();
-		sb.append("last update at: ").append(lastEdit).append("\n");
-		sb.append(DisplayReport.displayOwnStock(currentUser.getOwnStock()));
-		return sb.toString();
+		DataExport.exportTrackStock(currentUser.getUserName(), currentUser.getLots(), out, format);
 	}
 
 	/**
-	 * This method uses the stock no. listed in the listOwnedStocks() method.
-	 * @modifies all attributes of this, s.quantity, currentUser.balance, `currentDB.dat`
+	 * export the lots of every user as CSV or JSON Lines, in one table
+	 * @modifies all attributes of this, out
 	 * @effects <pre>
 	 *  if currentUser==null
 	 *    throw AccessDeniedException
-	 *
-	 *   //let's say: s is the stock
-	 *   			  SP is the StockPurchase of the stock
-	 *
-	 *   Load default DB
-	 *   stockNo -= 1
-	 *   if StockNo < 0 \/ StockNo >= list.size
-	 *     throw new TransactionFailedException with message: stock doesn't exist
-	 *   else
-	 *     if quantity < 0 \/ quantity > SP.quantity
-	 *       throw new TransactionFailedException with message: invalid quantity
-	 *     else
-	 *       subtract quantity from SP.quantity
-	 *
-	 *       if SP.quantity = quantity
-	 *         remove SP
-	 *       else
-	 *         (update) add quantity to s.AvailableQuantity
-	 *         (update) add s.currentPrice * quantity to currentUser.balance
-	 *
-	 *       save to default DB
-	 *  	 if save successfully
-	 *    	   return true
-	 *       else
-	 *         return false
+	 *  else
+	 *    Load default DB
+	 *    write to out a record for every lot of every user in c.users, user after user
 	 * </pre>
+	 * @throws IOException if out fails
 	 */
-	public boolean sellStock(int stockNo, int quantity) throws AccessDeniedException, TransactionFailedException {
+	public void exportAllLots(WritableByteChannel out, RecordWriter.Format format)
+			throws AccessDeniedException, IOException {
 		checkStatus();
 		defaultLoad();
-		ArrayList<StockPurchase> list = currentUser.getOwnStock();
-
-		stockNo -= 1;
-		if (stockNo < 0 || stockNo >= list.size()) {
-			throw new TransactionFailedException("stock doesn't exist");
-		} else {
-			StockPurchase sp = list.get(stockNo);
-			int oldQuantity = sp.getQuantity();
-			if (quantity < 0 || quantity > oldQuantity) {
-				throw new TransactionFailedException("invalid quantity");
-			} else {
-				if (oldQuantity - quantity > 0) {
-					sp.setQuantity(oldQuantity - quantity);
-				} else {
-					currentUser.removeFromOwnStock(sp);
-				}
-
-				Stock s = sp.getTheStock();
-				// update the stock
-				s.setAvailableQuantity(s.getAvailableQuantity() + quantity);
-				// update currentUser.balance
-				currentUser.setBalance(currentUser.getBalance() + (s.getCurrentPrice() * quantity));
-				return defaultSave();
-			}
-		}
+		DataExport.exportAllLots(users, out, format);
 	}
 
 	/**
-	 * Randomly change all stock prices as if a day has passed.
-	 * @modifies all attributes of this, c.stocks, currentUser.currentDate, `currentDB.dat`
+	 * export the top earners by net worth (as ranked at the last day close, like viewTopEarners()) as CSV or
+	 * JSON Lines
+	 * @modifies all attributes of this, out
 	 * @effects <pre>
 	 *  if currentUser==null
 	 *    throw AccessDeniedException
 	 *  else
 	 *    Load default DB
-	 *    randomly change all stock prices
-	 *	  (limit the rate of changing to no more than 15% per day)
-	 *    increase c.day by 1 and currentUser.currentDate by 1
-	 *    save to default DB
-	 *    if save successfully
-	 *      return true
-	 *    else
-	 *      return false
+	 *    write to out a record for every user in c.ranking, in order of net worth
 	 * </pre>
+	 * @throws IOException if out fails
 	 */
-	public boolean nextDay() throws AccessDeniedException {
+	public void exportTopEarners(WritableByteChannel out, RecordWriter.Format format)
+			throws AccessDeniedException, IOException {
 		checkStatus();
 		defaultLoad();
-		// update stocks' currentPrice
-		for (Stock s : stocks) {
-			double rate = 0.85 + Math.random() * 0.3;
-			s.setCurrentPrice(s.getCurrentPrice() * rate);
-		}
-
-		//increase c.day by 1
-		day++;
-
-		// increases currentUser.currentDate by 1
-		currentUser.increaseCurrentDate();
-		return defaultSave();
+		DataExport.exportTopEarners(ranking, out, format);
 	}
 
 	/**
-	 * Show a table-like list of all stocks owned by the user with purchase price and current price,
-	 * and the calculated benefit for each stock.
-	 * @modifies all attributes of this
+	 * export every user by balance (live, not only at day close) as CSV or JSON Lines
+	 * @modifies all attributes of this, out
 	 * @effects <pre>
 	 *  if currentUser==null
 	 *    throw AccessDeniedException
 	 *  else
 	 *    Load default DB
-	 *    if save successfully
-	 *      do nothing
-	 *    else
-	 *      print out the failure message
-	 *    return a String containing information
+	 *    write to out a record for every user in c.leaderboard, by rank
 	 * </pre>
+	 * @throws IOException if out fails
 	 */
-	public String trackStocks() throws AccessDeniedException {
+	public void exportTopBalances(WritableByteChannel out, RecordWriter.Format format)
+			throws AccessDeniedException, IOException {
 		checkStatus();
 		defaultLoad();
-		StringBuilder sb = new StringBuilder();
-		sb.append("last update at: ").append(lastEdit).append("\n");
-		sb.append(DisplayReport.displayTrackStock(currentUser.getOwnStock()));
-		return sb.toString();
+		DataExport.exportTopBalances(leaderboard, out, format);
 	}
 
 	/**
-	 * view the top earners (along with the number of days they have run the program)
-	 * @modifies all attributes of this, especially all User.profit of each User in users
+	 * @modifies all attributes of this, c.REPORTS
 	 * @effects <pre>
 	 *  if currentUser==null
 	 *    throw AccessDeniedException
+	 *  else if c.batch
+	 *    return report rendered from the DB of the batch
+	 *  else if report (of currentUser, unless it is ALL_STOCKS) at page, pageSize is in c.REPORTS for the current
+	 *  version of the DB
+	 *    return it
 	 *  else
-	 *    Load default DB
-	 *    make an shallow copy ArrayList of users
-	 *    sort that ArrayList based on User.balance
-	 *    processing data
-	 *    save to the default DB
-	 *    return a String containing information
+	 *    render it (which loads default DB)
+	 *    if the version of the DB has not changed while rendering
+	 *      keep it in c.REPORTS
+	 *    return it
 	 * </pre>
 	 */
-	public String viewTopEarners() throws AccessDeniedException {
+	private String cachedReport(ReportCache.Report report, int page, int pageSize) throws AccessDeniedException {
 		checkStatus();
-		defaultLoad();
-		ArrayList<User> list = new ArrayList<>(users);
-		// sort in descending order
-		Collections.sort(list, new Comparator<User>() {
-			@Override
-			public int compare(User u1, User u2) {
-				if (u1.getBalance() == u2.getBalance()) {
-					return u1.getCurrentDate() < u2.getCurrentDate() ? -1 : 1;
-				} else {
-					return u1.getBalance() > u2.getBalance() ? -1 : 1;
-				}
+		if (batch) {
+			// the batch works on its own copy of the DB, which is not the one the cache is keyed by
+			return renderReport(report, page, pageSize);
+		}
+		String user = report == ReportCache.Report.ALL_STOCKS ? null : currentUser.getUserName();
+		ReportCache.Version version = dbVersion();
+		if (version != null) {
+			String text = REPORTS.get(report, user, page, pageSize, version);
+			if (text != null) {
+				return text;
 			}
-		});
-		String data = DisplayReport.displayTopEarners(list);
-		defaultSave();
+		}
+		String text = renderReport(report, page, pageSize);
+		if (version != null && version.equals(dbVersion())) {
+			REPORTS.put(report, user, page, pageSize, version, text);
+		}
+		return text;
+	}
+
+	private String renderReport(ReportCache.Report report, int page, int pageSize) throws AccessDeniedException {
 		StringBuilder sb = new StringBuilder();
-		sb.append("last update at: ").append(lastEdit).append("\n");
-		sb.append(data);
+		try {
+			switch (report) {
+			case ALL_STOCKS:
+				listAllStocks(sb, 0, Integer.MAX_VALUE);
+				break;
+			case OWN_STOCKS:
+				listOwnStocks(sb, 0, Integer.MAX_VALUE);
+				break;
+			case TRACK_STOCKS:
+				trackStocks(sb, 0, Integer.MAX_VALUE);
+				break;
+			case TOP_EARNERS:
+				return viewRanking(NetWorthRanking.Key.NET_WORTH);
+			case TOP_RETURNS:
+				return viewRanking(NetWorthRanking.Key.RETURN);
+			default:
+				viewTopEarners(sb, (int) Math.min(Integer.MAX_VALUE, (long) (page - 1) * pageSize), pageSize);
+				break;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @effects <pre>
+	 *  if offset < 0 \/ limit < 0
+	 *    throw IllegalArgumentException
+	 *  else
+	 *    do nothing
+	 * </pre>
+	 */
+	private static void checkPage(int offset, int limit) {
+		if (offset < 0 || limit < 0) {
+			throw new IllegalArgumentException("invalid page:'" + offset + ", " + limit + "'");
+		}
+	}
+
+	/**
+	 * @effects <pre>
+	 *  if stockNo - 1 is a valid index of c.stocks
+	 *    return that stock
+	 *  else
+	 *    throw TransactionFailedException with the message: stock doesn't exist
+	 * </pre>
+	 */
+	private Stock stockAt(int stockNo) throws TransactionFailedException {
+		if (stockNo < 1 || stockNo > stocks.size()) {
+			throw new TransactionFailedException("stock doesn't exist");
+		}
+		return stocks.get(stockNo - 1);
+	}
+
+	/**
+	 * @effects <pre>
+	 *  if there exists a stock in c.stocks whose id is stockId
+	 *    return that stock
+	 *  else
+	 *    throw TransactionFailedException with the message: stock doesn't exist
+	 * </pre>
+	 */
+	private Stock stockOf(String stockId) throws TransactionFailedException {
+		Stock s = (stockId != null) ? stockIndex.get(stockId) : null;
+		if (s == null) {
+			throw new TransactionFailedException("stock doesn't exist");
+		}
+		return s;
+	}
+
+	/**
+	 * @effects <pre>
+	 *  if there exists u in c.users where u.userName==userName
+	 *    return u
+	 *  else
+	 *    return null
+	 * </pre>
+	 */
+	private User findUser(String userName) {
+		return userIndex.get(userName);
+	}
+
+	/**
+	 * @modifies sessionToken
+	 * @effects <pre>
+	 *  if sessionToken != null
+	 *    remove it from the open sessions
+	 *    sessionToken = null
+	 * </pre>
+	 */
+	private void closeSession() {
+		if (sessionToken != null) {
+			SESSIONS.remove(sessionToken);
+			sessionToken = null;
+		}
+	}
+
+	/**
+	 * @effects return a new random, unguessable session token
+	 */
+	private static String newToken() {
+		byte[] b = new byte[16];
+		TOKENS.nextBytes(b);
+		StringBuilder sb = new StringBuilder(32);
+		for (byte x : b) {
+			sb.append(Character.forDigit((x >> 4) & 0xF, 16)).append(Character.forDigit(x & 0xF, 16));
+		}
 		return sb.toString();
 	}
 
+	/**
+	 * Every change of a stock price must go through this method.
+	 * @modifies s.currentPrice, c.history, c.candles, c.index, c.triggers, c.users
+	 * @effects <pre>
+	 *  s.currentPrice = price
+	 *  record price as the latest price of s on c.day in c.history and c.candles
+	 *  apply the change of s to c.index, c.screener and to the market value of every user in c.holders[s.id]
+	 *  for each order in c.triggers that is triggered by the new price
+	 *    buy or sell (FIFO) for the owner of the order, using the same rules as purchase() and sell()
+	 *    mark the order FILLED, or REJECTED with the reason if the trade is not possible
+	 * </pre>
+	 */
+	private void applyPrice(Stock s, long price) {
+		long oldPrice = s.getCurrentPrice();
+		s.setCurrentPrice(price);
+		history.record(s.getId(), day, s.getCurrentPrice());
+		candles.onPrice(s.getId(), Money.toDouble(s.getCurrentPrice()), day);
+		index.update(s);
+		screener.update(s);
+		HashSet<User> h = holders.get(s.getId());
+		if (h != null) {
+			for (User u : h) {
+				u.onPriceChange(s, oldPrice);
+			}
+		}
+
+		for (TriggerOrder o : triggers.popTriggered(s.getId(), s.getCurrentPrice())) {
+			User u = findUser(o.getUserName());
+			try {
+				if (u == null) {
+					throw new TransactionFailedException("user doesn't exist");
+				}
+				if (o.getType() == TriggerOrder.Type.STOP_LOSS) {
+					Broker.sellLots(u, s, o.getQuantity(), LotQueue.Order.FIFO);
+				} else {
+					Broker.buy(u, s, o.getQuantity(), clock.now(), day);
+				}
+				afterTrade(u, s, o.getQuantity());
+				triggers.close(o, TriggerOrder.Status.FILLED,
+						String.format("day %d at %s", day, Money.format(s.getCurrentPrice())));
+			} catch (TransactionFailedException e) {
+				triggers.close(o, TriggerOrder.Status.REJECTED, e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * @modifies c.candles, c.holders, c.leaderboard, c.screener
+	 * @effects <pre>
+	 *  add quantity to the volume of the current candles of s
+	 *  move s to its new available quantity in c.screener
+	 *  move u to its new rank in c.leaderboard
+	 *  if u holds s
+	 *    add u to holders[s.id]
+	 *  else
+	 *    remove u from holders[s.id]
+	 * </pre>
+	 */
+	private void afterTrade(User u, Stock s, int quantity) {
+		candles.onFill(s.getId(), Money.toDouble(s.getCurrentPrice()), quantity, day);
+		screener.update(s);
+		leaderboard.update(u);
+		if (u.quantityOf(s) > 0) {
+			addHolder(s, u);
+		} else {
+			HashSet<User> h = holders.get(s.getId());
+			if (h != null) {
+				h.remove(u);
+			}
+		}
+	}
+
+	private void addHolder(Stock s, User u) {
+		HashSet<User> h = holders.get(s.getId());
+		if (h == null) {
+			h = new HashSet<>(4);
+			holders.put(s.getId(), h);
+		}
+		h.add(u);
+	}
+
 	/**
 	 * @effects <pre>
 	 *  if currentUser != null
@@ -409,7 +1486,7 @@ public class StockServer implements Serializable {
 		if (currentUser == null) {
 			return "[not logged in]";
 		} else {
-			return currentUser.getUserName() + " ($" + String.format("%.2f", currentUser.getBalance()) + ")";
+			return currentUser.getUserName() + " ($" + Money.format(currentUser.getBalance()) + ")";
 		}
 	}
 
@@ -440,13 +1517,18 @@ public class StockServer implements Serializable {
 	 * Because you can sleep for one day, it means you can modify time!
 	 * @effects <pre>
 	 *   return a Date represents modified time that its day equal sum of:
-	 *   current real time + c.day - 1
+	 *   current real time + c.day - 1 (see MarketClock.virtualTime())
 	 * </pre>
 	 */
 	private Date getVirtualTime() {
-		Calendar cal = Calendar.getInstance();
-		cal.add(Calendar.DATE, day - 1);
-		return cal.getTime();
+		return clock.virtualDate(day);
+	}
+
+	/**
+	 * @effects return a String represents the current value of the market index
+	 */
+	public String getMarketIndex() {
+		return String.format("%.2f", index.value());
 	}
 
 	/**
@@ -470,7 +1552,7 @@ public class StockServer implements Serializable {
 	 * </pre>
 	 */
 	public String getUserMoney() {
-		return (currentUser != null) ? "" + String.format("$%.2f", currentUser.getBalance()) : "?";
+		return (currentUser != null) ? "$" + Money.format(currentUser.getBalance()) : "?";
 	}
 
 	/**
@@ -482,6 +1564,34 @@ public class StockServer implements Serializable {
 		return id;
 	}
 
+	/**
+	 * Read the version of the DB without loading it: only the head of the file and its attributes are read.
+	 * @effects <pre>
+	 *  if the head of `defaultDB.dat` can be read
+	 *    return the Version of its path, its saved time, its editor, its length and its modification time
+	 *  else
+	 *    return null
+	 * </pre>
+	 */
+	private ReportCache.Version dbVersion() {
+		File f = new File(dbName + ".dat");
+		try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(f))) {
+			Date dataBaseTime = (Date) ois.readObject();
+			String modifier = (String) ois.readObject();
+			return new ReportCache.Version(f.getAbsolutePath(), dataBaseTime.getTime(), modifier, f.length(),
+					f.lastModified());
+		} catch (IOException | ClassNotFoundException | ClassCastException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @effects return the cache of the reports shared by all sessions
+	 */
+	public static ReportCache getReportCache() {
+		return REPORTS;
+	}
+
 	/**
 	 * A method to check if this session is newer than the DB or not.
 	 * @requires currentUser!=null
@@ -499,23 +1609,24 @@ public class StockServer implements Serializable {
 	 * </pre>
 	 */
 	private boolean isUpToDate() {
-		try {
-			FileInputStream fis = new FileInputStream("defaultDB.dat");
-			ObjectInputStream ois = new ObjectInputStream(fis);
+		try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(dbName + ".dat"))) {
 			Date dataBaseTime = (Date) ois.readObject();
 			String modifier = (String) ois.readObject();
 
 			if (!lastEdit.after(dataBaseTime) && !modifier.equals(editor)
-					&& !modifier.equals("000 SeRvEr_-_SeTuP 000")) {
+					&& !modifier.equals(DatasetGenerator.SETUP_EDITOR)) {
 				throw new OutOfDateException(
 						"Your session is out of date, we've just updated for you. Please try again!");
 			}
-
-			ois.close();
-			fis.close();
 			return true;
+		} catch (OutOfDateException e) {
+			// an expected conflict with another session, the caller loads the DB again
+			outOfDate = true;
+			saveFailure = e.getMessage();
+			return false;
 		} catch (Exception e) {
 			e.printStackTrace();
+			saveFailure = "cannot read the DB";
 			return false;
 		}
 	}
@@ -525,6 +1636,8 @@ public class StockServer implements Serializable {
 	 * @effects <pre>
 	 *  editor = currentUser.userName
 	 *  Save the DB to an external file with the specified name
+	 *  (the DB is written to a temporary file which then replaces the file at once, so a session loading the DB
+	 *  meanwhile reads either the old DB or the new one)
 	 *  if Exception occurs
 	 *    return false
 	 *  else
@@ -533,21 +1646,47 @@ public class StockServer implements Serializable {
 	 */
 	private boolean saveDB(String DBname) {
 		editor = currentUser.getUserName();
+		File target = new File(DBname + ".dat");
+		File tmp = null;
 		try {
-			FileOutputStream fos = new FileOutputStream(DBname + ".dat");
-			ObjectOutputStream oos = new ObjectOutputStream(fos);
+			tmp = File.createTempFile(target.getName(), ".tmp", target.getAbsoluteFile().getParentFile());
+			FileOutputStream fos = new FileOutputStream(tmp);
+			ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(fos, 1 << 16));
 			oos.writeObject(getVirtualTime());
 			oos.writeObject(editor);
 			oos.writeObject(users);
 			oos.writeObject(stocks);
 			oos.writeObject(day);
+			oos.writeObject(triggers);
+			oos.writeObject(history);
+			oos.writeObject(candles);
+			oos.writeObject(index);
+			oos.writeObject(leaderboard);
+			oos.writeObject(ranking);
+			oos.writeObject(screener);
+			oos.flush();
+			fos.getFD().sync();
 			oos.close();
-			fos.close();
+			try {
+				Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			tmp = null;
+			// every report kept is of an older version now
+			REPORTS.clear();
+			loadedVersion = dbVersion();
 			return true;
 		} catch (IOException e) {
 			e.printStackTrace();
 			System.err.println("cannot save DB!");
+			saveFailure = "cannot save the DB";
 			return false;
+		} finally {
+			if (tmp != null) {
+				tmp.delete();
+			}
 		}
 	}
 
@@ -557,9 +1696,14 @@ public class StockServer implements Serializable {
 	 *  Load the DB form the specified name
 	 *  -> modify all the attributes of this object,
 	 *     including this.currentUser
+	 *     -> rebuild userIndex and holders from users, stockIndex from stocks
 	 *     -> if currentUser!=null
-	 *          login again using currentUser's usr and password
-	 *  if Exception occurs
+	 *          currentUser = the User with the same userName in users
+	 *          (the session is closed if there is no such User)
+	 *  if the DB was written by an older version of the classes
+	 *    print that it must be regenerated
+	 *    return false
+	 *  else if Exception occurs
 	 *    return false
 	 *  else
 	 *    update this.lastEdit
@@ -567,6 +1711,9 @@ public class StockServer implements Serializable {
 	 * </pre>
 	 */
 	private boolean loadDB(String DBname) {
+		// read before the DB, so a save in between makes the next check reload rather than miss it
+		ReportCache.Version version = dbVersion();
+		loadedVersion = null;
 		try {
 			FileInputStream fis = new FileInputStream(DBname + ".dat");
 			ObjectInputStream ois = new ObjectInputStream(fis);
@@ -575,18 +1722,55 @@ public class StockServer implements Serializable {
 			users = (ArrayList<User>) ois.readObject();
 			stocks = (ArrayList<Stock>) ois.readObject();
 			day = (int) ois.readObject();
+			TriggerBook t = (TriggerBook) readOptional(ois);
+			triggers = (t != null) ? t : new TriggerBook();
+			PriceHistory h = (PriceHistory) readOptional(ois);
+			history = (h != null) ? h : new PriceHistory(false);
+			CandleBook cb = (CandleBook) readOptional(ois);
+			candles = (cb != null) ? cb : new CandleBook();
+			MarketIndex mi = (MarketIndex) readOptional(ois);
+			index = (mi != null) ? mi : new MarketIndex(MarketIndex.Weighting.PRICE, stocks, users);
+			Leaderboard lb = (Leaderboard) readOptional(ois);
+			leaderboard = (lb != null && lb.size() == users.size()) ? lb : new Leaderboard(users);
+			NetWorthRanking r = (NetWorthRanking) readOptional(ois);
+			ranking = (r != null && r.size() == users.size()) ? r
+					: NetWorthRanking.compute(users, day, ForkJoinPool.commonPool());
+			StockScreener sc = (StockScreener) readOptional(ois);
+			screener = (sc != null && sc.size() == stocks.size()) ? sc : new StockScreener(stocks);
+
+			userIndex = new HashMap<>(users.size() * 4 / 3 + 1);
+			for (User u : users) {
+				userIndex.put(u.getUserName(), u);
+			}
+			stockIndex = new HashMap<>(stocks.size() * 4 / 3 + 1);
+			for (Stock s : stocks) {
+				stockIndex.put(s.getId(), s);
+			}
+			holders = new HashMap<>(stocks.size() * 4 / 3 + 1);
+			for (User u : users) {
+				for (Position p : u.getPositions()) {
+					addHolder(p.getTheStock(), u);
+				}
+			}
 
 			// update this.currentUser
 			if (currentUser != null) {
-				login(currentUser.getUserName(), currentUser.getPassword());
+				currentUser = userIndex.get(currentUser.getUserName());
+				if (currentUser == null) {
+					closeSession();
+				}
 			}
 
-			// init and update lastEdit
-			lastEdit = Calendar.getInstance().getTime();
-			lastEdit.setTime(d.getTime());
+			// init and update lastEdit (d is read from the DB, so it is not shared)
+			lastEdit = d;
 			ois.close();
 			fis.close();
+			loadedVersion = version;
 			return true;
+		} catch (InvalidClassException e0) {
+			// the classes of the DB have changed since it was written, e.g. amounts were doubles before Money
+			System.err.println("DB from an older version: \"" + DBname + "\", regenerate it (see ServerSetup)");
+			return false;
 		} catch (IOException e1) {
 			e1.printStackTrace();
 			System.err.println("DB corrupted or no such DB: \"" + DBname + "\"");
@@ -598,10 +1782,30 @@ public class StockServer implements Serializable {
 		}
 	}
 
+	/**
+	 * The DBs written by DatasetGenerator and ServerSetup end right after `day`: the rest is built on loading
+	 * @effects <pre>
+	 *  if there is no object left in ois
+	 *    return null
+	 *  else
+	 *    return the next object
+	 * </pre>
+	 */
+	private static Object readOptional(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+		try {
+			return ois.readObject();
+		} catch (EOFException e) {
+			return null;
+		}
+	}
+
 	/**
 	 * @effects <pre>
 	 *  if currentUser==null
 	 *    throw AccessDeniedException
+	 *  else if c.batch
+	 *    pending = true (the change is saved when the batch is flushed)
+	 *    return true
 	 *  else
 	 *    if DB is up to date
 	 *      save to `defaultDB.dat`
@@ -609,27 +1813,92 @@ public class StockServer implements Serializable {
 	 *    else
 	 *      Load to the default DB
 	 *      return false
+	 *  (if the save fails, its reason is kept for getSaveFailure() and isOutOfDate())
 	 * </pre>
 	 */
 	private boolean defaultSave() throws AccessDeniedException {
 		checkStatus();
-		if (isUpToDate()) {
-			return saveDB("defaultDB");
-		} else {
-			defaultLoad();
-			return false;
+		if (batch) {
+			pending = true;
+			return true;
+		}
+		outOfDate = false;
+		saveFailure = null;
+		loadedVersion = null;
+		synchronized (DB_LOCK) {
+			if (isUpToDate()) {
+				return saveDB(dbName);
+			}
+		}
+		defaultLoad();
+		return false;
+	}
+
+	/**
+	 * @modifies all attributes of this, `defaultDB.dat`
+	 * @effects <pre>
+	 *  if !pending
+	 *    return true
+	 *  else
+	 *    pending = false
+	 *    if DB is up to date
+	 *      save to `defaultDB.dat`
+	 *      return true
+	 *    else
+	 *      Load to the default DB (the changes of the batch are lost)
+	 *      return false
+	 * </pre>
+	 */
+	private boolean savePending() {
+		if (!pending) {
+			return true;
+		}
+		pending = false;
+		outOfDate = false;
+		saveFailure = null;
+		loadedVersion = null;
+		synchronized (DB_LOCK) {
+			if (isUpToDate()) {
+				return saveDB(dbName);
+			}
 		}
+		loadDB(dbName);
+		return false;
 	}
 
 	/**
 	 * load the default DB.
 	 * @modifies all attributes of this
 	 * @effects <pre>
-	 *  load DB from `defaultDB.dat`
+	 *  if c.batch
+	 *    do nothing (the batch keeps the DB it has loaded)
+	 *  else
+	 *    load DB from `defaultDB.dat`
 	 *  and return true if no exception occurs
 	 * </pre>
 	 */
 	private boolean defaultLoad() {
-		return loadDB("defaultDB");
+		if (batch) {
+			return true;
+		}
+		return loadDB(dbName);
+	}
+
+	/**
+	 * load the default DB unless this session already holds its current version.
+	 * @modifies all attributes of this
+	 * @effects <pre>
+	 *  if c.batch \/ (c.loadedVersion!=null /\ c.loadedVersion equals the version of `defaultDB.dat`)
+	 *    do nothing
+	 *  else
+	 *    load DB from `defaultDB.dat`
+	 *  and return true if no exception occurs
+	 * </pre>
+	 */
+	private boolean loadIfChanged() {
+		if (batch || (loadedVersion != null && loadedVersion.equals(dbVersion()))) {
+			return true;
+		}
+		return loadDB(dbName);
 	}
 }
@@ -0,0 +1,251 @@
+package stocktrader.server;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * @Overview TriggerBook keeps the TriggerOrder(s) of the market. Pending orders are indexed by id, and per stock id
+ *           in max-heaps keyed by trigger price, so a price update only touches the orders that actually cross.
+ *           The orders of a user are indexed by its userName; once an order is filled, rejected or cancelled it is
+ *           only kept as one of the HISTORY latest closed orders of its user, so the book does not grow with every
+ *           order ever placed.
+ * @attributes <pre>
+ * lastId			int
+ * pending			HashMap<Integer, TriggerOrder>
+ * byUser			HashMap<String, ArrayList<TriggerOrder>>
+ * stopLosses		HashMap<String, TriggerQueue>
+ * buyLimits		HashMap<String, TriggerQueue>
+ * </pre>
+ * @Object a typical TriggerBook is c:<i, p, u, sl, bl> where i is the id of the last order placed,
+ *         p maps the id of a PENDING order to it, u maps a userName to its orders in the order they were placed,
+ *         sl maps a stock id to its pending stop-loss orders, bl maps a stock id to its pending buy-limit orders
+ * AF(c) = c:<i, p, u, sl, bl>
+ * @rep_invariant
+ * 	i>=0 && p!=null && u!=null && sl!=null && bl!=null &&
+ * 	every order in p is PENDING, is in u and is in exactly one queue of sl or bl &&
+ * 	every list of u holds at most HISTORY orders that are not PENDING
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public class TriggerBook implements Serializable {
+	/**
+	 * number of closed orders kept per user
+	 */
+	public static final int HISTORY = 20;
+
+	private int lastId;
+	private HashMap<Integer, TriggerOrder> pending;
+	private HashMap<String, ArrayList<TriggerOrder>> byUser;
+	private HashMap<String, TriggerQueue> stopLosses;
+	private HashMap<String, TriggerQueue> buyLimits;
+
+	/**
+	 * @effects initialize this as c:<0, {}, {}, {}, {}>
+	 */
+	public TriggerBook() {
+		pending = new HashMap<>();
+		byUser = new HashMap<>();
+		stopLosses = new HashMap<>();
+		buyLimits = new HashMap<>();
+	}
+
+	/**
+	 * @modifies this
+	 * @effects <pre>
+	 *  create a new PENDING TriggerOrder with the next id
+	 *  push it into the queue of its stock and add it to the orders of userName
+	 *  return the new order
+	 * </pre>
+	 */
+	public TriggerOrder place(TriggerOrder.Type type, String userName, String stockId, long triggerPrice,
+			int quantity, int day) {
+		TriggerOrder o = new TriggerOrder(++lastId, type, userName, stockId, triggerPrice, quantity, day);
+		pending.put(o.getId(), o);
+		ArrayList<TriggerOrder> list = byUser.get(userName);
+		if (list == null) {
+			list = new ArrayList<>();
+			byUser.put(userName, list);
+		}
+		list.add(o);
+		queueOf(type, stockId, true).push(triggerPrice, o.getId());
+		return o;
+	}
+
+	/**
+	 * @effects <pre>
+	 *  if there exists a PENDING order with the id
+	 *    return that order
+	 *  else
+	 *    return null
+	 * </pre>
+	 */
+	public TriggerOrder get(int id) {
+		return pending.get(id);
+	}
+
+	/**
+	 * The order stays in its queue and is skipped when it is popped.
+	 * @modifies this, the order with the id
+	 * @effects <pre>
+	 *  if the order exists, belongs to userName and is PENDING
+	 *    close it as CANCELLED (see close())
+	 *    return true
+	 *  else
+	 *    return false
+	 * </pre>
+	 */
+	public boolean cancel(int id, String userName) {
+		TriggerOrder o = get(id);
+		if (o == null || !o.getUserName().equals(userName)) {
+			return false;
+		}
+		close(o, TriggerOrder.Status.CANCELLED, "cancelled by user");
+		return true;
+	}
+
+	/**
+	 * @requires o was placed in this /\ status != PENDING
+	 * @modifies this, o
+	 * @effects <pre>
+	 *  set the status of o to status with message
+	 *  remove it from the pending orders
+	 *  keep only the HISTORY latest closed orders of its user
+	 * </pre>
+	 */
+	public void close(TriggerOrder o, TriggerOrder.Status status, String message) {
+		o.close(status, message);
+		pending.remove(o.getId());
+		ArrayList<TriggerOrder> list = byUser.get(o.getUserName());
+		if (list == null) {
+			return;
+		}
+		int closed = 0;
+		for (TriggerOrder x : list) {
+			if (x.getStatus() != TriggerOrder.Status.PENDING) {
+				closed++;
+			}
+		}
+		// the oldest closed orders come first
+		for (Iterator<TriggerOrder> it = list.iterator(); closed > HISTORY && it.hasNext();) {
+			if (it.next().getStatus() != TriggerOrder.Status.PENDING) {
+				it.remove();
+				closed--;
+			}
+		}
+		if (list.isEmpty()) {
+			byUser.remove(o.getUserName());
+		}
+	}
+
+	/**
+	 * The orders are still PENDING: the caller fills or rejects them, then closes them with close().
+	 * @modifies this
+	 * @effects <pre>
+	 *  pop and return all PENDING orders of stockId that are triggered by price,
+	 *  stop-loss orders first, each group from the highest trigger price down
+	 * </pre>
+	 */
+	public ArrayList<TriggerOrder> popTriggered(String stockId, long price) {
+		ArrayList<TriggerOrder> fired = new ArrayList<>();
+		drain(stopLosses.get(stockId), price, fired);
+		drain(buyLimits.get(stockId), price, fired);
+		return fired;
+	}
+
+	/**
+	 * @effects return the PENDING orders and the HISTORY latest closed orders of userName, in the order they were
+	 *          placed
+	 */
+	public ArrayList<TriggerOrder> ordersOf(String userName) {
+		ArrayList<TriggerOrder> list = byUser.get(userName);
+		return (list != null) ? new ArrayList<>(list) : new ArrayList<TriggerOrder>();
+	}
+
+	private void drain(TriggerQueue q, long price, ArrayList<TriggerOrder> fired) {
+		if (q == null) {
+			return;
+		}
+		while (q.size() > 0) {
+			TriggerOrder o = pending.get(q.peekId());
+			if (o == null) {
+				q.pop(); // cancelled
+			} else if (o.isTriggeredBy(price)) {
+				q.pop();
+				fired.add(o);
+			} else {
+				break;
+			}
+		}
+	}
+
+	private TriggerQueue queueOf(TriggerOrder.Type type, String stockId, boolean create) {
+		HashMap<String, TriggerQueue> map = type == TriggerOrder.Type.STOP_LOSS ? stopLosses : buyLimits;
+		TriggerQueue q = map.get(stockId);
+		if (q == null && create) {
+			q = new TriggerQueue();
+			map.put(stockId, q);
+		}
+		return q;
+	}
+
+	/**
+	 * @Overview A binary max-heap of (triggerPrice, orderId) pairs stored in parallel primitive arrays
+	 */
+	private static class TriggerQueue implements Serializable {
+		private long[] prices = new long[8];
+		private int[] ids = new int[8];
+		private int size;
+
+		int size() {
+			return size;
+		}
+
+		int peekId() {
+			return ids[0];
+		}
+
+		void push(long price, int id) {
+			if (size == prices.length) {
+				prices = Arrays.copyOf(prices, size * 2);
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			int i = size++;
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (prices[parent] >= price) {
+					break;
+				}
+				prices[i] = prices[parent];
+				ids[i] = ids[parent];
+				i = parent;
+			}
+			prices[i] = price;
+			ids[i] = id;
+		}
+
+		void pop() {
+			size--;
+			long price = prices[size];
+			int id = ids[size];
+			int i = 0;
+			int half = size >>> 1;
+			while (i < half) {
+				int child = 2 * i + 1;
+				if (child + 1 < size && prices[child + 1] > prices[child]) {
+					child++;
+				}
+				if (price >= prices[child]) {
+					break;
+				}
+				prices[i] = prices[child];
+				ids[i] = ids[child];
+				i = child;
+			}
+			prices[i] = price;
+			ids[i] = id;
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package stocktrader.server;
+
+import java.io.Serializable;
+
+/**
+ * @Overview TriggerOrder represents an order that waits for the price of a stock to cross a trigger price, then
+ *           buys or sells at the current price
+ * @attributes <pre>
+ * id				int
+ * type				Type
+ * userName			String
+ * stockId			String
+ * triggerPrice		long
+ * quantity			int
+ * placedDay		int
+ * status			Status
+ * message			String
+ * </pre>
+ * @Object a typical TriggerOrder is c:<i, t, u, s, p, q, d, st, m> where i is id, t is type, u is userName of the owner,
+ *         s is id of the stock, p is triggerPrice (in Money ticks), q is quantity, d is placedDay, st is status,
+ *         m is the message of the last status change
+ * AF(c) = c:<i, t, u, s, p, q, d, st, m>
+ * @rep_invariant
+ * 	i>=1 && t!=null && u!=null && s!=null &&
+ * 	p>0 && q>0 && d>=1 && st!=null
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public class TriggerOrder implements Serializable {
+	public enum Type {
+		/**
+		 * sell if currentPrice < triggerPrice
+		 */
+		STOP_LOSS,
+		/**
+		 * buy if currentPrice <= triggerPrice
+		 */
+		BUY_LIMIT
+	}
+
+	public enum Status {
+		PENDING, FILLED, REJECTED, CANCELLED
+	}
+
+	private int id;
+	private Type type;
+	private String userName;
+	private String stockId;
+	private long triggerPrice;
+	private int quantity;
+	private int placedDay;
+	private Status status;
+	private String message;
+
+	/**
+	 * @effects initialize this as c:<id, type, userName, stockId, triggerPrice, quantity, placedDay, PENDING, "">
+	 */
+	TriggerOrder(int id, Type type, String userName, String stockId, long triggerPrice, int quantity,
+			int placedDay) {
+		this.id = id;
+		this.type = type;
+		this.userName = userName;
+		this.stockId = stockId;
+		this.triggerPrice = triggerPrice;
+		this.quantity = quantity;
+		this.placedDay = placedDay;
+		this.status = Status.PENDING;
+		this.message = "";
+	}
+
+	/**
+	 * @effects <pre>
+	 *  if currentPrice crosses triggerPrice in the direction of type
+	 *    return true
+	 *  else
+	 *    return false
+	 * </pre>
+	 */
+	public boolean isTriggeredBy(long currentPrice) {
+		return type == Type.STOP_LOSS ? currentPrice < triggerPrice : currentPrice <= triggerPrice;
+	}
+
+	/**
+	 * @effects return id
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @effects return type
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * @effects return userName
+	 */
+	public String getUserName() {
+		return userName;
+	}
+
+	/**
+	 * @effects return stockId
+	 */
+	public String getStockId() {
+		return stockId;
+	}
+
+	/**
+	 * @effects return triggerPrice
+	 */
+	public long getTriggerPrice() {
+		return triggerPrice;
+	}
+
+	/**
+	 * @effects return quantity
+	 */
+	public int getQuantity() {
+		return quantity;
+	}
+
+	/**
+	 * @effects return placedDay
+	 */
+	public int getPlacedDay() {
+		return placedDay;
+	}
+
+	/**
+	 * @effects return status
+	 */
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * @effects return message
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * @modifies status, message
+	 * @effects status = newStatus, message = message
+	 */
+	void close(Status newStatus, String message) {
+		this.status = newStatus;
+		this.message = message;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + ":<" + id + ", " + type + ", " + userName + ", " + stockId + ", "
+				+ triggerPrice + ", " + quantity + ", " + placedDay + ", " + status + ", " + message + ">";
+	}
+}
@@ -0,0 +1,145 @@
+package stocktrader.server.UI;
+
+import stocktrader.server.Leaderboard;
+import stocktrader.server.LotStore;
+import stocktrader.server.NetWorthRanking;
+import stocktrader.server.Stock;
+import stocktrader.server.User;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+/**
+ * @overview A class that contains factory methods to export the reports of DisplayReport in a machine-readable
+ *           format (CSV or JSON Lines). Every record is written to the channel through a RecordWriter as it is
+ *           read from its source, so an export does not hold the report in memory. Amounts are in dollars with all
+ *           their decimals, dates are in epoch milliseconds.
+ *
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public abstract class DataExport {
+	/**
+	 * @requires source!=null /\ out!=null /\ format!=null
+	 * @modifies out
+	 * @effects write to out a record (no, stock, company, price, available) for every stock of source
+	 * @throws IOException if out fails
+	 */
+	public static void exportAllStock(List<Stock> source, WritableByteChannel out, RecordWriter.Format format)
+			throws IOException {
+		RecordWriter w = new RecordWriter(out, format, "no", "stock", "company", "price", "available");
+		for (int i = 0; i < source.size(); i++) {
+			Stock s = source.get(i);
+			w.number(i + 1).text(s.getId()).text(s.getCompanyName()).money(s.getCurrentPrice())
+					.number(s.getAvailableQuantity()).endRecord();
+		}
+		w.flush();
+	}
+
+	/**
+	 * @requires userName!=null /\ source!=null /\ out!=null /\ format!=null
+	 * @modifies out
+	 * @effects <pre>
+	 *  write to out a record (user, no, stock, company, quantity, purchase_price, purchase_time, purchase_day)
+	 *  for every lot of source, oldest first (the lots are read in place)
+	 * </pre>
+	 * @throws IOException if out fails
+	 */
+	public static void exportOwnStock(String userName, LotStore source, WritableByteChannel out,
+			RecordWriter.Format format) throws IOException {
+		RecordWriter w = ownStockWriter(out, format);
+		writeOwnStock(w, userName, source);
+		w.flush();
+	}
+
+	/**
+	 * @requires source!=null /\ out!=null /\ format!=null
+	 * @modifies out
+	 * @effects <pre>
+	 *  write to out the records of exportOwnStock() for the lots of every user of source, user after user,
+	 *  as one table (the lots are read in place)
+	 * </pre>
+	 * @throws IOException if out fails
+	 */
+	public static void exportAllLots(List<User> source, WritableByteChannel out, RecordWriter.Format format)
+			throws IOException {
+		RecordWriter w = ownStockWriter(out, format);
+		for (User u : source) {
+			writeOwnStock(w, u.getUserName(), u.getLots());
+		}
+		w.flush();
+	}
+
+	/**
+	 * @requires userName!=null /\ source!=null /\ out!=null /\ format!=null
+	 * @modifies out
+	 * @effects <pre>
+	 *  write to out a record (user, no, stock, company, quantity, current_price, purchase_price, profit) for every
+	 *  lot of source, oldest first, profit being per share (the lots are read in place)
+	 * </pre>
+	 * @throws IOException if out fails
+	 */
+	public static void exportTrackStock(String userName, LotStore source, WritableByteChannel out,
+			RecordWriter.Format format) throws IOException {
+		RecordWriter w = new RecordWriter(out, format, "user", "no", "stock", "company", "quantity", "current_price",
+				"purchase_price", "profit");
+		LotStore.Cursor c = source.cursor();
+		while (c.next()) {
+			Stock s = c.stock();
+			w.text(userName).number(c.index() + 1).text(s.getId()).text(s.getCompanyName()).number(c.quantity())
+					.money(s.getCurrentPrice()).money(c.price()).money(s.getCurrentPrice() - c.price()).endRecord();
+		}
+		w.flush();
+	}
+
+	/**
+	 * @requires source!=null /\ out!=null /\ format!=null
+	 * @modifies out
+	 * @effects <pre>
+	 *  write to out a record (rank, user, net_worth, return, day) for every user of source, by net worth,
+	 *  return being in % with 2 decimals
+	 * </pre>
+	 * @throws IOException if out fails
+	 */
+	public static void exportTopEarners(NetWorthRanking source, WritableByteChannel out, RecordWriter.Format format)
+			throws IOException {
+		RecordWriter w = new RecordWriter(out, format, "rank", "user", "net_worth", "return", "day");
+		for (int rank = 1; rank <= source.size(); rank++) {
+			int i = source.userAt(NetWorthRanking.Key.NET_WORTH, rank);
+			w.number(rank).text(source.userNameOf(i)).money(source.netWorthOf(i)).decimal(source.returnOf(i), 2)
+					.number(source.dateOf(i)).endRecord();
+		}
+		w.flush();
+	}
+
+	/**
+	 * @requires source!=null /\ out!=null /\ format!=null
+	 * @modifies out
+	 * @effects write to out a record (rank, user, balance, day) for every user of source, by rank
+	 * @throws IOException if out fails
+	 */
+	public static void exportTopBalances(Leaderboard source, WritableByteChannel out, RecordWriter.Format format)
+			throws IOException {
+		RecordWriter w = new RecordWriter(out, format, "rank", "user", "balance", "day");
+		for (int rank = 1; rank <= source.size(); rank++) {
+			User u = source.get(rank);
+			w.number(rank).text(u.getUserName()).money(u.getBalance()).number(u.getCurrentDate()).endRecord();
+		}
+		w.flush();
+	}
+
+	private static RecordWriter ownStockWriter(WritableByteChannel out, RecordWriter.Format format) {
+		return new RecordWriter(out, format, "user", "no", "stock", "company", "quantity", "purchase_price",
+				"purchase_time", "purchase_day");
+	}
+
+	private static void writeOwnStock(RecordWriter w, String userName, LotStore source) throws IOException {
+		LotStore.Cursor c = source.cursor();
+		while (c.next()) {
+			Stock s = c.stock();
+			w.text(userName).number(c.index() + 1).text(s.getId()).text(s.getCompanyName()).number(c.quantity())
+					.money(c.price()).number(c.time()).number(c.day()).endRecord();
+		}
+	}
+}
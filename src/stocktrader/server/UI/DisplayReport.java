@@ -1,10 +1,20 @@
 package stocktrader.server.UI;
 
+import stocktrader.server.Leaderboard;
+import stocktrader.server.LotStore;
+import stocktrader.server.Money;
+import stocktrader.server.NetWorthRanking;
 import stocktrader.server.Stock;
-import stocktrader.server.StockPurchase;
+import stocktrader.server.StockScreener;
+import stocktrader.server.TriggerOrder;
 import stocktrader.server.User;
+import stocktrader.server.risk.RiskReport;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 
 /**
  * @overview A class that contains factory methods to display tabular report
@@ -13,110 +23,217 @@ import java.util.ArrayList;
  * @author Phan Quang Tuan
  */
 public abstract class DisplayReport {
+	private static final TableLayout ALL_STOCK = new TableLayout(TableLayout.right("No.", 3),
+			TableLayout.right("Stock's ID", 10), TableLayout.right("Company", 20),
+			TableLayout.right("Stock's price", 14), TableLayout.right("Quantity", 8).wide());
+	private static final TableLayout OWN_STOCK = new TableLayout(TableLayout.right("No.", 3),
+			TableLayout.right("Stock's ID", 10), TableLayout.right("Company", 20),
+			TableLayout.right("Purchase price", 14), TableLayout.right("Quantity", 8),
+			TableLayout.right("Purchase at", 42));
+	private static final TableLayout TRACK_STOCK = new TableLayout(TableLayout.right("No.", 3),
+			TableLayout.right("Stock's ID", 10), TableLayout.right("Company", 20),
+			TableLayout.right("Current price", 14), TableLayout.right("Purchase price", 14),
+			TableLayout.right("Profit", 14));
+	private static final TableLayout TOP_EARNERS = new TableLayout(TableLayout.left("No.", 3),
+			TableLayout.left("UserName", 20), TableLayout.left("Profit", 14), TableLayout.left("Day", 6));
+	private static final TableLayout RANKING = new TableLayout(TableLayout.left("No.", 3),
+			TableLayout.left("UserName", 20), TableLayout.right("Net worth", 14).titleAligned(TableLayout.Align.LEFT),
+			TableLayout.right("Return", 10).titleAligned(TableLayout.Align.LEFT), TableLayout.left("Day", 6));
+	private static final TableLayout TRIGGER_ORDERS = new TableLayout(TableLayout.right("No.", 3),
+			TableLayout.right("Type", 9), TableLayout.right("Stock's ID", 10), TableLayout.right("Trigger price", 14),
+			TableLayout.right("Quantity", 8), TableLayout.right("Status", 9), TableLayout.right("Note", 24));
+	private static final TableLayout RISK = new TableLayout(TableLayout.right("Confidence", 10),
+			TableLayout.right("Value-at-risk", 14), TableLayout.right("Expected shortfall", 18));
+
 	/**
-	 * @requires source!=null
-	 * @effects return a text-based tabular report of all the stocks in the market
+	 * @requires source!=null /\ offset >= 0 /\ limit >= 0 /\ out!=null
+	 * @modifies out
+	 * @effects <pre>
+	 *  append to out a text-based tabular report of at most limit stocks of source, starting from the stock
+	 *  at offset (numbered from offset + 1), one row at a time
+	 * </pre>
+	 * @throws IOException if out fails
 	 */
-	public static String displayAllStock(ArrayList<Stock> source) {
-		Stock[] objs = source.toArray(new Stock[source.size()]);
-		StringBuilder sb = new StringBuilder();
-
-		String text = String.format("| %3.3s | %10.10s | %20.20s | %14.14s | %8s |\n", "No.", "Stock's ID", "Company",
-				"Stock's price", "Quantity");
-		sb.append(line(text));
-		sb.append(text);
-		sb.append(line(text));
+	public static void displayAllStock(List<Stock> source, int offset, int limit, Appendable out)
+			throws IOException {
+		TableLayout.Printer p = ALL_STOCK.printer(out);
+		p.header();
+		int end = (int) Math.min(source.size(), (long) offset + limit);
+		for (int i = offset; i < end; i++) {
+			Stock s = source.get(i);
+			p.number(i + 1).next().text(s.getId()).next().text(s.getCompanyName()).next()
+					.money(s.getCurrentPrice()).next().number(s.getAvailableQuantity()).endRow();
+		}
+		p.separator();
+	}
 
-		int count = 1;
-		for (Stock s : objs) {
-			sb.append(String.format("| %3.3s | %10.10s | %20.20s | %14.14s | %8s |\n", count, s.getId(),
-					s.getCompanyName(), String.format("%14.2f", s.getCurrentPrice()), s.getAvailableQuantity()));
-			count++;
+	/**
+	 * @requires source!=null /\ ordinals are ordinals of source /\ out!=null
+	 * @modifies out
+	 * @effects <pre>
+	 *  append to out a text-based tabular report of the stocks of source at ordinals, in that order (each one
+	 *  numbered by its place in the market, ordinal + 1), one row at a time
+	 * </pre>
+	 * @throws IOException if out fails
+	 */
+	public static void displayScreen(StockScreener source, int[] ordinals, Appendable out) throws IOException {
+		TableLayout.Printer p = ALL_STOCK.printer(out);
+		p.header();
+		for (int o : ordinals) {
+			Stock s = source.stockAt(o);
+			p.number(o + 1).next().text(s.getId()).next().text(s.getCompanyName()).next()
+					.money(s.getCurrentPrice()).next().number(s.getAvailableQuantity()).endRow();
 		}
-		sb.append(line(text));
-		return sb.toString();
+		p.separator();
 	}
 
 	/**
-	 * @requires source!=null
-	 * @effects return a text-based tabular report of all the stocks that one user own
+	 * @requires source!=null /\ offset >= 0 /\ limit >= 0 /\ out!=null
+	 * @modifies out
+	 * @effects <pre>
+	 *  append to out a text-based tabular report of at most limit lots of source, starting from the lot at offset
+	 *  (numbered from offset + 1), one row at a time (the lots are read in place)
+	 * </pre>
+	 * @throws IOException if out fails
 	 */
-	public static String displayOwnStock(ArrayList<StockPurchase> source) {
-		StockPurchase[] objs = source.toArray(new StockPurchase[source.size()]);
-		StringBuilder sb = new StringBuilder();
+	public static void displayOwnStock(LotStore source, int offset, int limit, Appendable out) throws IOException {
+		TableLayout.Printer p = OWN_STOCK.printer(out);
+		p.header();
+		Date date = new Date(); // reused for every lot
+		LotStore.Cursor c = skip(source.cursor(), offset);
+		for (int n = 0; n < limit && c.next(); n++) {
+			Stock s = c.stock();
+			date.setTime(c.time());
+			p.number(c.index() + 1).next().text(s.getId()).next().text(s.getCompanyName()).next().money(c.price())
+					.next().number(c.quantity()).next().text("(Day ").field(c.day(), 6).text(") ")
+					.field(date.toString(), 29).endRow();
+		}
+		p.separator();
+	}
 
-		String text = String.format("| %3.3s | %10.10s | %20.20s | %14.14s | %8.8s | %42.42s |\n", "No.", "Stock's ID",
-				"Company", "Purchase price", "Quantity", "Purchase at");
-		sb.append(line(text));
-		sb.append(text);
-		sb.append(line(text));
+	/**
+	 * @requires source!=null /\ offset >= 0 /\ limit >= 0 /\ out!=null
+	 * @modifies out
+	 * @effects <pre>
+	 *  append to out a text-based tabular report for tracking at most limit lots of source, starting from the lot
+	 *  at offset (numbered from offset + 1), one row at a time (the lots are read in place)
+	 * </pre>
+	 * @throws IOException if out fails
+	 */
+	public static void displayTrackStock(LotStore source, int offset, int limit, Appendable out) throws IOException {
+		TableLayout.Printer p = TRACK_STOCK.printer(out);
+		p.header();
+		LotStore.Cursor c = skip(source.cursor(), offset);
+		for (int n = 0; n < limit && c.next(); n++) {
+			Stock s = c.stock();
+			long profit = s.getCurrentPrice() - c.price();
+			p.number(c.index() + 1).next().text(s.getId()).next().text(s.getCompanyName()).next()
+					.money(s.getCurrentPrice()).next().money(c.price()).next().money(profit).endRow();
+		}
+		p.separator();
+	}
 
-		int count = 1;
-		for (StockPurchase sp : objs) {
-			Stock s = sp.getTheStock();
-			sb.append(String.format("| %3.3s | %10.10s | %20.20s | %14.14s | %8.8s | (Day %6.6s) %29.29s |\n", count,
-					s.getId(), s.getCompanyName(), String.format("%14.2f", sp.getPurchasePrice()), sp.getQuantity(),
-					sp.getPurchaseDay(), sp.getPurchaseDate()));
-			count++;
+	/**
+	 * @requires source!=null /\ offset >= 0 /\ limit >= 0 /\ out!=null
+	 * @modifies out
+	 * @effects <pre>
+	 *  append to out a text-based tabular report of at most limit users of source, starting from rank offset + 1,
+	 *  one row at a time (every row is read from source by its rank, nothing is copied)
+	 * </pre>
+	 * @throws IOException if out fails
+	 */
+	public static void displayTopEarners(Leaderboard source, int offset, int limit, Appendable out)
+			throws IOException {
+		TableLayout.Printer p = TOP_EARNERS.printer(out);
+		p.header();
+		int end = (int) Math.min(source.size(), (long) offset + limit);
+		for (int rank = offset + 1; rank <= end; rank++) {
+			topEarnersRow(p, rank, source.get(rank));
 		}
-		sb.append(line(text));
-		return sb.toString();
+		p.separator();
+	}
+
+	private static void topEarnersRow(TableLayout.Printer p, int rank, User u) throws IOException {
+		p.number(rank).next().text(u.getUserName()).next().money(u.getBalance()).next().number(u.getCurrentDate())
+				.endRow();
 	}
 
 	/**
 	 * @requires source!=null
-	 * @effects return a text-based tabular report for tracking the user's own stocks
+	 * @effects return a text-based tabular report of the users ranked from fromRank to toRank by key in source
 	 */
-	public static String displayTrackStock(ArrayList<StockPurchase> source) {
-		StockPurchase[] objs = source.toArray(new StockPurchase[source.size()]);
+	public static String displayRanking(NetWorthRanking source, NetWorthRanking.Key key, int fromRank, int toRank) {
 		StringBuilder sb = new StringBuilder();
-
-		String text = String.format("| %3.3s | %10.10s | %20.20s | %14.14s | %14.14s | %14.14s |\n", "No.",
-				"Stock's ID", "Company", "Current price", "Purchase price", "Profit");
-		sb.append(line(text));
-		sb.append(text);
-		sb.append(line(text));
-
-		int count = 1;
-		for (StockPurchase sp : objs) {
-			Stock s = sp.getTheStock();
-			double profit = s.getCurrentPrice() - sp.getPurchasePrice();
-			sb.append(String.format("| %3.3s | %10.10s | %20.20s | %14.14s | %14.14s | %14.14s |\n", count, s.getId(),
-					s.getCompanyName(), String.format("%14.2f", s.getCurrentPrice()),
-					String.format("%14.2f", sp.getPurchasePrice()), String.format("%14.2f", profit)));
-			count++;
+		try {
+			TableLayout.Printer p = RANKING.printer(sb);
+			p.header();
+			for (int rank = Math.max(1, fromRank); rank <= Math.min(toRank, source.size()); rank++) {
+				int i = source.userAt(key, rank);
+				p.number(rank).next().text(source.userNameOf(i)).next().money(source.netWorthOf(i)).next()
+						.decimal(source.returnOf(i), 2).text('%').next().number(source.dateOf(i)).endRow();
+			}
+			p.separator();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
-		sb.append(line(text));
 		return sb.toString();
 	}
 
 	/**
 	 * @requires source!=null
-	 * @modifies all User in source
-	 * @effects <pre>
-	 *   calculate profit of each user
-	 *   return a text-based tabular report of top users
-	 * </pre>
+	 * @effects return a text-based tabular report of stop-loss and buy-limit orders
 	 */
-	public static String displayTopEarners(ArrayList<User> source) {
-		User[] objs = source.toArray(new User[source.size()]);
+	public static String displayTriggerOrders(ArrayList<TriggerOrder> source) {
 		StringBuilder sb = new StringBuilder();
+		try {
+			TableLayout.Printer p = TRIGGER_ORDERS.printer(sb);
+			p.header();
+			for (TriggerOrder o : source) {
+				p.number(o.getId()).next().text(o.getType() == TriggerOrder.Type.STOP_LOSS ? "stop-loss" : "buy-limit")
+						.next().text(o.getStockId()).next().money(o.getTriggerPrice()).next().number(o.getQuantity())
+						.next().text(o.getStatus().name()).next().text(o.getMessage()).endRow();
+			}
+			p.separator();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return sb.toString();
+	}
 
-		String text = String.format("| %-3.3s | %-20.20s | %-14.14s | %-6.6s |\n", "No.", "UserName", "Profit", "Day");
-		sb.append(line(text));
-		sb.append(text);
-		sb.append(line(text));
-
-		int count = 1;
-		for (User u : objs) {
-			sb.append(String.format("| %-3.3s | %-20.20s | %-14.14s | %-6.6s |\n", count, u.getUserName(),
-					u.getBalance(), u.getCurrentDate()));
-			count++;
+	/**
+	 * @requires report!=null
+	 * @effects return a text-based tabular report of the value-at-risk of one user
+	 */
+	public static String displayRiskReport(RiskReport report) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("value of holdings: %.2f, horizon: %d day(s), %d paths\n", report.getValue(),
+				report.getHorizon(), report.getPaths()));
+		try {
+			TableLayout.Printer p = RISK.printer(sb);
+			p.header();
+			for (int i = 0; i < report.size(); i++) {
+				p.decimal(report.confidenceAt(i) * 100, 2).text('%').next().decimal(report.valueAtRiskAt(i), 2).next()
+						.decimal(report.shortfallAt(i), 2).endRow();
+			}
+			p.separator();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
-		sb.append(line(text));
 		return sb.toString();
 	}
 
+	/**
+	 * @modifies c
+	 * @effects move c past the first n lots, or past the last lot if there are fewer, and return c
+	 */
+	private static LotStore.Cursor skip(LotStore.Cursor c, int n) {
+		int i = 0;
+		while (i < n && c.next()) {
+			i++;
+		}
+		return c;
+	}
+
 	/**
 	 * @return
 	 *   a String represents horizontal line that matches the tabular format, which starts and ends with a plus ("+") character.
@@ -161,38 +278,4 @@ public abstract class DisplayReport {
 		sb.append("\n");
 		return sb.toString();
 	}
-
-	/**
-	 * @return
-	 *   a String represents horizontal line that matches the tabular format, which starts and ends with a plus ("+") character.
-	 *   The plus character is determined by the position of '|' character appearing in the text.
-	 *   e.g.
-	 *   input:   |ab de| e1@h |
-	 *   ,output: +-----+------+
-	 * @requires text!=null
-	 * @effects <pre>
-	 *   for all character in text
-	 *     if character==[System.lineSeparator()] i.e. \r, \n
-	 *       do nothing
-	 *     else
-	 *      if character!='|'
-	 *        add '-' to the return String
-	 *      else
-	 *        add '+' to the return String
-	 * </pre>
-	 */
-	private static String line(String text) {
-		StringBuilder sb = new StringBuilder();
-		for (int i = 0; i < text.length(); i++) {
-			if (text.charAt(i) != '\r' && text.charAt(i) != '\n') {
-				if (text.charAt(i) != '|') {
-					sb.append("-");
-				} else {
-					sb.append("+");
-				}
-			}
-		}
-		sb.append("\n");
-		return sb.toString();
-	}
 }
@@ -0,0 +1,332 @@
+package stocktrader.server.UI;
+
+import stocktrader.server.Money;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @Overview RecordWriter writes records of named fields to a channel, as CSV (a header line with the names of the
+ *           fields, then one line per record) or as JSON Lines (one object per line). The fields of a record are
+ *           encoded in UTF-8 straight into a byte buffer, which is written to the channel whenever it is full, so
+ *           a record does not create a String and the channel sees large writes only.
+ *           Text is quoted when CSV needs it and escaped for JSON, numbers are written as they are, Money
+ *           amounts are written with all their decimals (e.g. 12.8800) and other decimals are rounded.
+ * @attributes <pre>
+ * channel		WritableByteChannel
+ * format		Format
+ * names		byte[][]
+ * buffer		ByteBuffer
+ * field		int
+ * </pre>
+ * @Object a typical RecordWriter is c:<ch, f, n, b, k> where ch is the destination, f is the format, n is the
+ *         encoded names of the fields, b is the bytes not written to ch yet, k is the number of fields of the
+ *         current record written so far
+ * AF(c) = c:<ch, f, n, b, k>
+ * @rep_invariant
+ * 	ch!=null && f!=null && n.length > 0 && 0 <= k <= n.length
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public final class RecordWriter {
+	public enum Format {
+		/**
+		 * comma-separated values, with a header line
+		 */
+		CSV,
+		/**
+		 * one JSON object per line
+		 */
+		JSONL
+	}
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	/**
+	 * the digits of the decimals of a Money amount
+	 */
+	private static final int MONEY_DECIMALS = Long.toString(Money.SCALE).length() - 1;
+	private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+	private final WritableByteChannel channel;
+	private final Format format;
+	private final byte[][] names;
+	private final ByteBuffer buffer;
+	private final byte[] digits = new byte[20];
+	private int field;
+
+	/**
+	 * @requires channel!=null /\ format!=null /\ names.length > 0
+	 * @effects initialize this as c:<channel, format, names, [], 0>; if format is CSV, the header line is the first
+	 *          thing written to channel
+	 */
+	public RecordWriter(WritableByteChannel channel, Format format, String... names) {
+		this.channel = channel;
+		this.format = format;
+		this.names = new byte[names.length][];
+		this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		for (int i = 0; i < names.length; i++) {
+			// JSON: "name": and CSV: name (the names are plain words)
+			String name = format == Format.JSONL ? "\"" + names[i] + "\":" : names[i];
+			this.names[i] = name.getBytes(StandardCharsets.UTF_8);
+		}
+		if (format == Format.CSV) {
+			for (int i = 0; i < names.length; i++) {
+				if (i > 0) {
+					buffer.put((byte) ',');
+				}
+				buffer.put(this.names[i]);
+			}
+			buffer.put((byte) '\n');
+		}
+	}
+
+	/**
+	 * @modifies this
+	 * @effects write s (or an empty field if s==null) as the next field, return this
+	 * @throws IOException if the channel fails
+	 */
+	public RecordWriter text(CharSequence s) throws IOException {
+		beginField();
+		if (s == null) {
+			if (format == Format.JSONL) {
+				ascii("null");
+			}
+			return this;
+		}
+		int n = s.length();
+		boolean quote = format == Format.JSONL || needsQuotes(s);
+		if (quote) {
+			put((byte) '"');
+		}
+		for (int i = 0; i < n; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				if (format == Format.JSONL && (c == '"' || c == '\\' || c < 0x20)) {
+					escape(c);
+				} else {
+					if (c == '"') {
+						put((byte) '"');
+					}
+					put((byte) c);
+				}
+			} else if (c < 0x800) {
+				put((byte) (0xc0 | c >> 6));
+				put((byte) (0x80 | c & 0x3f));
+			} else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				put((byte) (0xf0 | cp >> 18));
+				put((byte) (0x80 | cp >> 12 & 0x3f));
+				put((byte) (0x80 | cp >> 6 & 0x3f));
+				put((byte) (0x80 | cp & 0x3f));
+			} else if (Character.isSurrogate(c)) {
+				put((byte) '?');
+			} else {
+				put((byte) (0xe0 | c >> 12));
+				put((byte) (0x80 | c >> 6 & 0x3f));
+				put((byte) (0x80 | c & 0x3f));
+			}
+		}
+		if (quote) {
+			put((byte) '"');
+		}
+		return this;
+	}
+
+	/**
+	 * @modifies this
+	 * @effects write v as the next field, return this
+	 * @throws IOException if the channel fails
+	 */
+	public RecordWriter number(long v) throws IOException {
+		beginField();
+		digits(v);
+		return this;
+	}
+
+	/**
+	 * @modifies this
+	 * @effects write ticks as dollars with all the decimals of a Money amount (e.g. -12.3000) as the next field,
+	 *          return this
+	 * @throws IOException if the channel fails
+	 */
+	public RecordWriter money(long ticks) throws IOException {
+		beginField();
+		fixed(ticks, Money.SCALE, MONEY_DECIMALS);
+		return this;
+	}
+
+	/**
+	 * @requires 0 <= decimals <= 18
+	 * @modifies this
+	 * @effects <pre>
+	 *  if v is finite
+	 *    write v rounded to decimals decimals (e.g. 12.50 for 2) as the next field
+	 *  else
+	 *    write an empty field
+	 *  return this
+	 * </pre>
+	 * @throws IOException if the channel fails
+	 */
+	public RecordWriter decimal(double v, int decimals) throws IOException {
+		if (Double.isNaN(v) || Double.isInfinite(v)) {
+			return text(null);
+		}
+		long scale = 1;
+		for (int i = 0; i < decimals; i++) {
+			scale *= 10;
+		}
+		beginField();
+		fixed(Math.round(v * scale), scale, decimals);
+		return this;
+	}
+
+	/**
+	 * @requires every field of the record has been written
+	 * @modifies this
+	 * @effects end the current record (the next field starts a new one)
+	 * @throws IOException if the channel fails
+	 */
+	public void endRecord() throws IOException {
+		if (field != names.length) {
+			throw new IllegalStateException("record ended after " + field + " of " + names.length + " fields");
+		}
+		if (format == Format.JSONL) {
+			put((byte) '}');
+		}
+		put((byte) '\n');
+		field = 0;
+	}
+
+	/**
+	 * @modifies this
+	 * @effects write every byte not written yet to the channel
+	 * @throws IOException if the channel fails
+	 */
+	public void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private void beginField() throws IOException {
+		if (field == names.length) {
+			throw new IllegalStateException("a record has " + names.length + " fields");
+		}
+		if (format == Format.JSONL) {
+			put(field == 0 ? (byte) '{' : (byte) ',');
+			byte[] name = names[field];
+			if (buffer.remaining() < name.length) {
+				flush();
+			}
+			buffer.put(name);
+		} else if (field > 0) {
+			put((byte) ',');
+		}
+		field++;
+	}
+
+	private void put(byte b) throws IOException {
+		if (!buffer.hasRemaining()) {
+			flush();
+		}
+		buffer.put(b);
+	}
+
+	private void ascii(String s) throws IOException {
+		for (int i = 0; i < s.length(); i++) {
+			put((byte) s.charAt(i));
+		}
+	}
+
+	/**
+	 * @requires scale == 10^decimals
+	 * @effects write value / scale with decimals decimals
+	 */
+	private void fixed(long value, long scale, int decimals) throws IOException {
+		if (value < 0) {
+			put((byte) '-');
+		}
+		long units = Math.abs(value / scale);
+		long fraction = Math.abs(value % scale);
+		digits(units);
+		if (decimals > 0) {
+			put((byte) '.');
+			for (int i = decimals - 1; i >= 0; i--) {
+				digits[i] = (byte) ('0' + fraction % 10);
+				fraction /= 10;
+			}
+			for (int i = 0; i < decimals; i++) {
+				put(digits[i]);
+			}
+		}
+	}
+
+	/**
+	 * @effects write v in decimal
+	 */
+	private void digits(long v) throws IOException {
+		if (v == Long.MIN_VALUE) {
+			ascii(Long.toString(v));
+			return;
+		}
+		if (v < 0) {
+			put((byte) '-');
+			v = -v;
+		}
+		int n = 0;
+		do {
+			digits[n++] = (byte) ('0' + v % 10);
+			v /= 10;
+		} while (v > 0);
+		while (n > 0) {
+			put(digits[--n]);
+		}
+	}
+
+	/**
+	 * @requires c is '"', '\\' or a control character
+	 * @effects write c escaped for a JSON string
+	 */
+	private void escape(char c) throws IOException {
+		put((byte) '\\');
+		switch (c) {
+		case '"':
+		case '\\':
+			put((byte) c);
+			break;
+		case '\n':
+			put((byte) 'n');
+			break;
+		case '\r':
+			put((byte) 'r');
+			break;
+		case '\t':
+			put((byte) 't');
+			break;
+		default:
+			put((byte) 'u');
+			put((byte) '0');
+			put((byte) '0');
+			put(HEX[c >> 4]);
+			put(HEX[c & 0xf]);
+			break;
+		}
+	}
+
+	/**
+	 * @effects return true if s has to be quoted in a CSV field
+	 */
+	private static boolean needsQuotes(CharSequence s) {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,472 @@
+package stocktrader.server.UI;
+
+import stocktrader.server.Money;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+/**
+ * @Overview TableLayout is the precompiled layout of a text-based table: the title, width and alignment of every
+ *           column. The separator line and the title row are rendered once, when the layout is created, and a
+ *           Printer writes the rows of one report: every cell is written, padded and truncated in a char buffer
+ *           that is reused for every row, so a row does not parse a format string, box a number or create a
+ *           String.
+ *           A cell that is longer than its column keeps its first characters, as "%w.ws" does, unless the column
+ *           is wide(), then the cell is kept whole and moves the rest of the row, as "%ws" does.
+ * @attributes <pre>
+ * columns		Column[]
+ * separator	String
+ * titles		String
+ * </pre>
+ * @Object a typical TableLayout is c:<cs, s, t> where cs is the columns from left to right, s is the separator line
+ *         (e.g. +-----+------+), t is the row of the titles of cs
+ * AF(c) = c:<cs, s, t>
+ * @rep_invariant
+ * 	cs.length > 0 && every column of cs has a width > 0 &&
+ * 	s and t are the separator line and the title row of cs
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public final class TableLayout {
+	public enum Align {
+		LEFT, RIGHT
+	}
+
+	/**
+	 * ticks per cent
+	 */
+	private static final long CENT = Money.SCALE / 100;
+	private static final long[] POWERS_OF_TEN = { 1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L };
+
+	private final Column[] columns;
+	private final String separator;
+	private final String titles;
+
+	/**
+	 * @requires columns.length > 0
+	 * @effects initialize this as c:<columns, the separator line of columns, the title row of columns>
+	 */
+	public TableLayout(Column... columns) {
+		this.columns = columns.clone();
+		StringBuilder s = new StringBuilder("+");
+		StringBuilder t = new StringBuilder("|");
+		for (Column c : this.columns) {
+			for (int i = 0; i < c.width + 2; i++) {
+				s.append('-');
+			}
+			s.append('+');
+			t.append(' ');
+			int pad = Math.max(0, c.width - c.title.length());
+			if (c.titleAlign == Align.RIGHT) {
+				spaces(t, pad);
+			}
+			t.append(c.title, 0, Math.min(c.width, c.title.length()));
+			if (c.titleAlign == Align.LEFT) {
+				spaces(t, pad);
+			}
+			t.append(" |");
+		}
+		this.separator = s.append('\n').toString();
+		this.titles = t.append('\n').toString();
+	}
+
+	/**
+	 * @effects return a column of width characters whose title and cells are aligned on the left
+	 */
+	public static Column left(String title, int width) {
+		return new Column(title, width, Align.LEFT, Align.LEFT, true);
+	}
+
+	/**
+	 * @effects return a column of width characters whose title and cells are aligned on the right
+	 */
+	public static Column right(String title, int width) {
+		return new Column(title, width, Align.RIGHT, Align.RIGHT, true);
+	}
+
+	/**
+	 * @effects return the separator line, e.g. "+-----+------+\n"
+	 */
+	public String separator() {
+		return separator;
+	}
+
+	/**
+	 * @effects return the row of the titles, e.g. "| No. | Name |\n"
+	 */
+	public String titles() {
+		return titles;
+	}
+
+	/**
+	 * @requires out!=null
+	 * @effects return a new Printer that writes the rows of this to out
+	 */
+	public Printer printer(Appendable out) {
+		return new Printer(out);
+	}
+
+	private static void spaces(StringBuilder sb, int n) {
+		for (int i = 0; i < n; i++) {
+			sb.append(' ');
+		}
+	}
+
+	/**
+	 * @Overview A column of a TableLayout.
+	 * @attributes <pre>
+	 * title		String
+	 * width		int
+	 * align		Align
+	 * titleAlign	Align
+	 * truncate		boolean
+	 * </pre>
+	 * @Object a typical Column is c:<t, w, a, ta, tr> where t is the title, w is the width in characters, a is the
+	 *         alignment of the cells, ta is the alignment of the title, tr is true if a longer cell is truncated
+	 * AF(c) = c:<t, w, a, ta, tr>
+	 * @rep_invariant
+	 * 	t!=null && w > 0 && a!=null && ta!=null
+	 */
+	public static final class Column {
+		private final String title;
+		private final int width;
+		private final Align align;
+		private final Align titleAlign;
+		private final boolean truncate;
+
+		private Column(String title, int width, Align align, Align titleAlign, boolean truncate) {
+			if (width <= 0) {
+				throw new IllegalArgumentException("invalid width:'" + width + "'");
+			}
+			this.title = title;
+			this.width = width;
+			this.align = align;
+			this.titleAlign = titleAlign;
+			this.truncate = truncate;
+		}
+
+		/**
+		 * @effects return a column that is this with its title aligned by titleAlign
+		 */
+		public Column titleAligned(Align titleAlign) {
+			return new Column(title, width, align, titleAlign, truncate);
+		}
+
+		/**
+		 * @effects return a column that is this whose longer cells are kept whole
+		 */
+		public Column wide() {
+			return new Column(title, width, align, titleAlign, false);
+		}
+	}
+
+	/**
+	 * @Overview A Printer writes the rows of one report to its destination. The values of the current cell are
+	 *           appended to a buffer, next() fits the cell to its column and moves to the next one, and endRow()
+	 *           writes the whole row to the destination at once. The buffer is reused for every row.
+	 *           A destination that is a stream (e.g. System.out) is written through one PrintWriter, so the row is
+	 *           encoded from the buffer without a String; what it holds is flushed by separator().
+	 * @attributes <pre>
+	 * out			Appendable
+	 * writer		Writer
+	 * buffer		char[]
+	 * length		int
+	 * column		int
+	 * cellStart	int
+	 * </pre>
+	 * @Object a typical Printer is c:<o, w, b, n, k, s> where o is the destination, w is o as a Writer (or null if
+	 *         o is neither a Writer nor a stream), b[0..n) is the current row, k is the column of the current cell,
+	 *         which starts at b[s]
+	 * AF(c) = c:<o, w, b, n, k, s>
+	 * @rep_invariant
+	 * 	o!=null && 0 <= k < columns.length && 2 <= s <= n <= b.length && b[0..2) == "| "
+	 */
+	public final class Printer {
+		private final Appendable out;
+		private final Writer writer;
+		private char[] buffer;
+		private int length;
+		private int column;
+		private int cellStart;
+
+		private Printer(Appendable out) {
+			this.out = out;
+			if (out instanceof Writer) {
+				this.writer = (Writer) out;
+			} else if (out instanceof OutputStream) {
+				this.writer = new PrintWriter((OutputStream) out);
+			} else {
+				this.writer = null;
+			}
+			this.buffer = new char[Math.max(64, titles.length() * 2)];
+			startRow();
+		}
+
+		/**
+		 * @modifies out
+		 * @effects append the separator line, the title row and the separator line to out
+		 * @throws IOException if out fails
+		 */
+		public void header() throws IOException {
+			write(separator);
+			write(titles);
+			write(separator);
+		}
+
+		/**
+		 * @modifies out
+		 * @effects append the separator line to out, and flush what this holds for out
+		 * @throws IOException if out fails
+		 */
+		public void separator() throws IOException {
+			write(separator);
+			if (writer != null && writer != out) {
+				writer.flush();
+			}
+		}
+
+		private void write(String s) throws IOException {
+			if (writer != null) {
+				writer.write(s);
+			} else {
+				out.append(s);
+			}
+		}
+
+		/**
+		 * @modifies this
+		 * @effects append s (or "null") to the current cell, return this
+		 */
+		public Printer text(CharSequence s) {
+			if (s == null) {
+				s = "null";
+			}
+			int n = s.length();
+			ensure(n);
+			for (int i = 0; i < n; i++) {
+				buffer[length++] = s.charAt(i);
+			}
+			return this;
+		}
+
+		/**
+		 * @modifies this
+		 * @effects append c to the current cell, return this
+		 */
+		public Printer text(char c) {
+			ensure(1);
+			buffer[length++] = c;
+			return this;
+		}
+
+		/**
+		 * @modifies this
+		 * @effects append v in decimal to the current cell, return this
+		 */
+		public Printer number(long v) {
+			if (v == Long.MIN_VALUE) {
+				return text(Long.toString(v));
+			}
+			ensure(20);
+			if (v < 0) {
+				buffer[length++] = '-';
+				v = -v;
+			}
+			int end = length + digits(v);
+			for (int i = end - 1; i >= length; i--) {
+				buffer[i] = (char) ('0' + v % 10);
+				v /= 10;
+			}
+			length = end;
+			return this;
+		}
+
+		/**
+		 * @modifies this
+		 * @effects append ticks as dollars with 2 decimals to the current cell (as Money.format(ticks)), return this
+		 */
+		public Printer money(long ticks) {
+			long cents = Money.divide(ticks, CENT);
+			if (cents < 0) {
+				text('-');
+				cents = -cents;
+			}
+			return number(cents / 100).text('.').fraction(cents % 100, 2);
+		}
+
+		/**
+		 * @requires 0 <= decimals <= 6
+		 * @modifies this
+		 * @effects append v with decimals decimals to the current cell, rounded half up (as "%.nf"), return this
+		 */
+		public Printer decimal(double v, int decimals) {
+			long scale = POWERS_OF_TEN[decimals];
+			double scaled = Math.abs(v) * scale;
+			if (Double.isNaN(v) || scaled >= Long.MAX_VALUE / 2) {
+				return text(String.format("%." + decimals + "f", v));
+			}
+			// scaled is below the decimal value of v by up to an ulp (1.005 * 100 == 100.49999999999999), which
+			// String.format rounds as 100.5
+			long units = (long) (scaled + 0.5 + Math.ulp(scaled));
+			if (Double.doubleToRawLongBits(v) < 0) {
+				text('-');
+			}
+			number(units / scale);
+			if (decimals > 0) {
+				text('.').fraction(units % scale, decimals);
+			}
+			return this;
+		}
+
+		/**
+		 * @modifies this
+		 * @effects append v aligned on the right in width characters (as "%w.ws") to the current cell, return this
+		 */
+		public Printer field(long v, int width) {
+			int start = length;
+			number(v);
+			fit(start, width, Align.RIGHT, true);
+			return this;
+		}
+
+		/**
+		 * @modifies this
+		 * @effects append s aligned on the right in width characters (as "%w.ws") to the current cell, return this
+		 */
+		public Printer field(CharSequence s, int width) {
+			int start = length;
+			text(s);
+			fit(start, width, Align.RIGHT, true);
+			return this;
+		}
+
+		/**
+		 * @requires the current cell is not in the last column
+		 * @modifies this
+		 * @effects fit the current cell to its column, move to the next column, return this
+		 */
+		public Printer next() {
+			if (column == columns.length - 1) {
+				throw new IllegalStateException("no column after column " + column);
+			}
+			closeCell();
+			column++;
+			return this;
+		}
+
+		/**
+		 * @requires the current cell is in the last column
+		 * @modifies this, out
+		 * @effects fit the current cell to its column, append the row to out and start a new row
+		 * @throws IOException if out fails
+		 */
+		public void endRow() throws IOException {
+			if (column != columns.length - 1) {
+				throw new IllegalStateException("row ended at column " + column + " of " + columns.length);
+			}
+			Column c = columns[column];
+			fit(cellStart, c.width, c.align, c.truncate);
+			ensure(3);
+			buffer[length++] = ' ';
+			buffer[length++] = '|';
+			buffer[length++] = '\n';
+			if (out instanceof StringBuilder) {
+				((StringBuilder) out).append(buffer, 0, length);
+			} else if (writer != null) {
+				writer.write(buffer, 0, length);
+			} else {
+				out.append(new String(buffer, 0, length));
+			}
+			startRow();
+		}
+
+		private void startRow() {
+			buffer[0] = '|';
+			buffer[1] = ' ';
+			length = 2;
+			column = 0;
+			cellStart = 2;
+		}
+
+		private void closeCell() {
+			Column c = columns[column];
+			fit(cellStart, c.width, c.align, c.truncate);
+			ensure(3);
+			buffer[length++] = ' ';
+			buffer[length++] = '|';
+			buffer[length++] = ' ';
+			cellStart = length;
+		}
+
+		/**
+		 * @modifies this
+		 * @effects <pre>
+		 *  if buffer[start..length) is longer than width characters
+		 *    if truncate
+		 *      keep its first width characters
+		 *  else
+		 *    pad it with spaces on the side opposite to align up to width characters
+		 * </pre>
+		 */
+		private void fit(int start, int width, Align align, boolean truncate) {
+			int n = length - start;
+			if (n >= width) {
+				if (truncate) {
+					length = start + width;
+				}
+				return;
+			}
+			int pad = width - n;
+			ensure(pad);
+			if (align == Align.RIGHT) {
+				System.arraycopy(buffer, start, buffer, start + pad, n);
+				for (int i = start; i < start + pad; i++) {
+					buffer[i] = ' ';
+				}
+			} else {
+				for (int i = length; i < length + pad; i++) {
+					buffer[i] = ' ';
+				}
+			}
+			length += pad;
+		}
+
+		/**
+		 * @requires 0 <= v < 10^digits
+		 * @modifies this
+		 * @effects append v in exactly digits digits (with leading zeros)
+		 */
+		private Printer fraction(long v, int digits) {
+			ensure(digits);
+			for (int i = length + digits - 1; i >= length; i--) {
+				buffer[i] = (char) ('0' + v % 10);
+				v /= 10;
+			}
+			length += digits;
+			return this;
+		}
+
+		private void ensure(int n) {
+			if (length + n > buffer.length) {
+				char[] b = new char[Math.max(buffer.length * 2, length + n)];
+				System.arraycopy(buffer, 0, b, 0, length);
+				buffer = b;
+			}
+		}
+	}
+
+	/**
+	 * @requires v >= 0
+	 * @effects return the number of decimal digits of v
+	 */
+	private static int digits(long v) {
+		int n = 1;
+		while (v >= 10) {
+			v /= 10;
+			n++;
+		}
+		return n;
+	}
+}
@@ -2,10 +2,11 @@ package stocktrader.server;
 
 import stocktrader.common.NotPossibleException;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.HashMap;
+import java.util.Collection;
 
 /**
  * @Overview User represents a person or thing that uses `stocktrader` program
@@ -13,41 +14,57 @@ import java.util.HashMap;
  * userName		String
  * password		String
  * name			String
- * Balance		double
- * ownStock		ArrayList<StockPurchase>
+ * Balance		long
+ * startingBalance	long
+ * ownStock		LotStore
  * currentDate  int
- * profit		double
+ * profit		long
+ * realizedProfit	long
+ * costBasis	long
+ * marketValue	long
  * </pre>
- * @Object a typical User is c:<u, p, n, b, o, cd, f> where u is userName, p is password, n is name
- * 			b is money, o is ownStock, cd is currentDate, f is profit
- * AF(c) = c:<u, p, n, b, o, cd, f>
+ * @Object a typical User is c:<u, p, n, b, sb, o, cd, f, r> where u is userName, p is password, n is name
+ * 			b is money, sb is the money the user started with (the base of its return), o is ownStock,
+ * 			cd is currentDate, f is profit, r is the profit realized by all sales
+ * 			(o keeps the lots in columns and groups them by stock id in Position(s))
+ * 			(costBasis, marketValue are derived attributes: costBasis is the total purchase cost of o,
+ * 			marketValue is the value of o at the current prices)
+ * 			(all amounts of money are in Money ticks)
+ * AF(c) = c:<u, p, n, b, sb, o, cd, f, r>
  * @rep_invariant
  * 	u!=null && u.length>0 && u.matches("[A-Za-z0-9]+")
  * 	p!=null && p.length>0 &&
  * 	n!=null && n.length>0 &&
- * 	m>=0d &&
+ * 	m>=0 && sb>=0 &&
  * 	o!=null &&
- * 	cd>=1
+ * 	cd>=1 &&
+ * 	f == marketValue - costBasis after getProfit()
  * @Version 1.0.211127
  * @author Phan Quang Tuan
  */
 public class User implements Serializable {
+	private static final long serialVersionUID = 8188056268177359452L;
+
 	private String userName;
 	private String password;
 	private String name;
-	private double balance;
-	private ArrayList<StockPurchase> ownStock;
+	private long balance;
+	private long startingBalance;
+	private LotStore ownStock;
 	private int currentDate;
-	private double profit; // derived attribute
+	private long profit; // derived attribute
+	private long realizedProfit;
+	private transient long costBasis; // derived attribute
+	private transient long marketValue; // derived attribute
 
 	/**
 	 * @effects <pre>
 	 * if userName, password, name, balance are valid
-	 * 	initialize this as c:<userName, password, name, balance, [], 1, 0>
+	 * 	initialize this as c:<userName, password, name, balance, balance, [], 1, 0, 0>
 	 * else
 	 * 	throw NotPossibleException</pre>
 	 */
-	public User(String userName, String password, String name, double balance, int currentDate)
+	public User(String userName, String password, String name, long balance, int currentDate)
 			throws NotPossibleException {
 		if (!validateUserName(userName)) {
 			throw new NotPossibleException(getClass().getSimpleName() + ".init: invalid userName:'" + userName + "'");
@@ -74,7 +91,8 @@ public class User implements Serializable {
 		this.password = password;
 		this.name = name;
 		this.balance = balance;
-		this.ownStock = new ArrayList<>();
+		this.startingBalance = balance;
+		this.ownStock = new LotStore();
 		this.currentDate = currentDate;
 	}
 
@@ -122,8 +140,8 @@ public class User implements Serializable {
 	 *   return false
 	 * </pre>
 	 */
-	private boolean validateBalance(double balance) {
-		return balance >= 0d;
+	private boolean validateBalance(long balance) {
+		return balance >= 0;
 	}
 
 	/**
@@ -204,7 +222,7 @@ public class User implements Serializable {
 	/**
 	 * @effects return money
 	 */
-	public double getBalance() {
+	public long getBalance() {
 		return balance;
 	}
 
@@ -216,17 +234,53 @@ public class User implements Serializable {
 	 *   do nothing
 	 * </pre>
 	 */
-	public void setBalance(double balance) {
+	public void setBalance(long balance) {
 		if (validateBalance(balance)) {
 			this.balance = balance;
 		}
 	}
 
 	/**
-	 * @effects return a shallow copy of ownStock
+	 * @effects return startingBalance
+	 */
+	public long getStartingBalance() {
+		return startingBalance;
+	}
+
+	/**
+	 * @effects return balance + marketValue, i.e. the money and the stocks of this at the current prices
+	 */
+	public long getNetWorth() {
+		return balance + marketValue;
+	}
+
+	/**
+	 * @effects <pre>
+	 *  if startingBalance > 0
+	 *    return (balance + marketValue - startingBalance) / startingBalance * 100
+	 *  else
+	 *    return 0
+	 * </pre>
+	 */
+	public double getReturnPercent() {
+		return startingBalance > 0 ? (double) (balance + marketValue - startingBalance) / startingBalance * 100 : 0d;
+	}
+
+	/**
+	 * Copies every lot; readers that do not keep the lots should use getLots() (its asList(), forEach() or
+	 * cursor()) instead.
+	 * @effects return a list of new StockPurchase(s) holding the lots in ownStock
 	 */
 	public ArrayList<StockPurchase> getOwnStock() {
-		return new ArrayList<>(ownStock);
+		return new ArrayList<>(ownStock.asList());
+	}
+
+	/**
+	 * @effects return ownStock, a live view of the lots (read-only outside this package) that can be read without
+	 *          creating objects
+	 */
+	public LotStore getLots() {
+		return ownStock;
 	}
 
 	/**
@@ -245,13 +299,47 @@ public class User implements Serializable {
 	 * </pre>
 	 */
 	public StockPurchase stockPurchaseOf(Stock s) {
-		for (StockPurchase sp : ownStock) {
-			Stock st = sp.getTheStock();
-			if (st.getId().equals(s.getId())) {
-				return sp;
-			}
-		}
-		return null;
+		Position p = ownStock.positionOf(s.getId());
+		return (p != null) ? p.first() : null;
+	}
+
+	/**
+	 * @effects <pre>
+	 *  if s is in one of StockPurchase(s) in ownStock:
+	 *    return the Position of s
+	 *  else
+	 *    return null
+	 * </pre>
+	 */
+	public Position positionOf(Stock s) {
+		return ownStock.positionOf(s.getId());
+	}
+
+	/**
+	 * @effects <pre>
+	 *  if a stock whose id is stockId is in one of StockPurchase(s) in ownStock:
+	 *    return the Position of that stock
+	 *  else
+	 *    return null
+	 * </pre>
+	 */
+	public Position positionOf(String stockId) {
+		return ownStock.positionOf(stockId);
+	}
+
+	/**
+	 * @effects return the total quantity of s in ownStock
+	 */
+	public long quantityOf(Stock s) {
+		Position p = ownStock.positionOf(s.getId());
+		return (p != null) ? p.getQuantity() : 0;
+	}
+
+	/**
+	 * @effects return an unmodifiable view of all Position(s), one per stock in ownStock
+	 */
+	public Collection<Position> getPositions() {
+		return ownStock.getPositions();
 	}
 
 	/**
@@ -265,38 +353,131 @@ public class User implements Serializable {
 	public void addToOwnStock(StockPurchase sp) {
 		if (validateStockPurchase(sp)) {
 			ownStock.add(sp);
+			addToTotals(sp);
+		}
+	}
+
+	/**
+	 * @effects <pre>
+	 * if theStock, quantity, purchasePrice, purchaseTime (epoch milliseconds), purchaseDay are valid
+	 *   add a lot with these values to ownStock (without creating a StockPurchase)
+	 *   return true
+	 * else
+	 *   return false
+	 * </pre>
+	 */
+	public boolean addToOwnStock(Stock theStock, int quantity, long purchasePrice, long purchaseTime,
+			int purchaseDay) {
+		if (theStock == null || quantity <= 0 || purchasePrice < 0 || !MarketClock.isValidTime(purchaseTime)
+				|| purchaseDay < 1) {
+			return false;
+		}
+		ownStock.add(theStock, quantity, purchasePrice, purchaseTime, purchaseDay);
+		costBasis += quantity * purchasePrice;
+		marketValue += quantity * theStock.getCurrentPrice();
+		return true;
+	}
+
+	/**
+	 * @effects <pre>
+	 * if 0 <= i < sizeOfOwnStock() && newSP is valid
+	 *   replace the i-th lot of ownStock with the values of newSP
+	 * else
+	 *   do nothing
+	 * </pre>
+	 */
+	public void setFromOwnStock(int i, StockPurchase newSP) {
+		if (i >= 0 && i < ownStock.size() && validateStockPurchase(newSP)) {
+			int slot = ownStock.slotOf(i);
+			removeFromTotals(ownStock.stockAt(i), ownStock.priceAt(i), ownStock.quantityAt(i));
+			ownStock.set(slot, newSP);
+			addToTotals(newSP);
 		}
 	}
 
 	/**
 	 * @effects <pre>
-	 * if oldSP and newSP are valid && oldSP is in ownStock
-	 * 	 let's say i is index of oldSP in ownStock
-	 *   ownStock.set(i, newSP)
+	 * if 0 <= i < sizeOfOwnStock()
+	 *   remove the i-th lot from ownStock
 	 * else
 	 *   do nothing
 	 * </pre>
 	 */
-	public void setFromOwnStock(StockPurchase oldSP, StockPurchase newSP) {
-		if (validateStockPurchase(oldSP) && validateStockPurchase(newSP) && ownStock.contains(oldSP)) {
-			ownStock.set(ownStock.indexOf(oldSP), newSP);
+	public void removeFromOwnStock(int i) {
+		if (i >= 0 && i < ownStock.size()) {
+			removeFromTotals(ownStock.stockAt(i), ownStock.priceAt(i), ownStock.quantityAt(i));
+			ownStock.remove(ownStock.slotOf(i));
 		}
 	}
 
 	/**
+	 * Quantities of the lots in ownStock must be reduced through this method.
 	 * @effects <pre>
-	 * if StockPurchase is valid && StockPurchase is in ownStock
-	 *   ownStock.remove(StockPurchase)
+	 * if 0 <= i < sizeOfOwnStock() && 0 < quantity < the quantity of the i-th lot of ownStock
+	 *   subtract quantity from the quantity of the i-th lot of ownStock
 	 * else
 	 *   do nothing
 	 * </pre>
 	 */
-	public void removeFromOwnStock(StockPurchase sp) {
-		if (validateStockPurchase(sp) && ownStock.contains(sp)) {
-			ownStock.remove(sp);
+	public void reduceOwnStock(int i, int quantity) {
+		if (i >= 0 && i < ownStock.size() && quantity > 0 && quantity < ownStock.quantityAt(i)) {
+			removeFromTotals(ownStock.stockAt(i), ownStock.priceAt(i), quantity);
+			ownStock.reduce(ownStock.slotOf(i), quantity);
+		}
+	}
+
+	/**
+	 * Sells shares of s across its lots in the given order. Only the lots that are sold are visited.
+	 * @modifies this.ownStock
+	 * @effects <pre>
+	 *  if 0 < quantity <= quantityOf(s)
+	 *    take quantity shares of s from ownStock, oldest lot first if order is FIFO, newest lot first if order
+	 *    is LIFO, removing every lot that is sold entirely
+	 *    return the purchase cost of the shares taken
+	 *  else
+	 *    return 0
+	 * </pre>
+	 */
+	public long consumeOwnStock(Stock s, int quantity, LotQueue.Order order) {
+		Position p = ownStock.positionOf(s.getId());
+		if (p == null || quantity <= 0 || quantity > p.getQuantity()) {
+			return 0;
+		}
+
+		long cost = ownStock.consume(s, quantity, order);
+		costBasis -= cost;
+		marketValue -= quantity * s.getCurrentPrice();
+		return cost;
+	}
+
+	private void addToTotals(StockPurchase sp) {
+		costBasis += sp.getQuantity() * sp.getPurchasePrice();
+		marketValue += sp.getQuantity() * sp.getTheStock().getCurrentPrice();
+	}
+
+	private void removeFromTotals(Stock s, long purchasePrice, int quantity) {
+		costBasis -= quantity * purchasePrice;
+		marketValue -= quantity * s.getCurrentPrice();
+	}
+
+	/**
+	 * @modifies this.costBasis, this.marketValue
+	 * @effects recompute costBasis and marketValue from the Position(s) of ownStock
+	 */
+	private void recomputeTotals() {
+		costBasis = 0;
+		marketValue = 0;
+		for (Position p : ownStock.getPositions()) {
+			costBasis += p.getTotalCost();
+			marketValue += p.getQuantity() * p.getTheStock().getCurrentPrice();
 		}
 	}
 
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		recomputeTotals();
+	}
+
 	/**
 	 * @effects return currentDate
 	 */
@@ -312,48 +493,57 @@ public class User implements Serializable {
 	}
 
 	/**
-	 * @effects return profit
+	 * @modifies this.profit
+	 * @effects <pre>
+	 *  this.profit = marketValue - costBasis
+	 *  i.e. sum of sp.quantity * (sp.theStock.currentPrice - sp.purchasePrice) for all sp in ownStock
+	 *  return profit
+	 * </pre>
 	 */
-	public double getProfit() {
-		calculateProfit();
+	public long getProfit() {
+		profit = marketValue - costBasis;
 		return profit;
 	}
 
 	/**
-	 * @modifies this.profit
-	 * @effects <pre>
-	 *  create a new HashMap
-	 *  for all StockPurchase in ownStock
-	 *  calculate profit of  stock that map the StockPurchase
-	 *  if HashMap does not contains stock
-	 *    put stock, profit to HashMap
-	 *  else
-	 *    replace exProfit with new profit of that stock
-	 *
-	 *   this.profit = 0
-	 *   for all profit in HashMap
-	 *     add it to this.profit
-	 *
-	 * </pre>
+	 * @effects return realizedProfit
 	 */
-	private void calculateProfit() {
-		HashMap<Stock, Double> stockMap = new HashMap<>();
-		for (StockPurchase sp : ownStock) {
-			Stock s = sp.getTheStock();
-			// profit of 1 StockPurchase
-			double profit = sp.getQuantity() * (s.getCurrentPrice() - sp.getPurchasePrice());
-
-			if (!stockMap.containsKey(s)) {
-				stockMap.put(s, profit);
-			} else {
-				double exProfit = stockMap.get(s);
-				stockMap.replace(s, exProfit, exProfit + profit);
-			}
-		}
+	public long getRealizedProfit() {
+		return realizedProfit;
+	}
 
-		this.profit = 0;
-		for (Double p : stockMap.values()) {
-			this.profit += p;
+	/**
+	 * @modifies this.realizedProfit
+	 * @effects add amount (the proceeds of a sale minus the purchase cost of the shares sold) to realizedProfit
+	 */
+	public void addRealizedProfit(long amount) {
+		realizedProfit += amount;
+	}
+
+	/**
+	 * @effects return sum of sp.quantity * sp.purchasePrice for all sp in ownStock
+	 */
+	public long getCostBasis() {
+		return costBasis;
+	}
+
+	/**
+	 * @effects return sum of sp.quantity * sp.theStock.currentPrice for all sp in ownStock
+	 */
+	public long getMarketValue() {
+		return marketValue;
+	}
+
+	/**
+	 * Every change of s.currentPrice must be reported to the holders of s through this method.
+	 * @requires s.currentPrice has just been changed from oldPrice
+	 * @modifies this.marketValue
+	 * @effects marketValue += quantityOf(s) * (s.currentPrice - oldPrice)
+	 */
+	public void onPriceChange(Stock s, long oldPrice) {
+		Position p = ownStock.positionOf(s.getId());
+		if (p != null) {
+			marketValue += p.getQuantity() * (s.getCurrentPrice() - oldPrice);
 		}
 	}
 
@@ -366,16 +556,14 @@ public class User implements Serializable {
 	 * </pre>
 	 */
 	private boolean validateStockPurchase(StockPurchase sp) {
-		Calendar c = Calendar.getInstance();
-		c.set(1900, 0, 1);
 		return sp != null && sp.getPurchasePrice() >= 0 && sp.getTheStock() != null && sp.getQuantity() > 0
-				&& sp.getPurchaseDate().after(c.getTime());
+				&& MarketClock.isValidTime(sp.getPurchaseTime());
 	}
 
 	@Override
 	public String toString() {
-		return getClass().getSimpleName() + ":<" + userName + ", " + password + ", " + name + ", " + balance + ownStock
-				+ ", " + currentDate + ", " + profit + ">";
+		return getClass().getSimpleName() + ":<" + userName + ", " + password + ", " + name + ", " + balance + ownStock.asList()
+				+ ", " + currentDate + ", " + profit + ", " + realizedProfit + ">";
 	}
 
 	/**
@@ -393,9 +581,12 @@ public class User implements Serializable {
 		cl.password = password;
 		cl.name = name;
 		cl.balance = balance;
-		cl.ownStock = getOwnStock();
+		cl.startingBalance = startingBalance;
+		cl.ownStock = ownStock.copy();
 		cl.currentDate = currentDate;
 		cl.profit = profit;
+		cl.realizedProfit = realizedProfit;
+		cl.recomputeTotals();
 		return cl;
 	}
 }
@@ -0,0 +1,197 @@
+package stocktrader.server.backtest;
+
+import stocktrader.common.NotPossibleException;
+import stocktrader.common.TransactionFailedException;
+import stocktrader.server.Broker;
+import stocktrader.server.LotQueue;
+import stocktrader.server.MarketClock;
+import stocktrader.server.Money;
+import stocktrader.server.Stock;
+import stocktrader.server.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * @Overview Backtest replays PricePaths against Strategy(s). Every run trades a fresh in-memory User and fresh
+ *           Stock(s) through Broker, i.e. with the same rules as StockServer.purchase() and StockServer.sellStock(),
+ *           but never touches `defaultDB.dat`. Runs are independent, so runAll() executes them on a fork-join pool.
+ * @attributes <pre>
+ * paths			PricePaths
+ * startBalance		double
+ * liquidity		int
+ * </pre>
+ * @Object a typical Backtest is c:<p, b, l> where p is the price paths to replay, b is the balance of the user
+ *         at the start of every run, l is the available quantity of every stock at the start of every run
+ * AF(c) = c:<p, b, l>
+ * @rep_invariant
+ * 	p!=null && p.days()>0 && b>=0 && l>=0
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public class Backtest {
+	private final PricePaths paths;
+	private final double startBalance;
+	private final int liquidity;
+
+	/**
+	 * @effects <pre>
+	 *  if paths.days() > 0
+	 *    initialize this as c:<paths, startBalance, liquidity>
+	 *  else
+	 *    throw IllegalArgumentException
+	 * </pre>
+	 */
+	public Backtest(PricePaths paths, double startBalance, int liquidity) {
+		if (paths.days() == 0) {
+			throw new IllegalArgumentException(getClass().getSimpleName() + ".init: no days to replay");
+		}
+		this.paths = paths;
+		this.startBalance = startBalance;
+		this.liquidity = liquidity;
+	}
+
+	/**
+	 * @effects <pre>
+	 *  create a User with startBalance and a Stock for every path
+	 *  for every day d
+	 *    set the price of every stock to its close on d
+	 *    for every stock, ask strategy what to do and buy/sell through Broker
+	 *    (trades rejected by Broker are counted and skipped)
+	 *    update the peak equity and the max drawdown
+	 *  return the result of the run
+	 * </pre>
+	 */
+	public BacktestResult run(Strategy strategy) {
+		int n = paths.stockCount();
+		int days = paths.days();
+		Stock[] stocks = new Stock[n];
+		User user;
+		try {
+			for (int k = 0; k < n; k++) {
+				stocks[k] = new Stock(paths.idOf(k), "backtest", Money.of(paths.closesOf(k)[0]), liquidity);
+			}
+			user = new User("backtest", "backtest", "backtest", Money.of(startBalance), 1);
+		} catch (NotPossibleException e) {
+			throw new IllegalArgumentException(e.getMessage());
+		}
+
+		strategy.init(n);
+		int[] held = new int[n];
+		long time = MarketClock.system().now();
+		int trades = 0;
+		int rejected = 0;
+		double peak = startBalance;
+		double maxDrawdown = 0;
+		double equity = startBalance;
+
+		for (int d = 0; d < days; d++) {
+			for (int k = 0; k < n; k++) {
+				long oldPrice = stocks[k].getCurrentPrice();
+				stocks[k].setCurrentPrice(Money.of(paths.closesOf(k)[d]));
+				if (held[k] > 0) {
+					user.onPriceChange(stocks[k], oldPrice);
+				}
+			}
+
+			for (int k = 0; k < n; k++) {
+				int q = strategy.decide(k, d, paths.closesOf(k), held[k], Money.toDouble(user.getBalance()));
+				if (q == 0) {
+					continue;
+				}
+				try {
+					if (q > 0) {
+						Broker.buy(user, stocks[k], q, time, d + 1);
+						held[k] += q;
+					} else {
+						q = Math.min(-q, held[k]);
+						Broker.sellLots(user, stocks[k], q, LotQueue.Order.FIFO);
+						held[k] -= q;
+					}
+					trades++;
+				} catch (TransactionFailedException e) {
+					rejected++;
+				}
+			}
+
+			equity = Money.toDouble(user.getNetWorth());
+			if (equity > peak) {
+				peak = equity;
+			} else if (peak > 0) {
+				maxDrawdown = Math.max(maxDrawdown, (peak - equity) / peak);
+			}
+		}
+		return new BacktestResult(strategy.toString(), startBalance, equity, maxDrawdown, trades, rejected);
+	}
+
+	/**
+	 * @effects run every strategy in strategies on pool and return their results in the same order
+	 */
+	public BacktestResult[] runAll(List<Strategy> strategies, ForkJoinPool pool) {
+		BacktestResult[] results = new BacktestResult[strategies.size()];
+		pool.invoke(new RunTask(strategies, results, 0, results.length));
+		return results;
+	}
+
+	/**
+	 * @Overview Splits a range of strategies in halves until a single run is left
+	 */
+	private class RunTask extends RecursiveAction {
+		private final List<Strategy> strategies;
+		private final BacktestResult[] results;
+		private final int from;
+		private final int to;
+
+		RunTask(List<Strategy> strategies, BacktestResult[] results, int from, int to) {
+			this.strategies = strategies;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				results[from] = run(strategies.get(from));
+			} else if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new RunTask(strategies, results, from, mid), new RunTask(strategies, results, mid, to));
+			}
+		}
+	}
+
+	/**
+	 * Runs a grid of moving-average crossovers over simulated paths and prints the results.
+	 * usage: Backtest [stocks] [days] [seed]
+	 */
+	public static void main(String[] args) {
+		int stocks = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int days = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 42L;
+
+		long t0 = System.nanoTime();
+		PricePaths paths = PricePaths.simulate(stocks, days, 0.0002, 0.02, seed);
+		long t1 = System.nanoTime();
+
+		List<Strategy> strategies = new ArrayList<>();
+		for (int fast : new int[] { 5, 10, 20 }) {
+			for (int slow : new int[] { 30, 50, 100 }) {
+				strategies.add(new MovingAverageCrossover(fast, slow, 10));
+			}
+		}
+		Backtest bt = new Backtest(paths, 1_000_000d, Integer.MAX_VALUE / 2);
+		BacktestResult[] results = bt.runAll(strategies, ForkJoinPool.commonPool());
+		long t2 = System.nanoTime();
+
+		System.out.println(String.format("| %-12.12s | %14.14s | %14.14s | %8.8s | %8.8s |", "Strategy", "PnL",
+				"Max drawdown", "Trades", "Rejected"));
+		for (BacktestResult r : results) {
+			System.out.println(String.format("| %-12.12s | %14.2f | %13.2f%% | %8d | %8d |", r.getStrategy(),
+					r.getPnL(), r.getMaxDrawdown() * 100, r.getTrades(), r.getRejected()));
+		}
+		System.out.println(String.format("%d stocks x %d days: paths %d ms, %d runs %d ms", stocks, days,
+				(t1 - t0) / 1_000_000, results.length, (t2 - t1) / 1_000_000));
+	}
+}
@@ -0,0 +1,91 @@
+package stocktrader.server.backtest;
+
+/**
+ * @Overview BacktestResult represents the outcome of replaying one Strategy
+ * @attributes <pre>
+ * strategy			String
+ * startBalance		double
+ * finalEquity		double
+ * maxDrawdown		double
+ * trades			int
+ * rejected			int
+ * </pre>
+ * @Object a typical BacktestResult is c:<s, b, e, m, t, r> where s is the name of the strategy, b is the balance
+ *         at the start, e is balance + value of holdings at the end, m is the largest fall of equity from
+ *         a previous peak (as a fraction of that peak), t is the number of filled trades,
+ *         r is the number of trades rejected by the trade rules
+ * AF(c) = c:<s, b, e, m, t, r>
+ * @rep_invariant
+ * 	s!=null && 0 <= m <= 1 && t>=0 && r>=0
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public class BacktestResult {
+	private final String strategy;
+	private final double startBalance;
+	private final double finalEquity;
+	private final double maxDrawdown;
+	private final int trades;
+	private final int rejected;
+
+	/**
+	 * @effects initialize this as c:<strategy, startBalance, finalEquity, maxDrawdown, trades, rejected>
+	 */
+	public BacktestResult(String strategy, double startBalance, double finalEquity, double maxDrawdown, int trades,
+			int rejected) {
+		this.strategy = strategy;
+		this.startBalance = startBalance;
+		this.finalEquity = finalEquity;
+		this.maxDrawdown = maxDrawdown;
+		this.trades = trades;
+		this.rejected = rejected;
+	}
+
+	/**
+	 * @effects return strategy
+	 */
+	public String getStrategy() {
+		return strategy;
+	}
+
+	/**
+	 * @effects return finalEquity
+	 */
+	public double getFinalEquity() {
+		return finalEquity;
+	}
+
+	/**
+	 * @effects return finalEquity - startBalance
+	 */
+	public double getPnL() {
+		return finalEquity - startBalance;
+	}
+
+	/**
+	 * @effects return maxDrawdown
+	 */
+	public double getMaxDrawdown() {
+		return maxDrawdown;
+	}
+
+	/**
+	 * @effects return trades
+	 */
+	public int getTrades() {
+		return trades;
+	}
+
+	/**
+	 * @effects return rejected
+	 */
+	public int getRejected() {
+		return rejected;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + ":<" + strategy + ", " + startBalance + ", " + finalEquity + ", "
+				+ maxDrawdown + ", " + trades + ", " + rejected + ">";
+	}
+}
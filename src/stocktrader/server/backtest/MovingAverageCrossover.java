@@ -0,0 +1,72 @@
+package stocktrader.server.backtest;
+
+/**
+ * @Overview A Strategy that buys lotSize shares when the fast moving average of a stock crosses above
+ *           the slow one, and sells everything it holds when it crosses below. Both averages are kept
+ *           as running sums, so each call costs O(1).
+ * @attributes <pre>
+ * fast			int
+ * slow			int
+ * lotSize		int
+ * </pre>
+ * @rep_invariant
+ * 	0 < fast < slow && lotSize > 0
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public class MovingAverageCrossover implements Strategy {
+	private final int fast;
+	private final int slow;
+	private final int lotSize;
+	private double[] fastSum;
+	private double[] slowSum;
+	private boolean[] above;
+
+	/**
+	 * @effects <pre>
+	 *  if 0 < fast < slow && lotSize > 0
+	 *    initialize this as c:<fast, slow, lotSize>
+	 *  else
+	 *    throw IllegalArgumentException
+	 * </pre>
+	 */
+	public MovingAverageCrossover(int fast, int slow, int lotSize) {
+		if (fast <= 0 || slow <= fast || lotSize <= 0) {
+			throw new IllegalArgumentException(
+					getClass().getSimpleName() + ".init: invalid windows:'" + fast + ", " + slow + ", " + lotSize + "'");
+		}
+		this.fast = fast;
+		this.slow = slow;
+		this.lotSize = lotSize;
+	}
+
+	@Override
+	public void init(int stockCount) {
+		fastSum = new double[stockCount];
+		slowSum = new double[stockCount];
+		above = new boolean[stockCount];
+	}
+
+	@Override
+	public int decide(int stock, int day, double[] closes, int held, double balance) {
+		double price = closes[day];
+		fastSum[stock] += price - (day >= fast ? closes[day - fast] : 0);
+		slowSum[stock] += price - (day >= slow ? closes[day - slow] : 0);
+		if (day < slow - 1) {
+			return 0;
+		}
+
+		boolean nowAbove = fastSum[stock] / fast > slowSum[stock] / slow;
+		boolean wasAbove = above[stock];
+		above[stock] = nowAbove;
+		if (day == slow - 1 || nowAbove == wasAbove) {
+			return 0;
+		}
+		return nowAbove ? lotSize : -held;
+	}
+
+	@Override
+	public String toString() {
+		return "MA(" + fast + "/" + slow + ")";
+	}
+}
@@ -0,0 +1,117 @@
+package stocktrader.server.backtest;
+
+import stocktrader.server.Money;
+import stocktrader.server.PriceHistory;
+import stocktrader.server.Stock;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @Overview PricePaths represents the close prices of a set of stocks over the same consecutive days,
+ *           either replayed from a PriceHistory or simulated
+ * @attributes <pre>
+ * ids			String[]
+ * closes		double[][]
+ * </pre>
+ * @Object a typical PricePaths is c:<i, c> where i[k] is the id of stock k, c[k][d] is its close price on day d
+ * AF(c) = c:<i, c>
+ * @rep_invariant
+ * 	i.length == c.length && all c[k] have the same length && all prices > 0
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public class PricePaths {
+	private final String[] ids;
+	private final double[][] closes;
+
+	/**
+	 * @requires ids.length == closes.length && all closes[k] have the same length
+	 * @effects initialize this as c:<ids, closes>
+	 */
+	public PricePaths(String[] ids, double[][] closes) {
+		this.ids = ids;
+		this.closes = closes;
+	}
+
+	/**
+	 * @effects <pre>
+	 *  return the paths of stocks from fromDay to toDay replayed from history;
+	 *  the days before the first recorded price of a stock take that first price,
+	 *  the days after the last recorded price take that last price
+	 * </pre>
+	 */
+	public static PricePaths fromHistory(PriceHistory history, List<Stock> stocks, int fromDay, int toDay) {
+		int days = Math.max(0, toDay - fromDay + 1);
+		String[] ids = new String[stocks.size()];
+		double[][] closes = new double[stocks.size()][days];
+		for (int k = 0; k < ids.length; k++) {
+			Stock s = stocks.get(k);
+			ids[k] = s.getId();
+			double[] recorded = history.range(s.getId(), fromDay, toDay);
+			if (recorded.length == 0) {
+				Arrays.fill(closes[k], Money.toDouble(s.getCurrentPrice()));
+				continue;
+			}
+
+			int lead = Math.max(0, history.seriesOf(s.getId()).firstDay() - fromDay);
+			for (int d = 0; d < days; d++) {
+				int i = Math.min(Math.max(d - lead, 0), recorded.length - 1);
+				closes[k][d] = recorded[i];
+			}
+		}
+		return new PricePaths(ids, closes);
+	}
+
+	/**
+	 * @effects <pre>
+	 *  return the geometric Brownian motion paths of stockCount stocks over days days,
+	 *  starting at prices between $1 and $100, with daily drift and volatility;
+	 *  the same seed always gives the same paths
+	 * </pre>
+	 */
+	public static PricePaths simulate(int stockCount, int days, double drift, double volatility, long seed) {
+		String[] ids = new String[stockCount];
+		double[][] closes = new double[stockCount][days];
+		double mu = drift - volatility * volatility / 2;
+		for (int k = 0; k < stockCount; k++) {
+			ids[k] = String.format("S%05d", k);
+			Random rnd = new Random(seed * 1_000_003L + k);
+			double price = 1 + rnd.nextDouble() * 99;
+			for (int d = 0; d < days; d++) {
+				closes[k][d] = price;
+				price *= Math.exp(mu + volatility * rnd.nextGaussian());
+			}
+		}
+		return new PricePaths(ids, closes);
+	}
+
+	/**
+	 * @effects return the number of stocks
+	 */
+	public int stockCount() {
+		return ids.length;
+	}
+
+	/**
+	 * @effects return the number of days
+	 */
+	public int days() {
+		return ids.length == 0 ? 0 : closes[0].length;
+	}
+
+	/**
+	 * @effects return the id of stock k
+	 */
+	public String idOf(int k) {
+		return ids[k];
+	}
+
+	/**
+	 * @effects return the close prices of stock k (not a copy, must not be modified)
+	 */
+	public double[] closesOf(int k) {
+		return closes[k];
+	}
+}
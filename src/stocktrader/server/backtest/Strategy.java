@@ -0,0 +1,23 @@
+package stocktrader.server.backtest;
+
+/**
+ * @Overview A trading strategy that is replayed by Backtest. One instance is used by exactly one run,
+ *           so it may keep state between calls.
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public interface Strategy {
+	/**
+	 * @effects prepare this for a run over stockCount stocks
+	 */
+	void init(int stockCount);
+
+	/**
+	 * Called once per day for every stock, after the price of the day is set.
+	 * @requires closes[0..day] are the close prices of the stock up to today; later values must not be read
+	 * @effects <pre>
+	 *  return the number of shares to buy (> 0) or to sell (< 0), or 0 to hold
+	 * </pre>
+	 */
+	int decide(int stock, int day, double[] closes, int held, double balance);
+}
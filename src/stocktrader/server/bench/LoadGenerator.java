@@ -0,0 +1,229 @@
+package stocktrader.server.bench;
+
+import stocktrader.common.NotPossibleException;
+import stocktrader.common.TransactionFailedException;
+import stocktrader.server.ServerSetup;
+import stocktrader.server.Stock;
+import stocktrader.server.StockServer;
+import stocktrader.server.User;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @Overview A load generator for StockServer: it writes a new DB with traders traders (created like ServerSetup
+ *           creates its users) and the stocks of ServerSetup, then runs one thread per trader for seconds seconds.
+ *           Every trader logs in to its own StockServer on that DB and runs a weighted mix of purchase(),
+ *           sellStock(), listAllStocks(), trackStocks() and nextDay(), waiting a random think time (exponential,
+ *           of mean think milliseconds) between two operations.
+ *           For every operation it prints the throughput, how the operations ended (ok, rejected by the server
+ *           with a TransactionFailedException, refused because the session was out of date, i.e. another trader
+ *           saved the DB first as StockServer.isOutOfDate() tells, or failed otherwise) and the percentiles of
+ *           the latency (think times excluded).
+ *           Usage: LoadGenerator [traders] [seconds] [think] [DB name]
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public abstract class LoadGenerator {
+	private enum Op {
+		PURCHASE(30), SELL_STOCK(20), LIST_ALL_STOCKS(25), TRACK_STOCKS(20), NEXT_DAY(5);
+
+		private final int weight;
+
+		Op(int weight) {
+			this.weight = weight;
+		}
+	}
+
+	private static final Op[] OPS = Op.values();
+	private static final int TOTAL_WEIGHT;
+
+	static {
+		int w = 0;
+		for (Op op : OPS) {
+			w += op.weight;
+		}
+		TOTAL_WEIGHT = w;
+	}
+
+	public static void main(String[] args) throws NotPossibleException, IOException, InterruptedException {
+		int traders = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		final double think = args.length > 2 ? Double.parseDouble(args[2]) : 20;
+		final String dbName = args.length > 3 ? args[3] : "loadtestDB";
+
+		ArrayList<User> users = new ArrayList<>(traders);
+		for (int i = 1; i <= traders; i++) {
+			users.add(new User("trader" + i, "pw" + i, "Trader " + i, ServerSetup.randomBalance(), 1));
+		}
+		ArrayList<Stock> stocks = ServerSetup.initStocks();
+		ServerSetup.writeDB(dbName, users, stocks);
+		final int stockCount = stocks.size();
+
+		final Recorder[] recorders = new Recorder[traders];
+		final CountDownLatch start = new CountDownLatch(1);
+		final long[] deadline = new long[1];
+		Thread[] threads = new Thread[traders];
+		for (int i = 0; i < traders; i++) {
+			final int trader = i + 1;
+			final Recorder r = recorders[i] = new Recorder();
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					StockServer srv = new StockServer(dbName);
+					srv.login("trader" + trader, "pw" + trader);
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					ThreadLocalRandom rnd = ThreadLocalRandom.current();
+					while (System.nanoTime() < deadline[0]) {
+						Op op = pick(rnd.nextInt(TOTAL_WEIGHT));
+						long t0 = System.nanoTime();
+						Outcome outcome;
+						try {
+							if (execute(srv, op, stockCount, rnd)) {
+								outcome = Outcome.OK;
+							} else {
+								outcome = srv.isOutOfDate() ? Outcome.OUT_OF_DATE : Outcome.ERROR;
+							}
+						} catch (TransactionFailedException e) {
+							outcome = Outcome.REJECTED;
+						} catch (Exception e) {
+							outcome = Outcome.ERROR;
+						}
+						r.record(op, outcome, System.nanoTime() - t0);
+						try {
+							Thread.sleep((long) (-Math.log(1 - rnd.nextDouble()) * think));
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+				}
+			}, "trader" + trader);
+			threads[i].start();
+		}
+
+		long t0 = System.nanoTime();
+		deadline[0] = t0 + seconds * 1_000_000_000L;
+		start.countDown();
+		for (Thread t : threads) {
+			t.join();
+		}
+		double elapsed = (System.nanoTime() - t0) / 1e9;
+
+		Recorder all = new Recorder();
+		for (Recorder r : recorders) {
+			all.addAll(r);
+		}
+		System.out.println(String.format("%d traders, %.1f s, mean think time %.0f ms, DB `%s.dat`", traders, elapsed,
+				think, dbName));
+		System.out.println(String.format("%-16s %8s %8s %7s %9s %12s %7s %9s %9s %9s %9s", "operation", "count",
+				"ops/s", "ok", "rejected", "out of date", "errors", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+		long total = 0;
+		long totalOutOfDate = 0;
+		for (Op op : OPS) {
+			int k = op.ordinal();
+			long[] lat = Arrays.copyOf(all.latencies[k], all.sizes[k]);
+			Arrays.sort(lat);
+			int n = lat.length;
+			total += n;
+			totalOutOfDate += all.counts[k][Outcome.OUT_OF_DATE.ordinal()];
+			System.out.println(String.format("%-16s %8d %8.1f %6.1f%% %8.1f%% %11.1f%% %7d %9.2f %9.2f %9.2f %9.2f",
+					op, n, n / elapsed, percent(all.counts[k][Outcome.OK.ordinal()], n),
+					percent(all.counts[k][Outcome.REJECTED.ordinal()], n),
+					percent(all.counts[k][Outcome.OUT_OF_DATE.ordinal()], n), all.counts[k][Outcome.ERROR.ordinal()],
+					percentile(lat, 50), percentile(lat, 90), percentile(lat, 99), n == 0 ? 0 : lat[n - 1] / 1e6));
+		}
+		System.out.println(String.format("total: %d operations, %.1f ops/s, %.1f%% out of date", total, total / elapsed,
+				percent(totalOutOfDate, total)));
+	}
+
+	/**
+	 * @requires 0 <= w < TOTAL_WEIGHT
+	 * @effects return the operation whose share of the weights holds w
+	 */
+	private static Op pick(int w) {
+		for (Op op : OPS) {
+			if (w < op.weight) {
+				return op;
+			}
+			w -= op.weight;
+		}
+		throw new IllegalArgumentException("invalid weight:'" + w + "'");
+	}
+
+	/**
+	 * @modifies srv
+	 * @effects run op on srv, return false if the server could not save it (see StockServer.isOutOfDate())
+	 */
+	private static boolean execute(StockServer srv, Op op, int stockCount, ThreadLocalRandom rnd) throws Exception {
+		switch (op) {
+		case PURCHASE:
+			return srv.purchase(1 + rnd.nextInt(stockCount), 1 + rnd.nextInt(3));
+		case SELL_STOCK:
+			return srv.sellStock(1 + rnd.nextInt(3), 1);
+		case LIST_ALL_STOCKS:
+			srv.listAllStocks();
+			return true;
+		case TRACK_STOCKS:
+			srv.trackStocks();
+			return true;
+		default:
+			return srv.nextDay();
+		}
+	}
+
+	private static double percent(long part, long whole) {
+		return whole == 0 ? 0 : 100.0 * part / whole;
+	}
+
+	/**
+	 * @requires sorted is sorted
+	 * @effects return the p-th percentile of sorted (nearest rank) in milliseconds, or 0 if sorted is empty
+	 */
+	private static double percentile(long[] sorted, int p) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+		return sorted[Math.max(0, rank - 1)] / 1e6;
+	}
+
+	private enum Outcome {
+		OK, REJECTED, OUT_OF_DATE, ERROR
+	}
+
+	/**
+	 * @Overview The latencies (in nanoseconds) and the outcomes of the operations of one trader, by operation.
+	 */
+	private static final class Recorder {
+		private final long[][] latencies = new long[OPS.length][256];
+		private final int[] sizes = new int[OPS.length];
+		private final long[][] counts = new long[OPS.length][Outcome.values().length];
+
+		private void record(Op op, Outcome outcome, long nanos) {
+			int k = op.ordinal();
+			if (sizes[k] == latencies[k].length) {
+				latencies[k] = Arrays.copyOf(latencies[k], sizes[k] * 2);
+			}
+			latencies[k][sizes[k]++] = nanos;
+			counts[k][outcome.ordinal()]++;
+		}
+
+		private void addAll(Recorder r) {
+			for (int k = 0; k < OPS.length; k++) {
+				latencies[k] = Arrays.copyOf(latencies[k], Math.max(latencies[k].length, sizes[k] + r.sizes[k]));
+				System.arraycopy(r.latencies[k], 0, latencies[k], sizes[k], r.sizes[k]);
+				sizes[k] += r.sizes[k];
+				for (int o = 0; o < counts[k].length; o++) {
+					counts[k][o] += r.counts[k][o];
+				}
+			}
+		}
+	}
+}
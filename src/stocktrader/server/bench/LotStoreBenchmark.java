@@ -0,0 +1,93 @@
+package stocktrader.server.bench;
+
+import stocktrader.common.NotPossibleException;
+import stocktrader.common.TransactionFailedException;
+import stocktrader.server.Broker;
+import stocktrader.server.LotQueue;
+import stocktrader.server.MarketClock;
+import stocktrader.server.Money;
+import stocktrader.server.Stock;
+import stocktrader.server.StockPurchase;
+import stocktrader.server.User;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+
+/**
+ * @Overview A benchmark of the lots of one User with a large portfolio: the heap and the serialized size of lots
+ *           kept as an ArrayList of StockPurchase objects (as User.ownStock was) against the same lots in a
+ *           LotStore, and the time to buy them and sell them all (FIFO) through Broker.
+ *           Usage: LotStoreBenchmark [lots] [stocks] [rounds]
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public abstract class LotStoreBenchmark {
+	public static void main(String[] args) throws NotPossibleException, TransactionFailedException, IOException {
+		int lots = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+		int stockCount = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		Stock[] stocks = new Stock[stockCount];
+		for (int k = 0; k < stockCount; k++) {
+			stocks[k] = new Stock("BN" + (1000 + k), "benchmark " + k, Money.of(10 + k % 50), Integer.MAX_VALUE / 2);
+		}
+
+		MarketClock clock = MarketClock.system();
+		for (int r = 1; r <= rounds; r++) {
+			long before = usedMemory();
+			ArrayList<StockPurchase> objects = new ArrayList<>();
+			for (int i = 0; i < lots; i++) {
+				Stock s = stocks[i % stockCount];
+				objects.add(new StockPurchase(s, 1 + i % 100, s.getCurrentPrice(), new Date(clock.now()), 1 + i % 30));
+			}
+			long objectBytes = usedMemory() - before;
+			long objectSerialized = serializedSize(objects);
+			objects = null;
+
+			before = usedMemory();
+			User u = new User("bench", "bench", "bench", Money.of(1e12), 1);
+			long t0 = System.nanoTime();
+			for (int i = 0; i < lots; i++) {
+				Broker.buy(u, stocks[i % stockCount], 1 + i % 100, clock.now(), 1 + i % 30);
+			}
+			long t1 = System.nanoTime();
+			long storeBytes = usedMemory() - before;
+			long storeSerialized = serializedSize(u);
+
+			long t2 = System.nanoTime();
+			for (Stock s : stocks) {
+				long held = u.quantityOf(s);
+				while (held > 0) {
+					int q = (int) Math.min(held, 250);
+					Broker.sellLots(u, s, q, LotQueue.Order.FIFO);
+					held -= q;
+				}
+			}
+			long t3 = System.nanoTime();
+
+			System.out.println(String.format("round %d: %d lots | heap objects %,d B, LotStore %,d B"
+					+ " | serialized objects %,d B, User %,d B | buy %d ms, sell all %d ms (%d left)", r, lots,
+					objectBytes, storeBytes, objectSerialized, storeSerialized, (t1 - t0) / 1_000_000,
+					(t3 - t2) / 1_000_000, u.sizeOfOwnStock()));
+		}
+	}
+
+	private static long usedMemory() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+	private static long serializedSize(Object o) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+			oos.writeObject(o);
+		}
+		return bytes.size();
+	}
+}
@@ -0,0 +1,159 @@
+package stocktrader.server.bench;
+
+import stocktrader.common.NotPossibleException;
+import stocktrader.common.TransactionFailedException;
+import stocktrader.server.Broker;
+import stocktrader.server.LotQueue;
+import stocktrader.server.MarketClock;
+import stocktrader.server.Money;
+import stocktrader.server.Stock;
+import stocktrader.server.User;
+
+import java.util.Random;
+
+/**
+ * @Overview A benchmark of the money arithmetic: the checks and updates Broker does on a buy and a sell, and the
+ *           daily price change of nextDay(), once on doubles (as it was before money became Money ticks) and once
+ *           on longs with Money. It then times buy/sell round trips through Broker itself.
+ *           Usage: MoneyBenchmark [trades] [rounds]
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public abstract class MoneyBenchmark {
+	public static void main(String[] args) throws NotPossibleException, TransactionFailedException {
+		int trades = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		// a random walk of prices (the same in both representations) and of trade sizes
+		Random random = new Random(42);
+		int n = 1 << 12;
+		double[] rates = new double[n];
+		long[] rateBps = new long[n];
+		double[] prices = new double[n];
+		long[] priceTicks = new long[n];
+		int[] quantities = new int[n];
+		double price = 12.88;
+		for (int i = 0; i < n; i++) {
+			rateBps[i] = Money.RATE_SCALE * 85 / 100 + random.nextInt((int) (Money.RATE_SCALE * 30 / 100) + 1);
+			rates[i] = (double) rateBps[i] / Money.RATE_SCALE;
+			price = Money.toDouble(Money.of(price * rates[i]));
+			prices[i] = price;
+			priceTicks[i] = Money.of(price);
+			quantities[i] = 1 + random.nextInt(100);
+		}
+
+		for (int r = 1; r <= rounds; r++) {
+			long t0 = System.nanoTime();
+			double d = trades(trades, prices, quantities);
+			long t1 = System.nanoTime();
+			long l = trades(trades, priceTicks, quantities);
+			long t2 = System.nanoTime();
+			double dd = days(trades / n, prices.clone(), rates);
+			long t3 = System.nanoTime();
+			long ld = days(trades / n, priceTicks.clone(), rateBps);
+			long t4 = System.nanoTime();
+			long b = broker(trades / 10);
+			long t5 = System.nanoTime();
+			System.out.println(String.format("round %d: trades double %4d ms, Money %4d ms | price changes double %4d"
+					+ " ms, Money %4d ms | Broker %4d ms (%d round trips)  [%.2f %s %.2f %s %s]", r,
+					(t1 - t0) / 1_000_000, (t2 - t1) / 1_000_000, (t3 - t2) / 1_000_000, (t4 - t3) / 1_000_000,
+					(t5 - t4) / 1_000_000, trades / 10, d, Money.format(l), dd, Money.format(ld), Money.format(b)));
+		}
+	}
+
+	/**
+	 * @effects replay trades buys and sells (alternately, at prices[i]) with double arithmetic, return the final
+	 *          balance + profit
+	 */
+	private static double trades(int trades, double[] prices, int[] quantities) {
+		double balance = 1e9;
+		double purchasePrice = 0;
+		double profit = 0;
+		int mask = prices.length - 1;
+		for (int i = 0; i < trades; i++) {
+			double price = prices[i & mask];
+			int q = quantities[i & mask];
+			if ((i & 1) == 0) {
+				double cost = price * q;
+				if (balance >= cost) {
+					balance -= cost;
+					purchasePrice = price;
+				}
+			} else {
+				balance += price * q;
+				profit += (price - purchasePrice) * q;
+			}
+		}
+		return balance + profit;
+	}
+
+	/**
+	 * @effects replay the trades of trades(int, double[], int[]) with Money ticks, return the final balance + profit
+	 */
+	private static long trades(int trades, long[] prices, int[] quantities) {
+		long balance = Money.of(1e9);
+		long purchasePrice = 0;
+		long profit = 0;
+		int mask = prices.length - 1;
+		for (int i = 0; i < trades; i++) {
+			long price = prices[i & mask];
+			int q = quantities[i & mask];
+			if ((i & 1) == 0) {
+				long cost = Money.times(price, q);
+				if (balance >= cost) {
+					balance -= cost;
+					purchasePrice = price;
+				}
+			} else {
+				balance += Money.times(price, q);
+				profit += (price - purchasePrice) * q;
+			}
+		}
+		return balance + profit;
+	}
+
+	/**
+	 * @modifies prices
+	 * @effects change every price by its rate days times (as nextDay() does) with double arithmetic, return the
+	 *          sum of the prices
+	 */
+	private static double days(int days, double[] prices, double[] rates) {
+		double sum = 0;
+		for (int d = 0; d < days; d++) {
+			for (int k = 0; k < prices.length; k++) {
+				prices[k] *= rates[(k + d) & (rates.length - 1)];
+				sum += prices[k];
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * @modifies prices
+	 * @effects days(int, double[], double[]) with Money ticks and rates in basis points
+	 */
+	private static long days(int days, long[] prices, long[] rates) {
+		long sum = 0;
+		for (int d = 0; d < days; d++) {
+			for (int k = 0; k < prices.length; k++) {
+				prices[k] = Money.scale(prices[k], rates[(k + d) & (rates.length - 1)]);
+				sum += prices[k];
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * @effects buy and sell (FIFO) one stock roundTrips times through Broker, return the final balance
+	 */
+	private static long broker(int roundTrips) throws NotPossibleException, TransactionFailedException {
+		User u = new User("bench", "bench", "bench", Money.of(1e9), 1);
+		Stock s = new Stock("BNCH", "benchmark", Money.of(12.88), Integer.MAX_VALUE / 2);
+		long now = MarketClock.system().now();
+		for (int i = 0; i < roundTrips; i++) {
+			Broker.buy(u, s, 10, now, 1);
+			Broker.sellLots(u, s, 10, LotQueue.Order.FIFO);
+		}
+		return u.getBalance();
+	}
+}
@@ -0,0 +1,170 @@
+package stocktrader.server.bench;
+
+import stocktrader.common.NotPossibleException;
+import stocktrader.common.TransactionFailedException;
+import stocktrader.server.Broker;
+import stocktrader.server.LotStore;
+import stocktrader.server.MarketClock;
+import stocktrader.server.Money;
+import stocktrader.server.Stock;
+import stocktrader.server.UI.DisplayReport;
+import stocktrader.server.User;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Date;
+
+/**
+ * @Overview A benchmark of the text-based reports: the market report and the report of the lots of one user, for a
+ *           table of rows rows, once with a String.format per row and the separator line rebuilt for every report
+ *           (as DisplayReport did before TableLayout) and once with DisplayReport. It prints the time and the heap
+ *           allocated per report, and checks both renderings are the same.
+ *           Usage: ReportBenchmark [rows] [rounds]
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public abstract class ReportBenchmark {
+	public static void main(String[] args) throws NotPossibleException, TransactionFailedException, IOException {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+		ArrayList<Stock> stocks = new ArrayList<>(rows);
+		for (int k = 0; k < rows; k++) {
+			stocks.add(new Stock("BN" + (1000 + k % 9000), "benchmark " + k, Money.of(10 + k % 997 / 7.0),
+					Integer.MAX_VALUE / 2));
+		}
+		User u = new User("bench", "bench", "bench", Money.of(1e12), 1);
+		MarketClock.Manual clock = MarketClock.manual(1_700_000_000_000L, 60_000L);
+		for (int i = 0; i < rows; i++) {
+			Broker.buy(u, stocks.get(i % 100), 1 + i % 100, clock.now(), 1 + i % 30);
+		}
+		LotStore lots = u.getLots();
+
+		if (!formatAllStock(stocks).equals(displayAllStock(stocks))
+				|| !formatOwnStock(lots).equals(displayOwnStock(lots))) {
+			throw new IllegalStateException("the reports are not the same");
+		}
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		for (int r = 1; r <= rounds; r++) {
+			long[] bytes = new long[4];
+			long[] nanos = new long[4];
+			int chars = 0;
+			for (int k = 0; k < 4; k++) {
+				long b0 = allocated(threads);
+				long t0 = System.nanoTime();
+				String report;
+				switch (k) {
+				case 0:
+					report = formatAllStock(stocks);
+					break;
+				case 1:
+					report = displayAllStock(stocks);
+					break;
+				case 2:
+					report = formatOwnStock(lots);
+					break;
+				default:
+					report = displayOwnStock(lots);
+					break;
+				}
+				nanos[k] = System.nanoTime() - t0;
+				bytes[k] = allocated(threads) - b0;
+				chars += report.length();
+			}
+			System.out.println(String.format("round %d: %d rows | market String.format %3d ms %,12d B, TableLayout %3d"
+					+ " ms %,12d B | lots String.format %3d ms %,12d B, TableLayout %3d ms %,12d B  [%d chars]", r,
+					rows, nanos[0] / 1_000_000, bytes[0], nanos[1] / 1_000_000, bytes[1], nanos[2] / 1_000_000,
+					bytes[2], nanos[3] / 1_000_000, bytes[3], chars));
+		}
+	}
+
+	/**
+	 * @effects return DisplayReport.displayAllStock() of every stock of source, as a String
+	 */
+	private static String displayAllStock(ArrayList<Stock> source) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		DisplayReport.displayAllStock(source, 0, Integer.MAX_VALUE, sb);
+		return sb.toString();
+	}
+
+	/**
+	 * @effects return DisplayReport.displayOwnStock() of every lot of source, as a String
+	 */
+	private static String displayOwnStock(LotStore source) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		DisplayReport.displayOwnStock(source, 0, Integer.MAX_VALUE, sb);
+		return sb.toString();
+	}
+
+	/**
+	 * @effects return the bytes allocated by the current thread so far, or 0 if the JVM does not count them
+	 */
+	private static long allocated(ThreadMXBean threads) {
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	/**
+	 * @effects return DisplayReport.displayAllStock(source) rendered with a String.format per row
+	 */
+	private static String formatAllStock(ArrayList<Stock> source) {
+		Stock[] objs = source.toArray(new Stock[source.size()]);
+		StringBuilder sb = new StringBuilder();
+
+		String text = String.format("| %3.3s | %10.10s | %20.20s | %14.14s | %8s |\n", "No.", "Stock's ID", "Company",
+				"Stock's price", "Quantity");
+		sb.append(line(text));
+		sb.append(text);
+		sb.append(line(text));
+
+		int count = 1;
+		for (Stock s : objs) {
+			sb.append(String.format("| %3.3s | %10.10s | %20.20s | %14.14s | %8s |\n", count, s.getId(),
+					s.getCompanyName(), Money.format(s.getCurrentPrice()), s.getAvailableQuantity()));
+			count++;
+		}
+		sb.append(line(text));
+		return sb.toString();
+	}
+
+	/**
+	 * @effects return DisplayReport.displayOwnStock(source) rendered with a String.format per row
+	 */
+	private static String formatOwnStock(LotStore source) {
+		StringBuilder sb = new StringBuilder();
+
+		String text = String.format("| %3.3s | %10.10s | %20.20s | %14.14s | %8.8s | %42.42s |\n", "No.", "Stock's ID",
+				"Company", "Purchase price", "Quantity", "Purchase at");
+		sb.append(line(text));
+		sb.append(text);
+		sb.append(line(text));
+
+		Date date = new Date();
+		LotStore.Cursor c = source.cursor();
+		while (c.next()) {
+			Stock s = c.stock();
+			date.setTime(c.time());
+			sb.append(String.format("| %3.3s | %10.10s | %20.20s | %14.14s | %8.8s | (Day %6.6s) %29.29s |\n",
+					c.index() + 1, s.getId(), s.getCompanyName(), Money.format(c.price()), c.quantity(), c.day(),
+					date));
+		}
+		sb.append(line(text));
+		return sb.toString();
+	}
+
+	private static String line(String text) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) != '\r' && text.charAt(i) != '\n') {
+				sb.append(text.charAt(i) != '|' ? '-' : '+');
+			}
+		}
+		sb.append("\n");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,80 @@
+package stocktrader.server.bench;
+
+import stocktrader.server.DatasetGenerator;
+import stocktrader.server.User;
+import stocktrader.server.risk.MonteCarloVaR;
+import stocktrader.server.risk.RiskReport;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * @Overview A benchmark of the risk reports of every user of a DB generated by DatasetGenerator: once with one
+ *           MonteCarloVaR.run() per user (the paths of a user split across the pool, as StockServer.riskReport()
+ *           does), once with MonteCarloVaR.runAll() (the users split across the pool, each simulated on one thread
+ *           with the loss buffer of that thread). It prints the time per round of both, and checks they give the
+ *           same reports.
+ *           Usage: RiskBenchmark [users] [stocks] [lotsPerUser] [paths] [rounds] [DB name]
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public abstract class RiskBenchmark {
+	private static final double[] CONFIDENCES = { 0.95, 0.99 };
+
+	@SuppressWarnings("unchecked")
+	public static void main(String[] args) throws IOException, ClassNotFoundException {
+		int users = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+		int stocks = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+		int lots = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+		int paths = args.length > 3 ? Integer.parseInt(args[3]) : 10_000;
+		int rounds = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+		String dbName = args.length > 5 ? args[5] : "riskbenchDB";
+
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		new DatasetGenerator(users, stocks, lots, 1L, pool.getParallelism()).generate(dbName);
+		ArrayList<User> all;
+		try (ObjectInputStream ois = new ObjectInputStream(
+				new BufferedInputStream(new FileInputStream(dbName + ".dat"), 1 << 16))) {
+			ois.readObject();
+			ois.readObject();
+			all = (ArrayList<User>) ois.readObject();
+		}
+
+		MonteCarloVaR var = new MonteCarloVaR(paths, 1, 0.3 / Math.sqrt(12), 1L);
+		for (int r = 1; r <= rounds; r++) {
+			long t0 = System.nanoTime();
+			RiskReport[] one = new RiskReport[all.size()];
+			for (int i = 0; i < one.length; i++) {
+				one[i] = var.run(all.get(i), CONFIDENCES, pool);
+			}
+			long t1 = System.nanoTime();
+			RiskReport[] many = var.runAll(all, CONFIDENCES, pool);
+			long t2 = System.nanoTime();
+
+			for (int i = 0; i < one.length; i++) {
+				if (!same(one[i], many[i])) {
+					throw new IllegalStateException("the reports of " + one[i].getUserName() + " are not the same");
+				}
+			}
+			System.out.println(String.format("round %d: %d users, %d paths, %d threads | run() per user %6d ms,"
+					+ " runAll() %6d ms", r, all.size(), paths, pool.getParallelism(), (t1 - t0) / 1_000_000,
+					(t2 - t1) / 1_000_000));
+		}
+	}
+
+	private static boolean same(RiskReport a, RiskReport b) {
+		if (!a.getUserName().equals(b.getUserName()) || a.getValue() != b.getValue() || a.size() != b.size()) {
+			return false;
+		}
+		for (int i = 0; i < a.size(); i++) {
+			if (a.valueAtRiskAt(i) != b.valueAtRiskAt(i) || a.shortfallAt(i) != b.shortfallAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,341 @@
+package stocktrader.server.risk;
+
+import stocktrader.server.Money;
+import stocktrader.server.Position;
+import stocktrader.server.PriceHistory;
+import stocktrader.server.PriceSeries;
+import stocktrader.server.Stock;
+import stocktrader.server.User;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * @Overview MonteCarloVaR simulates the value of the holdings of a User after horizon days. Every stock follows
+ *           a geometric Brownian motion (independent of the other stocks) starting at its currentPrice, with the
+ *           volatility estimated from PriceHistory or defaultVolatility. Paths are split into blocks of BLOCK paths,
+ *           each with its own random stream, so the result depends on seed only and not on the number of threads.
+ *           Paths come in antithetic pairs (the second path of a pair takes the opposite normal numbers), which
+ *           halves the random numbers and exponentials drawn per path and narrows the spread of the estimates.
+ *           Losses are written into one array per run; simulating a path does not allocate.
+ * @attributes <pre>
+ * paths				int
+ * horizon				int
+ * defaultVolatility	double
+ * seed					long
+ * volatility			HashMap<String, Double>
+ * </pre>
+ * @Object a typical MonteCarloVaR is c:<p, h, dv, s, v> where p is the number of paths, h is the horizon in days,
+ *         dv is the daily volatility used for stocks without history, s is the seed,
+ *         v maps a stock id to its estimated daily volatility
+ * AF(c) = c:<p, h, dv, s, v>
+ * @rep_invariant
+ * 	p>0 && h>0 && dv>=0 && v!=null
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public class MonteCarloVaR {
+	/**
+	 * number of days of history used to estimate the volatility of a stock
+	 */
+	public static final int LOOKBACK = 60;
+	private static final int BLOCK = 4096; // even, so a block holds whole pairs
+
+	private final int paths;
+	private final int horizon;
+	private final double defaultVolatility;
+	private final long seed;
+	private final HashMap<String, Double> volatility;
+	private final ThreadLocal<double[]> buffers;
+
+	/**
+	 * @effects <pre>
+	 *  if paths > 0 && horizon > 0 && defaultVolatility >= 0
+	 *    initialize this as c:<paths, horizon, defaultVolatility, seed, {}>
+	 *  else
+	 *    throw IllegalArgumentException
+	 * </pre>
+	 */
+	public MonteCarloVaR(final int paths, int horizon, double defaultVolatility, long seed) {
+		if (paths <= 0 || horizon <= 0 || defaultVolatility < 0) {
+			throw new IllegalArgumentException(getClass().getSimpleName() + ".init: invalid parameters:'" + paths
+					+ ", " + horizon + ", " + defaultVolatility + "'");
+		}
+		this.paths = paths;
+		this.horizon = horizon;
+		this.defaultVolatility = defaultVolatility;
+		this.seed = seed;
+		this.volatility = new HashMap<>();
+		this.buffers = new ThreadLocal<double[]>() {
+			@Override
+			protected double[] initialValue() {
+				return new double[paths];
+			}
+		};
+	}
+
+	/**
+	 * @modifies this.volatility
+	 * @effects <pre>
+	 *  for each stock in stocks that has at least 3 close prices in the LOOKBACK days before day
+	 *    volatility[stock.id] = standard deviation of its daily log returns
+	 * </pre>
+	 */
+	public void estimateVolatility(PriceHistory history, List<Stock> stocks, int day) {
+		for (Stock s : stocks) {
+			PriceSeries series = history.seriesOf(s.getId());
+			if (series == null) {
+				continue;
+			}
+			long[] closes = series.range(day - LOOKBACK, day);
+			if (closes.length < 3) {
+				continue;
+			}
+
+			double sum = 0;
+			double sumSq = 0;
+			int n = 0;
+			for (int i = 1; i < closes.length; i++) {
+				if (closes[i - 1] > 0 && closes[i] > 0) {
+					double r = Math.log((double) closes[i] / closes[i - 1]);
+					sum += r;
+					sumSq += r * r;
+					n++;
+				}
+			}
+			if (n >= 2) {
+				double mean = sum / n;
+				volatility.put(s.getId(), Math.sqrt(Math.max(0, (sumSq - n * mean * mean) / (n - 1))));
+			}
+		}
+	}
+
+	/**
+	 * @requires every confidence is in (0, 1)
+	 * @effects simulate the portfolio of u, splitting the paths across pool, and return its RiskReport
+	 */
+	public RiskReport run(User u, double[] confidences, ForkJoinPool pool) {
+		Portfolio p = new Portfolio(u);
+		double[] losses = new double[paths];
+		pool.invoke(new BlockTask(p, losses, 0, blockCount()));
+		return report(p, losses, confidences);
+	}
+
+	/**
+	 * @requires every confidence is in (0, 1)
+	 * @effects <pre>
+	 *  simulate the portfolio of every user in users, splitting the users across pool,
+	 *  and return their RiskReport(s) in the same order
+	 *  (the report of a user is the same as the one returned by run())
+	 * </pre>
+	 */
+	public RiskReport[] runAll(List<User> users, double[] confidences, ForkJoinPool pool) {
+		return pool.invoke(taskAll(users, confidences));
+	}
+
+	/**
+	 * The holdings of the users are read before this returns, so they may change while the task runs.
+	 * @requires every confidence is in (0, 1)
+	 * @effects return a task that simulates the portfolio every user in users has now, splitting the users across
+	 *          the pool it runs in, and returns their RiskReport(s) in the same order (as runAll() does)
+	 */
+	public ForkJoinTask<RiskReport[]> taskAll(List<User> users, final double[] confidences) {
+		final Portfolio[] portfolios = new Portfolio[users.size()];
+		for (int i = 0; i < portfolios.length; i++) {
+			portfolios[i] = new Portfolio(users.get(i));
+		}
+		return new RecursiveTask<RiskReport[]>() {
+			@Override
+			protected RiskReport[] compute() {
+				RiskReport[] reports = new RiskReport[portfolios.length];
+				new UserTask(portfolios, confidences, reports, 0, reports.length).invoke();
+				return reports;
+			}
+		};
+	}
+
+	/**
+	 * @effects return the number of paths
+	 */
+	public int getPaths() {
+		return paths;
+	}
+
+	private int blockCount() {
+		return (paths + BLOCK - 1) / BLOCK;
+	}
+
+	private RiskReport report(Portfolio p, double[] losses, double[] confidences) {
+		Arrays.sort(losses, 0, paths);
+		double[] var = new double[confidences.length];
+		double[] es = new double[confidences.length];
+		for (int i = 0; i < confidences.length; i++) {
+			int k = Math.min(paths - 1, Math.max(0, (int) Math.ceil(confidences[i] * paths) - 1));
+			var[i] = Math.max(0, losses[k]);
+			double tail = 0;
+			for (int j = k; j < paths; j++) {
+				tail += losses[j];
+			}
+			es[i] = Math.max(var[i], tail / (paths - k));
+		}
+		return new RiskReport(p.userName, p.value, horizon, paths, confidences, var, es);
+	}
+
+	/**
+	 * @modifies losses[block * BLOCK .. min((block + 1) * BLOCK, paths))
+	 * @effects write the loss (current value - simulated value) of every path of the block
+	 */
+	private void simulateBlock(Portfolio p, double[] losses, int block) {
+		int from = block * BLOCK;
+		int to = Math.min(from + BLOCK, paths);
+		if (p.size == 0) {
+			Arrays.fill(losses, from, to, 0d);
+			return;
+		}
+
+		SplittableRandom rnd = new SplittableRandom(mix(seed ^ mix(p.userName.hashCode()) ^ mix(block + 1L)));
+		double spare = 0;
+		boolean hasSpare = false;
+		// antithetic pairs: path and path + 1 use z and -z, so one normal number and one exp serve 2 paths
+		for (int path = from; path < to; path += 2) {
+			double up = 0;
+			double down = 0;
+			for (int i = 0; i < p.size; i++) {
+				double z;
+				if (hasSpare) {
+					z = spare;
+					hasSpare = false;
+				} else {
+					// Marsaglia polar method, gives 2 standard normal numbers
+					double x, y, s;
+					do {
+						x = rnd.nextDouble() * 2 - 1;
+						y = rnd.nextDouble() * 2 - 1;
+						s = x * x + y * y;
+					} while (s >= 1 || s == 0);
+					double m = Math.sqrt(-2 * Math.log(s) / s);
+					z = x * m;
+					spare = y * m;
+					hasSpare = true;
+				}
+				double g = Math.exp(p.diffusion[i] * z);
+				up += p.start[i] * g;
+				down += p.start[i] / g;
+			}
+			losses[path] = p.value - up;
+			if (path + 1 < to) {
+				losses[path + 1] = p.value - down;
+			}
+		}
+	}
+
+	private static long mix(long z) {
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		return z ^ (z >>> 33);
+	}
+
+	/**
+	 * @Overview The holdings of a user aggregated per stock, with the GBM terms over the horizon
+	 */
+	private class Portfolio {
+		final String userName;
+		final int size;
+		final double[] value0; // quantity * currentPrice
+		final double[] drift;
+		final double[] diffusion;
+		final double[] start; // value0 * exp(drift)
+		final double value;
+
+		Portfolio(User u) {
+			userName = u.getUserName();
+			size = u.getPositions().size();
+			value0 = new double[size];
+			drift = new double[size];
+			diffusion = new double[size];
+			start = new double[size];
+			double total = 0;
+			int i = 0;
+			for (Position p : u.getPositions()) {
+				Stock s = p.getTheStock();
+				Double v = volatility.get(s.getId());
+				double sigma = (v != null) ? v : defaultVolatility;
+				value0[i] = p.getQuantity() * Money.toDouble(s.getCurrentPrice());
+				drift[i] = -sigma * sigma * horizon / 2;
+				diffusion[i] = sigma * Math.sqrt(horizon);
+				start[i] = value0[i] * Math.exp(drift[i]);
+				total += value0[i];
+				i++;
+			}
+			value = total;
+		}
+	}
+
+	/**
+	 * @Overview Simulates a range of blocks of one portfolio, splitting it in halves until one block is left
+	 */
+	private class BlockTask extends RecursiveAction {
+		private final Portfolio p;
+		private final double[] losses;
+		private final int from;
+		private final int to;
+
+		BlockTask(Portfolio p, double[] losses, int from, int to) {
+			this.p = p;
+			this.losses = losses;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				simulateBlock(p, losses, from);
+			} else if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new BlockTask(p, losses, from, mid), new BlockTask(p, losses, mid, to));
+			}
+		}
+	}
+
+	/**
+	 * @Overview Simulates a range of portfolios, each on one thread with the loss buffer of that thread
+	 */
+	private class UserTask extends RecursiveAction {
+		private final Portfolio[] portfolios;
+		private final double[] confidences;
+		private final RiskReport[] reports;
+		private final int from;
+		private final int to;
+
+		UserTask(Portfolio[] portfolios, double[] confidences, RiskReport[] reports, int from, int to) {
+			this.portfolios = portfolios;
+			this.confidences = confidences;
+			this.reports = reports;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				Portfolio p = portfolios[from];
+				double[] losses = buffers.get();
+				for (int block = 0; block < blockCount(); block++) {
+					simulateBlock(p, losses, block);
+				}
+				reports[from] = report(p, losses, confidences);
+			} else if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new UserTask(portfolios, confidences, reports, from, mid),
+						new UserTask(portfolios, confidences, reports, mid, to));
+			}
+		}
+	}
+}
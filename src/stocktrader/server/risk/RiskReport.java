@@ -0,0 +1,113 @@
+package stocktrader.server.risk;
+
+/**
+ * @Overview RiskReport represents the value-at-risk and expected shortfall of the portfolio of one user
+ * @attributes <pre>
+ * userName			String
+ * value			double
+ * horizon			int
+ * paths			int
+ * confidences		double[]
+ * valueAtRisk		double[]
+ * shortfall		double[]
+ * </pre>
+ * @Object a typical RiskReport is c:<u, v, h, p, cl, var, es> where u is the userName, v is the current value
+ *         of the holdings, h is the horizon in days, p is the number of simulated paths,
+ *         var[i] is the loss not exceeded with probability cl[i],
+ *         es[i] is the average loss of the paths that lose more than var[i]
+ * AF(c) = c:<u, v, h, p, cl, var, es>
+ * @rep_invariant
+ * 	u!=null && v>=0 && h>0 && p>0 &&
+ * 	cl.length == var.length == es.length && 0 < cl[i] < 1 && es[i] >= var[i]
+ * @Version 1.0.211127
+ * @author Phan Quang Tuan
+ */
+public class RiskReport {
+	private final String userName;
+	private final double value;
+	private final int horizon;
+	private final int paths;
+	private final double[] confidences;
+	private final double[] valueAtRisk;
+	private final double[] shortfall;
+
+	/**
+	 * @effects initialize this as c:<userName, value, horizon, paths, confidences, valueAtRisk, shortfall>
+	 */
+	public RiskReport(String userName, double value, int horizon, int paths, double[] confidences,
+			double[] valueAtRisk, double[] shortfall) {
+		this.userName = userName;
+		this.value = value;
+		this.horizon = horizon;
+		this.paths = paths;
+		this.confidences = confidences.clone();
+		this.valueAtRisk = valueAtRisk;
+		this.shortfall = shortfall;
+	}
+
+	/**
+	 * @effects return userName
+	 */
+	public String getUserName() {
+		return userName;
+	}
+
+	/**
+	 * @effects return value
+	 */
+	public double getValue() {
+		return value;
+	}
+
+	/**
+	 * @effects return horizon
+	 */
+	public int getHorizon() {
+		return horizon;
+	}
+
+	/**
+	 * @effects return paths
+	 */
+	public int getPaths() {
+		return paths;
+	}
+
+	/**
+	 * @effects return the number of confidence levels
+	 */
+	public int size() {
+		return confidences.length;
+	}
+
+	/**
+	 * @effects return the i-th confidence level
+	 */
+	public double confidenceAt(int i) {
+		return confidences[i];
+	}
+
+	/**
+	 * @effects return the value-at-risk at the i-th confidence level
+	 */
+	public double valueAtRiskAt(int i) {
+		return valueAtRisk[i];
+	}
+
+	/**
+	 * @effects return the expected shortfall at the i-th confidence level
+	 */
+	public double shortfallAt(int i) {
+		return shortfall[i];
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(getClass().getSimpleName()).append(":<").append(userName).append(", ").append(value);
+		for (int i = 0; i < confidences.length; i++) {
+			sb.append(", ").append(confidences[i]).append(": ").append(valueAtRisk[i]).append("/").append(shortfall[i]);
+		}
+		return sb.append(">").toString();
+	}
+}